@@ -0,0 +1,112 @@
+package org.example.benchmark;
+
+import org.example.math.Fixed128;
+import org.example.math.PoolMath;
+import org.example.model.LiquidityPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流動性池的純運算：恆定乘積報價、交換費用、匯率與份額的鑄造/贖回，不涉及資料庫。
+ * usdcReserves 分為小池子與大池子，大池子的中間乘積超出 64 位元。
+ * swapAmountOutBigDecimal 是未使用 {@link Fixed128} 前的寫法，作為比較基準。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PoolMathBenchmark {
+    @Param({"2000", "2000000000"})
+    public String usdcReserves;
+
+    private LiquidityPool pool;
+    private BigDecimal usdc;
+    private BigDecimal cct;
+    private BigDecimal amountIn;
+    private BigDecimal shares;
+
+    private final Fixed128 fixedAmountIn = new Fixed128();
+    private final Fixed128 fixedReserveIn = new Fixed128();
+    private final Fixed128 fixedReserveOut = new Fixed128();
+    private final Fixed128 fixedScratch = new Fixed128();
+    private final Fixed128 fixedOut = new Fixed128();
+
+    @Setup
+    public void setUp() {
+        usdc = new BigDecimal(usdcReserves).setScale(18, RoundingMode.DOWN);
+        cct = PoolMath.divide(usdc, BigDecimal.valueOf(4), RoundingMode.DOWN);
+        amountIn = new BigDecimal("12.345678901234567890");
+        shares = PoolMath.divide(usdc, BigDecimal.valueOf(7), RoundingMode.DOWN);
+
+        pool = new LiquidityPool();
+        pool.setExchangeId(1L);
+        pool.setUsdcReserves(usdc);
+        pool.setCctReserves(cct);
+        pool.setTotalShares(usdc);
+        pool.setFeeBps(30);
+
+        fixedAmountIn.set(amountIn);
+        fixedReserveIn.set(usdc);
+        fixedReserveOut.set(cct);
+    }
+
+    @Benchmark
+    public BigDecimal swapAmountOut() {
+        return PoolMath.amountOut(amountIn, usdc, cct);
+    }
+
+    @Benchmark
+    public BigDecimal swapAmountOutBigDecimal() {
+        return amountIn.multiply(cct).divide(usdc.add(amountIn), 18, RoundingMode.DOWN);
+    }
+
+    // Fixed128 零配置 API 本身的成本（不經 BigDecimal 包裝）；reserveIn 會被改寫，每次先還原
+    @Benchmark
+    public Fixed128 swapAmountOutFixed() {
+        return PoolMath.amountOut(fixedAmountIn, fixedScratch.set(fixedReserveIn), fixedReserveOut, fixedOut);
+    }
+
+    @Benchmark
+    public BigDecimal swapWithFee() {
+        BigDecimal net = amountIn.subtract(pool.swapFee(amountIn));
+        return PoolMath.amountOut(net, usdc, cct);
+    }
+
+    // 路由報價搜尋每一段的計算：含費報價全程以 Fixed128 進行，不配置物件
+    @Benchmark
+    public Fixed128 swapWithFeeFixed() {
+        return PoolMath.amountOutAfterFee(fixedAmountIn, 30, fixedReserveIn, fixedReserveOut, fixedOut);
+    }
+
+    @Benchmark
+    public BigDecimal exchangeRate() {
+        return pool.calculateExchangeRate();
+    }
+
+    @Benchmark
+    public BigDecimal mintShares() {
+        return PoolMath.mulDiv(amountIn, pool.getTotalShares(), usdc, RoundingMode.DOWN);
+    }
+
+    @Benchmark
+    public void burnShares(Blackhole blackhole) {
+        blackhole.consume(PoolMath.mulDiv(shares, cct, pool.getTotalShares(), RoundingMode.DOWN));
+        blackhole.consume(PoolMath.mulDiv(shares, usdc, pool.getTotalShares(), RoundingMode.DOWN));
+    }
+}
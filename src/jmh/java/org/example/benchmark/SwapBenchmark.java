@@ -0,0 +1,85 @@
+package org.example.benchmark;
+
+import org.example.model.LiquidityPool;
+import org.example.service.CarbonCreditService;
+import org.example.service.CarbonExchangeService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服務層的完整交換：CarbonExchangeService 對嵌入式 H2 上的單一池子成交，
+ * 包含餘額扣款入帳、池子寫入（或單寫者引擎的延後寫回）、交易紀錄與快照發布。
+ * 池子儲備遠大於單筆數量，量測期間的匯率漂移可以忽略；engine 比較列鎖模式與單寫者引擎。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SwapBenchmark {
+    private static final int TRADERS = 64;
+    private static final BigDecimal USDC_IN = new BigDecimal("4");
+    private static final BigDecimal CCT_IN = new BigDecimal("1");
+    private static final BigDecimal NO_LIMIT = new BigDecimal("1000000000");
+
+    @Param({"false", "true"})
+    public boolean engine;
+
+    private ConfigurableApplicationContext context;
+    private CarbonExchangeService exchangeService;
+    private List<String> traders;
+    private Long exchangeId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("--exchange.engine.enabled=" + engine);
+        exchangeService = context.getBean(CarbonExchangeService.class);
+        CarbonCreditService carbonCreditService = context.getBean(CarbonCreditService.class);
+        Long tokenId = carbonCreditService.defaultToken().getId();
+        traders = BenchmarkApplication.seedHolders(context.getBean(JdbcTemplate.class), tokenId, TRADERS,
+            new BigDecimal("100000000"));
+        LiquidityPool pool = exchangeService.createPool(tokenId, traders.get(0),
+            new BigDecimal("40000000"), new BigDecimal("10000000"));
+        exchangeId = pool.getExchangeId();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void swapBaseForCarbon() {
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader(), USDC_IN, NO_LIMIT);
+    }
+
+    @Benchmark
+    public void swapCarbonForBase() {
+        exchangeService.swapCarbonCreditsForBaseCurrency(exchangeId, trader(), CCT_IN, NO_LIMIT);
+    }
+
+    private String trader() {
+        return traders.get(ThreadLocalRandom.current().nextInt(TRADERS));
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.benchmark;
+
+import org.example.service.CarbonCreditService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CCT 帳本的 transfer / transferFrom，每次在 holders 個持有人中隨機挑選雙方，
+ * 觀察餘額表變大時單筆轉帳的吞吐量是否維持不變。轉帳經過完整的服務層：
+ * 交易、條件更新、交易紀錄佇列與 WebSocket 變動通知。
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenLedgerBenchmark {
+    private static final BigDecimal AMOUNT = new BigDecimal("0.000001");
+    private static final String SPENDER = "0xbench-spender";
+
+    @Param({"100", "10000", "100000"})
+    public int holders;
+
+    private ConfigurableApplicationContext context;
+    private CarbonCreditService carbonCreditService;
+    private List<String> addresses;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start();
+        carbonCreditService = context.getBean(CarbonCreditService.class);
+        Long tokenId = carbonCreditService.defaultToken().getId();
+        addresses = BenchmarkApplication.seedHolders(context.getBean(JdbcTemplate.class), tokenId, holders,
+            new BigDecimal("1000000"));
+        // 授權額度以 spender 為鍵，所有 transferFrom 共用同一筆足夠大的額度
+        carbonCreditService.approve(addresses.get(0), SPENDER, new BigDecimal("1000000000"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(holders);
+        int to = (from + 1 + random.nextInt(holders - 1)) % holders;
+        carbonCreditService.transfer(addresses.get(from), addresses.get(to), AMOUNT);
+    }
+
+    @Benchmark
+    public void transferFrom() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(holders);
+        int to = (from + 1 + random.nextInt(holders - 1)) % holders;
+        carbonCreditService.transferFrom(addresses.get(from), SPENDER, addresses.get(to), AMOUNT);
+    }
+}
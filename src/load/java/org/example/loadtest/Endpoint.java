@@ -0,0 +1,105 @@
+package org.example.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+
+/**
+ * 負載組合中的請求種類，對應儀表板對 REST API 的呼叫；預設權重接近一般使用者的讀多寫少比例。
+ * 儀表板本身改以 WebSocket 接收推送後不再輪詢，這裡的讀取請求代表尚未改用推送的客戶端與頁面初次載入。
+ */
+enum Endpoint {
+    USDC_BALANCE("usdc-balance", 20) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return get(baseUrl + "/api/exchange/base-balance?address=" + address, timeout);
+        }
+    },
+    CCT_BALANCE("cct-balance", 20) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return get(baseUrl + "/api/token/balance?address=" + address, timeout);
+        }
+    },
+    EXCHANGE_RATE("exchange-rate", 20) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return get(baseUrl + "/api/exchange/exchange-rate", timeout);
+        }
+    },
+    LIQUIDITY_INFO("liquidity-info", 10) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return get(baseUrl + "/api/exchange/liquidity-info", timeout);
+        }
+    },
+    HISTORY("history", 15) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return get(baseUrl + "/api/transactions/" + address + "?limit=20", timeout);
+        }
+    },
+    SWAP_BASE("swap-base", 10) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return post(baseUrl + "/api/exchange/swap-base",
+                "{\"address\":\"" + address + "\",\"amount\":\"1\",\"maxSlippage\":\"1000000\"}", timeout);
+        }
+    },
+    ADD_LIQUIDITY("add-liquidity", 5) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return post(baseUrl + "/api/exchange/add-liquidity",
+                "{\"userId\":\"" + address + "\",\"amountUsdc\":\"1\",\"maxSlippagePercentage\":\"100\"}", timeout);
+        }
+    },
+    // BCrypt 驗證密碼，CPU 密集；預設組合不包含，以 --mix 指定
+    LOGIN("login", 0) {
+        @Override
+        HttpRequest request(String baseUrl, String address, Duration timeout) {
+            return post(baseUrl + "/api/users/login",
+                "{\"username\":\"" + address + "\",\"password\":\"" + PASSWORD + "\"}", timeout);
+        }
+    };
+
+    // 負載測試使用者的密碼，使用者名稱即地址
+    static final String PASSWORD = "load-test";
+
+    private final String label;
+    private final int defaultWeight;
+
+    Endpoint(String label, int defaultWeight) {
+        this.label = label;
+        this.defaultWeight = defaultWeight;
+    }
+
+    String label() {
+        return label;
+    }
+
+    int defaultWeight() {
+        return defaultWeight;
+    }
+
+    abstract HttpRequest request(String baseUrl, String address, Duration timeout);
+
+    static Endpoint fromLabel(String label) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.label.equals(label)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint: " + label);
+    }
+
+    private static HttpRequest get(String url, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build();
+    }
+
+    private static HttpRequest post(String url, String json, Duration timeout) {
+        return HttpRequest.newBuilder(URI.create(url)).timeout(timeout)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+}
@@ -0,0 +1,332 @@
+package org.example.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.example.DexCarbonTradeApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 開放迴圈的 HTTP 負載產生器。在同一個 JVM 中以記憶體 H2 啟動應用程式（或以 --url 指向已執行的實例），
+ * 經 /api/users/register 建立 N 個使用者並建立流動性池，再以固定的到達率送出依權重抽樣的請求組合。
+ * <p>
+ * 每個請求都有預定的送出時間，延遲從預定時間起算，伺服器變慢時排隊的時間也計入延遲，
+ * 不會因為等待回應而降低送出速率（避免 coordinated omission）。延遲以 HdrHistogram 記錄，
+ * 結果寫成 JSON 報告與各端點的 .hgrm 百分位分布。
+ * <p>
+ * 參數（皆為 --name=value）：users、rate（每秒請求數）、duration 與 warmup（秒）、
+ * mix（例如 swap-base:50,history:50，省略時使用各端點的預設權重）、timeout（秒）、threads、
+ * out（輸出目錄）、baseline（先前的報告，用來比較）、url。其他參數原樣傳給應用程式，例如 --exchange.engine.enabled=true。
+ */
+public final class LoadGenerator {
+    // 直方圖可記錄的最大延遲（微秒），超過的以此值計
+    private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Options options;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+
+    private LoadGenerator(Options options, HttpClient client, String baseUrl) {
+        this.options = options;
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.endpoints = options.mix.keySet().toArray(new Endpoint[0]);
+        this.cumulativeWeights = new int[endpoints.length];
+        int sum = 0;
+        for (int i = 0; i < endpoints.length; i++) {
+            sum += options.mix.get(endpoints[i]);
+            cumulativeWeights[i] = sum;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext context = null;
+        String baseUrl = options.url;
+        if (baseUrl == null) {
+            context = start(options.appArgs);
+            baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(options.threads, r -> {
+            Thread thread = new Thread(r, "load-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            HttpClient client = HttpClient.newBuilder()
+                .executor(executor)
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+            LoadGenerator generator = new LoadGenerator(options, client, baseUrl);
+            List<String> users = generator.setUp();
+            if (options.warmup > 0) {
+                System.out.printf("預熱 %d 秒%n", options.warmup);
+                generator.drive(users, options.warmup);
+            }
+            System.out.printf("量測 %d 秒，%d req/s，%d 個使用者%n", options.duration, options.rate, users.size());
+            Map<Endpoint, Recorder> recorders = generator.drive(users, options.duration);
+            generator.report(recorders);
+        } finally {
+            executor.shutdownNow();
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static ConfigurableApplicationContext start(List<String> appArgs) {
+        List<String> args = new ArrayList<>(Arrays.asList(
+            "--spring.datasource.url=jdbc:h2:mem:load;DB_CLOSE_DELAY=-1",
+            "--spring.datasource.driver-class-name=org.h2.Driver",
+            "--spring.datasource.username=sa",
+            "--spring.datasource.password=",
+            "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+            "--spring.jpa.show-sql=false",
+            "--spring.jpa.properties.hibernate.format_sql=false",
+            "--server.port=0",
+            "--logging.level.root=WARN",
+            "--logging.level.org.example=WARN"));
+        args.addAll(appArgs);
+        return new SpringApplicationBuilder(DexCarbonTradeApplication.class).run(args.toArray(new String[0]));
+    }
+
+    /**
+     * 註冊使用者（公司用戶註冊時會取得初始的 USDC 與 CCT）並由第一個使用者建立流動性池。
+     */
+    private List<String> setUp() {
+        String run = Long.toHexString(System.currentTimeMillis());
+        List<String> users = new ArrayList<>(options.users);
+        List<CompletableFuture<HttpResponse<String>>> registrations = new ArrayList<>(options.users);
+        for (int i = 0; i < options.users; i++) {
+            String address = String.format("0x%s%08x", run, i);
+            users.add(address);
+            registrations.add(client.sendAsync(post("/api/users/register",
+                "{\"username\":\"" + address + "\",\"password\":\"" + Endpoint.PASSWORD
+                    + "\",\"userType\":\"COMPANY\",\"address\":\"" + address + "\"}"), HttpResponse.BodyHandlers.ofString()));
+        }
+        for (CompletableFuture<HttpResponse<String>> registration : registrations) {
+            requireOk(registration.join(), "register");
+        }
+        try {
+            requireOk(client.send(post("/api/exchange/pools",
+                "{\"provider\":\"" + users.get(0) + "\",\"amountUsdc\":\"2000\",\"amountCct\":\"500\"}"),
+                HttpResponse.BodyHandlers.ofString()), "create pool");
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to create the liquidity pool", e);
+        }
+        return users;
+    }
+
+    /**
+     * 以固定間隔送出 seconds 秒的請求，等待所有請求完成（或逾時）後回傳各端點的紀錄。
+     */
+    private Map<Endpoint, Recorder> drive(List<String> users, int seconds) {
+        Map<Endpoint, Recorder> recorders = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : endpoints) {
+            recorders.put(endpoint, new Recorder());
+        }
+        AtomicLong outstanding = new AtomicLong();
+        Duration timeout = Duration.ofSeconds(options.timeout);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Endpoint endpoint = pick(random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]));
+            Recorder recorder = recorders.get(endpoint);
+            HttpRequest request = endpoint.request(baseUrl, users.get(random.nextInt(users.size())), timeout);
+            outstanding.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                recorder.record(System.nanoTime() - intended, error != null || response.statusCode() >= 400);
+                outstanding.decrementAndGet();
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.timeout + 1);
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        long elapsed = System.nanoTime() - start;
+        recorders.values().forEach(r -> r.seconds = elapsed / 1e9);
+        return recorders;
+    }
+
+    private Endpoint pick(int ticket) {
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return endpoints[i];
+            }
+        }
+        return endpoints[endpoints.length - 1];
+    }
+
+    private void report(Map<Endpoint, Recorder> recorders) throws Exception {
+        LoadReport report = new LoadReport();
+        report.config.put("users", String.valueOf(options.users));
+        report.config.put("rate", String.valueOf(options.rate));
+        report.config.put("duration", String.valueOf(options.duration));
+        report.config.put("mix", options.mixLabel());
+        report.config.put("appArgs", String.join(" ", options.appArgs));
+
+        Path out = Paths.get(options.out);
+        Files.createDirectories(out);
+        Histogram total = new Histogram(HIGHEST_MICROS, 3);
+        long totalErrors = 0;
+        double seconds = 0;
+        for (Map.Entry<Endpoint, Recorder> entry : recorders.entrySet()) {
+            Recorder recorder = entry.getValue();
+            report.endpoints.put(entry.getKey().label(),
+                LoadReport.Stats.of(recorder.histogram, recorder.errors.sum(), recorder.seconds));
+            total.add(recorder.histogram);
+            totalErrors += recorder.errors.sum();
+            seconds = recorder.seconds;
+            writeDistribution(out.resolve(entry.getKey().label() + ".hgrm"), recorder.histogram);
+        }
+        report.endpoints.put(LoadReport.TOTAL, LoadReport.Stats.of(total, totalErrors, seconds));
+        writeDistribution(out.resolve(LoadReport.TOTAL + ".hgrm"), total);
+
+        report.print(System.out);
+        Path reportPath = out.resolve("report.json");
+        report.write(reportPath);
+        System.out.println("報告已寫入 " + reportPath.toAbsolutePath());
+        if (options.baseline != null) {
+            report.printComparison(LoadReport.read(Paths.get(options.baseline)), System.out);
+        }
+    }
+
+    // HdrHistogram 的百分位分布格式，數值單位為毫秒
+    private static void writeDistribution(Path path, Histogram histogram) throws Exception {
+        try (PrintStream stream = new PrintStream(Files.newOutputStream(path))) {
+            histogram.outputPercentileDistribution(stream, 1000.0);
+        }
+    }
+
+    private HttpRequest post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path))
+            .timeout(Duration.ofSeconds(options.timeout))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(json))
+            .build();
+    }
+
+    private static void requireOk(HttpResponse<String> response, String step) {
+        if (response.statusCode() >= 400) {
+            throw new IllegalStateException(step + " failed: " + response.statusCode() + " " + response.body());
+        }
+    }
+
+    private static final class Recorder {
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private volatile double seconds;
+
+        private void record(long nanos, boolean error) {
+            histogram.recordValue(Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 1), HIGHEST_MICROS));
+            if (error) {
+                errors.increment();
+            }
+        }
+    }
+
+    private static final class Options {
+        private int users = 50;
+        private int rate = 200;
+        private int duration = 60;
+        private int warmup = 10;
+        private int timeout = 30;
+        private int threads = 8;
+        private String out = "target/load";
+        private String baseline;
+        private String url;
+        private final Map<Endpoint, Integer> mix = new LinkedHashMap<>();
+        private final List<String> appArgs = new ArrayList<>();
+
+        private static Options parse(String[] args) {
+            Options options = new Options();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String name = arg.startsWith("--") && eq > 2 ? arg.substring(2, eq) : "";
+                String value = eq > 0 ? arg.substring(eq + 1) : "";
+                switch (name) {
+                    case "users": options.users = Integer.parseInt(value); break;
+                    case "rate": options.rate = Integer.parseInt(value); break;
+                    case "duration": options.duration = Integer.parseInt(value); break;
+                    case "warmup": options.warmup = Integer.parseInt(value); break;
+                    case "timeout": options.timeout = Integer.parseInt(value); break;
+                    case "threads": options.threads = Integer.parseInt(value); break;
+                    case "out": options.out = value; break;
+                    case "baseline": options.baseline = value; break;
+                    case "url": options.url = value.replaceAll("/+$", ""); break;
+                    case "mix": options.parseMix(value); break;
+                    default: options.appArgs.add(arg);
+                }
+            }
+            if (options.mix.isEmpty()) {
+                for (Endpoint endpoint : Endpoint.values()) {
+                    if (endpoint.defaultWeight() > 0) {
+                        options.mix.put(endpoint, endpoint.defaultWeight());
+                    }
+                }
+            }
+            if (options.users < 1 || options.rate < 1 || options.duration < 1) {
+                throw new IllegalArgumentException("users, rate and duration must be positive");
+            }
+            return options;
+        }
+
+        private void parseMix(String value) {
+            for (String part : value.split(",")) {
+                String[] pair = part.trim().split(":");
+                int weight = pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1;
+                if (weight > 0) {
+                    mix.put(Endpoint.fromLabel(pair[0].trim()), weight);
+                }
+            }
+        }
+
+        private String mixLabel() {
+            StringBuilder label = new StringBuilder();
+            mix.forEach((endpoint, weight) -> {
+                if (label.length() > 0) {
+                    label.append(',');
+                }
+                label.append(endpoint.label()).append(':').append(weight);
+            });
+            return label.toString();
+        }
+    }
+}
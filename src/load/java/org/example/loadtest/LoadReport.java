@@ -0,0 +1,99 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一次負載測試的結果：每個端點與全體的請求數、錯誤數、吞吐量與延遲百分位數（毫秒）。
+ * 以固定的欄位順序寫成縮排的 JSON，兩次建置的報告可以直接 diff，也可以用 --baseline 讀回來比較。
+ */
+@JsonPropertyOrder({"config", "endpoints"})
+public class LoadReport {
+    public static final String TOTAL = "total";
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public Map<String, String> config = new LinkedHashMap<>();
+    public Map<String, Stats> endpoints = new LinkedHashMap<>();
+
+    @JsonPropertyOrder({"requests", "errors", "throughput", "p50", "p90", "p99", "p999", "max"})
+    public static class Stats {
+        public long requests;
+        public long errors;
+        // 每秒完成的請求數
+        public double throughput;
+        public double p50;
+        public double p90;
+        public double p99;
+        public double p999;
+        public double max;
+
+        static Stats of(Histogram histogram, long errors, double seconds) {
+            Stats stats = new Stats();
+            stats.requests = histogram.getTotalCount();
+            stats.errors = errors;
+            stats.throughput = round(stats.requests / seconds);
+            stats.p50 = millis(histogram.getValueAtPercentile(50));
+            stats.p90 = millis(histogram.getValueAtPercentile(90));
+            stats.p99 = millis(histogram.getValueAtPercentile(99));
+            stats.p999 = millis(histogram.getValueAtPercentile(99.9));
+            stats.max = millis(histogram.getMaxValue());
+            return stats;
+        }
+
+        // 直方圖以微秒記錄
+        private static double millis(long micros) {
+            return round(micros / 1000.0);
+        }
+
+        private static double round(double value) {
+            return Math.round(value * 1000) / 1000.0;
+        }
+    }
+
+    void write(Path path) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        MAPPER.writeValue(path.toFile(), this);
+    }
+
+    static LoadReport read(Path path) throws IOException {
+        return MAPPER.readValue(path.toFile(), LoadReport.class);
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-16s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+            "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        endpoints.forEach((name, s) -> out.printf("%-16s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+            name, s.requests, s.errors, s.throughput, s.p50, s.p90, s.p99, s.p999, s.max));
+    }
+
+    /**
+     * 與先前的報告比較，列出吞吐量與延遲百分位數的相對變化；正值代表比基準高。
+     */
+    void printComparison(LoadReport baseline, PrintStream out) {
+        out.printf("%-16s %10s %9s %9s %9s%n", "vs baseline", "req/s", "p50", "p99", "p99.9");
+        endpoints.forEach((name, s) -> {
+            Stats base = baseline.endpoints.get(name);
+            if (base == null) {
+                return;
+            }
+            out.printf("%-16s %10s %9s %9s %9s%n", name, change(s.throughput, base.throughput),
+                change(s.p50, base.p50), change(s.p99, base.p99), change(s.p999, base.p999));
+        });
+    }
+
+    private static String change(double current, double baseline) {
+        if (baseline == 0) {
+            return "n/a";
+        }
+        return String.format("%+.1f%%", (current - baseline) * 100 / baseline);
+    }
+}
@@ -0,0 +1,36 @@
+package org.example.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * exchange.virtual-threads.enabled 時以虛擬線程處理請求：Tomcat 的每個請求與 MVC 的非同步請求（串流匯出）
+ * 各在一個虛擬線程上執行。阻塞在 JDBC、連線池或交易紀錄上的請求只佔用虛擬線程，
+ * 不再耗盡有界的平台線程池而讓不需要資料庫的請求（快照讀取）一起排隊；同時寫入的數量仍由連線池大小限制。
+ */
+@Configuration
+@ConditionalOnProperty(name = "exchange.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandler() {
+        return protocolHandler -> protocolHandler.setExecutor(virtualThreads("http-vt-"));
+    }
+
+    @Bean(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(virtualThreads("task-vt-"));
+    }
+
+    private static ExecutorService virtualThreads(String prefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
+    }
+}
@@ -0,0 +1,20 @@
+package org.example.config;
+
+import lombok.RequiredArgsConstructor;
+import org.example.controller.MarketUpdateSocketHandler;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+@Configuration
+@EnableWebSocket
+@RequiredArgsConstructor
+public class WebSocketConfig implements WebSocketConfigurer {
+    private final MarketUpdateSocketHandler marketUpdateSocketHandler;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(marketUpdateSocketHandler, "/ws/market");
+    }
+}
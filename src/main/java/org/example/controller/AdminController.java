@@ -0,0 +1,40 @@
+package org.example.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.service.AddressStatsService;
+import org.example.service.CheckpointService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/admin")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AdminController {
+    private final CheckpointService checkpointService;
+    private final AddressStatsService addressStatsService;
+
+    /**
+     * 在伺服器的檢查點目錄寫出目前帳本狀態的檢查點，回傳檔案位置與各區段筆數。
+     */
+    @PostMapping("/checkpoint")
+    public ResponseEntity<?> writeCheckpoint() {
+        try {
+            return ResponseEntity.ok(checkpointService.export());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 由交易紀錄重新計算所有地址的統計，回傳地址數與耗時。
+     */
+    @PostMapping("/address-stats/rebuild")
+    public ResponseEntity<?> rebuildAddressStats() {
+        try {
+            return ResponseEntity.ok(addressStatsService.rebuild());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(e.getMessage());
+        }
+    }
+}
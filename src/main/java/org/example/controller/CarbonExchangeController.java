@@ -1,29 +1,122 @@
 package org.example.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.example.model.Candle;
 import org.example.model.LiquidityInfo;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
 import org.example.service.CarbonExchangeService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * 所有端點都可以用 exchangeId 指定流動性池，未指定時使用預設池子。
+ */
 @RestController
 @RequestMapping("/api/exchange")
 @RequiredArgsConstructor
 public class CarbonExchangeController {
     private final CarbonExchangeService exchangeService;
 
+    @GetMapping("/pools")
+    public List<LiquidityInfo> getPools() {
+        return exchangeService.listPools();
+    }
+
+    @PostMapping("/pools")
+    public ResponseEntity<?> createPool(@RequestBody Map<String, String> request) {
+        try {
+            Long tokenId = parseId(request.get("tokenId"));
+            String provider = request.get("provider");
+            BigDecimal amountUsdc = new BigDecimal(request.get("amountUsdc"));
+            BigDecimal amountCct = new BigDecimal(request.get("amountCct"));
+            
+            LiquidityPool pool = exchangeService.createPool(tokenId, provider, amountUsdc, amountCct);
+            return ResponseEntity.ok(exchangeService.getLiquidityInfo(pool.getExchangeId()));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/liquidity")
-    public ResponseEntity<LiquidityInfo> getLiquidity(@RequestParam String address) {
-        return ResponseEntity.ok(exchangeService.getLiquidityInfo());
+    public ResponseEntity<LiquidityInfo> getLiquidity(@RequestParam String address,
+                                                      @RequestParam(required = false) Long exchangeId) {
+        return ResponseEntity.ok(exchangeService.getLiquidityInfo(exchangeId));
+    }
+
+    /**
+     * 地址在池子中的份額與可贖回的數量。
+     */
+    @GetMapping("/position")
+    public ResponseEntity<?> getPosition(@RequestParam String address,
+                                         @RequestParam(required = false) Long exchangeId) {
+        try {
+            return ResponseEntity.ok(exchangeService.getPosition(exchangeId, address));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 池子的流動性提供者，依地址排序分頁；以回應中的 nextCursor 作為 cursor 取得下一頁。
+     */
+    @GetMapping("/providers")
+    public ResponseEntity<?> getProviders(@RequestParam(required = false) Long exchangeId,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(defaultValue = "" + CarbonExchangeService.DEFAULT_PROVIDER_PAGE_SIZE) int limit) {
+        try {
+            return ResponseEntity.ok(exchangeService.listProviders(exchangeId, cursor, limit));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 時間加權平均匯率：區間結束於 agoSeconds 秒前、長度為 windowSeconds 秒；區間早於已記錄的觀測時回傳 400。
+     */
+    @GetMapping("/twap")
+    public ResponseEntity<?> getTwap(@RequestParam(required = false) Long exchangeId,
+                                     @RequestParam(defaultValue = "300") long windowSeconds,
+                                     @RequestParam(defaultValue = "0") long agoSeconds) {
+        try {
+            return ResponseEntity.ok(exchangeService.getTwap(exchangeId, windowSeconds, agoSeconds));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 池子的 K 線，resolution 為 1s、1m、1h 或 1d；from 與 to 為伺服器時區的時間，預設為最近 limit 根的區間。
+     */
+    @GetMapping("/candles")
+    public ResponseEntity<?> getCandles(@RequestParam(required = false) Long exchangeId,
+                                        @RequestParam(defaultValue = "1m") String resolution,
+                                        @RequestParam(required = false)
+                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                        @RequestParam(required = false)
+                                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                        @RequestParam(defaultValue = "" + CarbonExchangeService.DEFAULT_CANDLE_LIMIT) int limit) {
+        try {
+            Candle.Resolution r = Candle.Resolution.fromLabel(resolution);
+            long toMillis = to == null ? System.currentTimeMillis() + r.getMillis() : toEpochMillis(to);
+            long fromMillis = from == null ? toMillis - r.getMillis() * limit : toEpochMillis(from);
+            return ResponseEntity.ok(exchangeService.getCandles(exchangeId, r, fromMillis, toMillis, limit));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @GetMapping("/exchange-rate")
-    public ResponseEntity<BigDecimal> getExchangeRate() {
-        return ResponseEntity.ok(exchangeService.calculateExchangeRate());
+    public ResponseEntity<BigDecimal> getExchangeRate(@RequestParam(required = false) Long exchangeId) {
+        return ResponseEntity.ok(exchangeService.calculateExchangeRate(exchangeId));
     }
 
     @GetMapping("/base-balance")
@@ -32,15 +125,16 @@ public class CarbonExchangeController {
     }
 
     @GetMapping("/pool-status")
-    public ResponseEntity<Map<String, Object>> getPoolStatus() {
+    public ResponseEntity<Map<String, Object>> getPoolStatus(@RequestParam(required = false) Long exchangeId) {
         Map<String, Object> response = new HashMap<>();
         try {
-            LiquidityInfo liquidity = exchangeService.getLiquidityInfo();
-            response.put("isEmpty", liquidity.getCctReserves().equals(BigDecimal.ZERO) && 
-                                  liquidity.getUsdcReserves().equals(BigDecimal.ZERO));
-            response.put("totalCarbonReserves", liquidity.getCctReserves());
-            response.put("totalBaseReserves", liquidity.getUsdcReserves());
-            response.put("exchangeRate", exchangeService.calculateExchangeRate());
+            // 同一份快照中的儲備與匯率彼此一致
+            PoolSnapshot snapshot = exchangeService.getPoolSnapshot(exchangeId);
+            response.put("isEmpty", snapshot.isEmpty());
+            response.put("totalCarbonReserves", snapshot.getCctReserves());
+            response.put("totalBaseReserves", snapshot.getUsdcReserves());
+            response.put("exchangeRate", snapshot.getExchangeRate());
+            response.put("version", snapshot.getVersion());
         } catch (Exception e) {
             response.put("isEmpty", true);
         }
@@ -60,11 +154,10 @@ public class CarbonExchangeController {
     @PostMapping("/remove-liquidity")
     public ResponseEntity<String> removeLiquidity(@RequestBody Map<String, String> request) {
         try {
+            Long exchangeId = parseId(request.get("exchangeId"));
             String userId = request.get("userId");
             BigDecimal amountUsdc = new BigDecimal(request.get("amountUsdc"));
-            BigDecimal maxSlippagePercentage = new BigDecimal(request.get("maxSlippagePercentage"));
-            
-            exchangeService.removeLiquidity(userId, amountUsdc, maxSlippagePercentage);
+            exchangeService.removeLiquidity(exchangeId, userId, amountUsdc);
             return ResponseEntity.ok("Liquidity removed successfully");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -74,10 +167,9 @@ public class CarbonExchangeController {
     @PostMapping("/remove-all-liquidity")
     public ResponseEntity<String> removeAllLiquidity(@RequestBody Map<String, String> request) {
         try {
+            Long exchangeId = parseId(request.get("exchangeId"));
             String userId = request.get("userId");
-            BigDecimal maxSlippagePercentage = new BigDecimal(request.get("maxSlippagePercentage"));
-            
-            exchangeService.removeAllLiquidity(userId, maxSlippagePercentage);
+            exchangeService.removeAllLiquidity(exchangeId, userId);
             return ResponseEntity.ok("All liquidity removed successfully");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -87,36 +179,80 @@ public class CarbonExchangeController {
     @PostMapping("/swap-carbon-for-base")
     public ResponseEntity<String> swapCarbonCreditsForBaseCurrency(@RequestParam String trader,
                                                                  @RequestParam BigDecimal amountCarbonCredits,
-                                                                 @RequestParam BigDecimal maxExchangeRate) {
-        exchangeService.swapCarbonCreditsForBaseCurrency(trader, amountCarbonCredits, maxExchangeRate);
+                                                                 @RequestParam BigDecimal maxExchangeRate,
+                                                                 @RequestParam(required = false) Long exchangeId) {
+        exchangeService.swapCarbonCreditsForBaseCurrency(exchangeId, trader, amountCarbonCredits, maxExchangeRate);
         return ResponseEntity.ok("Swap successful");
     }
 
     @PostMapping("/swap-base-for-carbon")
     public ResponseEntity<String> swapBaseCurrencyForCarbonCredits(@RequestParam String trader,
                                                                  @RequestParam BigDecimal amountBaseCurrency,
-                                                                 @RequestParam BigDecimal maxExchangeRate) {
-        exchangeService.swapBaseCurrencyForCarbonCredits(trader, amountBaseCurrency, maxExchangeRate);
+                                                                 @RequestParam BigDecimal maxExchangeRate,
+                                                                 @RequestParam(required = false) Long exchangeId) {
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, amountBaseCurrency, maxExchangeRate);
         return ResponseEntity.ok("Swap successful");
     }
 
     @PostMapping("/swap-base")
     public ResponseEntity<String> swapBase(@RequestBody Map<String, String> request) {
         try {
+            Long exchangeId = parseId(request.get("exchangeId"));
             String address = request.get("address");
             BigDecimal amount = new BigDecimal(request.get("amount"));
             BigDecimal maxSlippage = new BigDecimal(request.get("maxSlippage"));
             
-            exchangeService.swapBaseCurrencyForCarbonCredits(address, amount, maxSlippage);
+            exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, address, amount, maxSlippage);
             return ResponseEntity.ok("交換成功");
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    @PostMapping("/settlement-mode")
+    public ResponseEntity<String> setSettlementMode(@RequestBody Map<String, String> request) {
+        try {
+            Long exchangeId = parseId(request.get("exchangeId"));
+            LiquidityPool.SettlementMode mode = LiquidityPool.SettlementMode.valueOf(request.get("mode"));
+            exchangeService.setSettlementMode(exchangeId, mode);
+            return ResponseEntity.ok("Settlement mode set to " + mode);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 設定池子的交換費率（萬分之一）。
+     */
+    @PostMapping("/fee")
+    public ResponseEntity<String> setFee(@RequestBody Map<String, String> request) {
+        try {
+            Long exchangeId = parseId(request.get("exchangeId"));
+            int feeBps = Integer.parseInt(request.get("feeBps"));
+            exchangeService.setFeeBps(exchangeId, feeBps);
+            return ResponseEntity.ok("Fee set to " + feeBps + " bps");
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 領取提供流動性累計的交換費用，回傳支付的 USDC 與 CCT 數量。
+     */
+    @PostMapping("/claim-fees")
+    public ResponseEntity<?> claimFees(@RequestBody Map<String, String> request) {
+        try {
+            Long exchangeId = parseId(request.get("exchangeId"));
+            String userId = request.get("userId");
+            return ResponseEntity.ok(exchangeService.claimFees(exchangeId, userId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @GetMapping("/liquidity-info")
-    public LiquidityInfo getLiquidityInfo() {
-        return exchangeService.getLiquidityInfo();
+    public LiquidityInfo getLiquidityInfo(@RequestParam(required = false) Long exchangeId) {
+        return exchangeService.getLiquidityInfo(exchangeId);
     }
 
     @PostMapping("/get-asset")
@@ -130,8 +266,16 @@ public class CarbonExchangeController {
         }
     }
 
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static Long parseId(String value) {
+        return value == null || value.trim().isEmpty() ? null : Long.valueOf(value.trim());
+    }
+
     // @GetMapping("/api/exchange/liquidity-info")
     // public Map<String, BigDecimal> getLiquidityInfo() {
     //     return carbonExchangeService.getLiquidityInfo();
     // }
-} 
\ No newline at end of file
+}
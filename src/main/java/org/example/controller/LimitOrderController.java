@@ -0,0 +1,84 @@
+package org.example.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LimitOrder;
+import org.example.service.LimitOrderService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 限價單。side 為 BUY（投入 USDC 買 CCT）或 SELL（投入 CCT 賣出），limitRate 以 USDC / CCT 表示。
+ */
+@RestController
+@RequestMapping("/api/exchange/orders")
+@RequiredArgsConstructor
+public class LimitOrderController {
+    private final LimitOrderService limitOrderService;
+
+    @PostMapping
+    public ResponseEntity<?> placeOrder(@RequestBody Map<String, String> request) {
+        try {
+            String exchangeId = request.get("exchangeId");
+            LimitOrder order = limitOrderService.placeOrder(
+                exchangeId == null || exchangeId.trim().isEmpty() ? null : Long.valueOf(exchangeId.trim()),
+                request.get("trader"),
+                parseSide(request.get("side")),
+                new BigDecimal(request.get("amount")),
+                new BigDecimal(request.get("limitRate")));
+            return ResponseEntity.ok(order);
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/{orderId}")
+    public ResponseEntity<?> cancelOrder(@PathVariable Long orderId, @RequestParam String trader) {
+        try {
+            return ResponseEntity.ok(limitOrderService.cancelOrder(orderId, trader));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @GetMapping
+    public ResponseEntity<?> getOrders(@RequestParam String trader,
+                                       @RequestParam(defaultValue = "OPEN") String status) {
+        try {
+            return ResponseEntity.ok(limitOrderService.getOrders(trader, LimitOrder.Status.valueOf(status.toUpperCase())));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 限價簿兩邊最優的 depth 個價位與目前匯率。
+     */
+    @GetMapping("/book")
+    public ResponseEntity<?> getBook(@RequestParam(required = false) Long exchangeId,
+                                     @RequestParam(defaultValue = "" + LimitOrderService.DEFAULT_BOOK_DEPTH) int depth) {
+        try {
+            return ResponseEntity.ok(limitOrderService.getBook(exchangeId, depth));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private static LimitOrder.Side parseSide(String side) {
+        if (side == null) {
+            throw new IllegalArgumentException("side is required");
+        }
+        switch (side.trim().toUpperCase()) {
+            case "BUY":
+            case "BUY_CARBON":
+                return LimitOrder.Side.BUY_CARBON;
+            case "SELL":
+            case "SELL_CARBON":
+                return LimitOrder.Side.SELL_CARBON;
+            default:
+                throw new IllegalArgumentException("Unknown side: " + side);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package org.example.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.example.model.LiquidityInfo;
+import org.example.service.CarbonCreditService;
+import org.example.service.CarbonExchangeService;
+import org.example.service.MarketChangeFeed;
+import org.example.service.USDCService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 池子狀態與地址餘額的推送通道（/ws/market）。
+ * 用戶端送出 {"action":"subscribe","exchangeId":1,"address":"0x..."} 訂閱池子與自己的地址，
+ * exchangeId 為 null 時訂閱預設池子；"unsubscribe" 取消訂閱。
+ * 每個推送週期對每個連線最多送出一則訊息：{"pools":[LiquidityInfo...],"accounts":[{address,usdcBalance,cctBalance}...]}，
+ * 只包含該連線訂閱且在週期內有變動（或剛訂閱）的項目，各項目都是推送當下的最新狀態。
+ */
+@Component
+@RequiredArgsConstructor
+public class MarketUpdateSocketHandler extends TextWebSocketHandler {
+    private static final Logger logger = LoggerFactory.getLogger(MarketUpdateSocketHandler.class);
+
+    // 慢速用戶端的送出時間與緩衝上限，超過時關閉該連線而不拖慢其他用戶端
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int BUFFER_SIZE_LIMIT = 512 * 1024;
+
+    private final MarketChangeFeed marketChangeFeed;
+    private final CarbonExchangeService exchangeService;
+    private final USDCService usdcService;
+    private final CarbonCreditService carbonCreditService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${exchange.push.tick-ms:250}")
+    private long tickMs;
+
+    private ScheduledExecutorService pusher;
+    private final ConcurrentMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        pusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "market-push"));
+        pusher.scheduleWithFixedDelay(this::push, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        pusher.shutdown();
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        subscribers.put(session.getId(), new Subscriber(
+            new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, BUFFER_SIZE_LIMIT)));
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        subscribers.remove(session.getId());
+    }
+
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws IOException {
+        Subscriber subscriber = subscribers.get(session.getId());
+        if (subscriber == null) {
+            return;
+        }
+        try {
+            JsonNode request = objectMapper.readTree(message.getPayload());
+            String action = request.path("action").asText();
+            boolean subscribe = "subscribe".equals(action);
+            if (!subscribe && !"unsubscribe".equals(action)) {
+                throw new IllegalArgumentException("Unknown action: " + action);
+            }
+            if (request.hasNonNull("address")) {
+                String address = request.get("address").asText();
+                if (subscribe) {
+                    subscriber.addresses.add(address);
+                    subscriber.initialAddresses.add(address);
+                } else {
+                    subscriber.addresses.remove(address);
+                }
+            }
+            if (request.has("exchangeId")) {
+                JsonNode idNode = request.get("exchangeId");
+                Long requested = idNode.isNull() ? null : idNode.asLong();
+                // 解析預設池子並確認池子存在
+                Long exchangeId = exchangeService.getPoolSnapshot(requested).getExchangeId();
+                if (subscribe) {
+                    subscriber.pools.add(exchangeId);
+                    subscriber.initialPools.add(exchangeId);
+                } else {
+                    subscriber.pools.remove(exchangeId);
+                }
+            }
+        } catch (Exception e) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            subscriber.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(error)));
+        }
+    }
+
+    private void push() {
+        List<Long> changedPools = marketChangeFeed.drainPools();
+        List<String> changedAddresses = marketChangeFeed.drainAddresses();
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        // 同一個池子或地址在本週期只讀取一次，由所有訂閱者共用
+        Map<Long, LiquidityInfo> pools = new HashMap<>();
+        Map<String, Map<String, Object>> accounts = new HashMap<>();
+        for (Subscriber subscriber : subscribers.values()) {
+            try {
+                Set<Long> poolIds = new HashSet<>(changedPools);
+                poolIds.retainAll(subscriber.pools);
+                drainInto(subscriber.initialPools, poolIds);
+                Set<String> addresses = new HashSet<>(changedAddresses);
+                addresses.retainAll(subscriber.addresses);
+                drainInto(subscriber.initialAddresses, addresses);
+                if (poolIds.isEmpty() && addresses.isEmpty()) {
+                    continue;
+                }
+
+                Map<String, Object> update = new LinkedHashMap<>();
+                List<LiquidityInfo> poolUpdates = new ArrayList<>();
+                for (Long exchangeId : poolIds) {
+                    poolUpdates.add(pools.computeIfAbsent(exchangeId, exchangeService::getLiquidityInfo));
+                }
+                List<Map<String, Object>> accountUpdates = new ArrayList<>();
+                for (String address : addresses) {
+                    accountUpdates.add(accounts.computeIfAbsent(address, this::readAccount));
+                }
+                update.put("pools", poolUpdates);
+                update.put("accounts", accountUpdates);
+                subscriber.session.sendMessage(new TextMessage(objectMapper.writeValueAsString(update)));
+            } catch (Exception e) {
+                logger.warn("推送市場更新失敗，關閉連線: {}", subscriber.session.getId(), e);
+                subscribers.remove(subscriber.session.getId());
+                closeQuietly(subscriber.session);
+            }
+        }
+    }
+
+    private Map<String, Object> readAccount(String address) {
+        Map<String, Object> account = new LinkedHashMap<>();
+        account.put("address", address);
+        account.put("usdcBalance", usdcService.getBalance(address));
+        BigDecimal cctBalance;
+        try {
+            cctBalance = carbonCreditService.balanceOf(address);
+        } catch (IllegalStateException e) {
+            // 尚未發行代幣
+            cctBalance = BigDecimal.ZERO;
+        }
+        account.put("cctBalance", cctBalance);
+        return account;
+    }
+
+    private static <T> void drainInto(Set<T> source, Set<T> target) {
+        for (T item : source) {
+            if (source.remove(item)) {
+                target.add(item);
+            }
+        }
+    }
+
+    private static void closeQuietly(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ignored) {
+            // 連線已中斷
+        }
+    }
+
+    /**
+     * 單一連線的訂閱；initial 集合記錄剛訂閱、下個週期需送出完整狀態的項目。
+     */
+    private static final class Subscriber {
+        private final WebSocketSession session;
+        private final Set<Long> pools = ConcurrentHashMap.newKeySet();
+        private final Set<String> addresses = ConcurrentHashMap.newKeySet();
+        private final Set<Long> initialPools = ConcurrentHashMap.newKeySet();
+        private final Set<String> initialAddresses = ConcurrentHashMap.newKeySet();
+
+        private Subscriber(WebSocketSession session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.example.service.SwapRouter;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 跨池子路由交換。代幣以 USDC 或碳權代幣的 tokenId 表示，maxHops 省略時使用設定的上限。
+ */
+@RestController
+@RequestMapping("/api/exchange/route")
+@RequiredArgsConstructor
+public class SwapRouterController {
+    private final SwapRouter swapRouter;
+
+    @GetMapping("/quote")
+    public ResponseEntity<?> quote(@RequestParam String tokenIn,
+                                   @RequestParam String tokenOut,
+                                   @RequestParam BigDecimal amountIn,
+                                   @RequestParam(required = false) Integer maxHops) {
+        try {
+            return ResponseEntity.ok(swapRouter.quote(tokenIn, tokenOut, amountIn, maxHops));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @PostMapping("/swap")
+    public ResponseEntity<?> swap(@RequestBody Map<String, String> request) {
+        try {
+            String minAmountOut = request.get("minAmountOut");
+            String maxHops = request.get("maxHops");
+            return ResponseEntity.ok(swapRouter.swap(
+                request.get("trader"),
+                request.get("tokenIn"),
+                request.get("tokenOut"),
+                new BigDecimal(request.get("amountIn")),
+                minAmountOut == null || minAmountOut.trim().isEmpty() ? null : new BigDecimal(minAmountOut.trim()),
+                maxHops == null || maxHops.trim().isEmpty() ? null : Integer.valueOf(maxHops.trim())));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
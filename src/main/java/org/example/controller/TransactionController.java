@@ -1,24 +1,95 @@
 package org.example.controller;
 
-import org.example.model.Transaction;
+import org.example.model.TransactionPage;
+import org.example.service.AddressStatsService;
 import org.example.service.TransactionService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 
 @RestController
 @RequestMapping("/api/transactions")
 public class TransactionController {
     private final TransactionService transactionService;
+    private final AddressStatsService addressStatsService;
 
     @Autowired
-    public TransactionController(TransactionService transactionService) {
+    public TransactionController(TransactionService transactionService, AddressStatsService addressStatsService) {
         this.transactionService = transactionService;
+        this.addressStatsService = addressStatsService;
     }
 
+    /**
+     * 地址的交易統計：各資產的交易量、注入的流動性、各類交易筆數與首末次活動時間。
+     */
+    @GetMapping("/{address}/stats")
+    public ResponseEntity<?> getStats(@PathVariable String address) {
+        return ResponseEntity.ok(addressStatsService.getStats(address));
+    }
+
+    /**
+     * 地址的交易紀錄，依時間倒序分頁；以回應中的 nextCursor 作為 cursor 取得下一頁。
+     * since / until 為 ISO 日期時間（例如 2024-01-01T00:00:00）。
+     */
     @GetMapping("/{address}")
-    public List<Transaction> getTransactions(@PathVariable String address) {
-        return transactionService.getTransactionsByAddress(address);
+    public ResponseEntity<?> getTransactions(@PathVariable String address,
+                                             @RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "" + TransactionService.DEFAULT_PAGE_SIZE) int limit,
+                                             @RequestParam(required = false) String type,
+                                             @RequestParam(required = false)
+                                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                             @RequestParam(required = false)
+                                             @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime until) {
+        try {
+            TransactionPage page = transactionService.getTransactionPage(address, type, since, until, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    /**
+     * 以串流匯出地址的完整交易紀錄（依時間正序），format 為 ndjson（預設）或 csv；
+     * 邊讀邊寫，不在記憶體中組出完整清單。
+     */
+    @GetMapping("/{address}/export")
+    public ResponseEntity<StreamingResponseBody> exportTransactions(@PathVariable String address,
+                                                @RequestParam(defaultValue = "ndjson") String format,
+                                                @RequestParam(required = false) String type,
+                                                @RequestParam(required = false)
+                                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+                                                @RequestParam(required = false)
+                                                @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime until) {
+        TransactionService.ExportFormat exportFormat;
+        try {
+            exportFormat = TransactionService.ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return badRequest("Unsupported format: " + format);
+        }
+        if (since != null && until != null && !since.isBefore(until)) {
+            return badRequest("since must be before until");
+        }
+        boolean csv = exportFormat == TransactionService.ExportFormat.CSV;
+        StreamingResponseBody body = out -> transactionService.exportHistory(address, type, since, until, exportFormat, out);
+        return ResponseEntity.ok()
+            .contentType(csv ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson"))
+            .header(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"transactions-" + address + (csv ? ".csv" : ".ndjson") + "\"")
+            .body(body);
+    }
+
+    // 串流端點的回應型別固定為 StreamingResponseBody，錯誤訊息也以它寫出
+    private static ResponseEntity<StreamingResponseBody> badRequest(String message) {
+        return ResponseEntity.badRequest()
+            .contentType(MediaType.TEXT_PLAIN)
+            .body(out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
     }
-} 
\ No newline at end of file
+}
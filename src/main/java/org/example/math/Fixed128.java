@@ -0,0 +1,338 @@
+package org.example.math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * 以兩個 long 表示的無號 128 位元定點數，小數位數固定為 18（對應資料表的 DECIMAL(36,18)）。
+ * 物件為可變的，運算結果直接寫入接收者，呼叫端可重複使用實例以避免配置新物件。
+ */
+public final class Fixed128 {
+    public static final int SCALE = 18;
+    public static final long ONE_UNSCALED = 1_000_000_000_000_000_000L;
+
+    private static final long MASK = 0xFFFFFFFFL;
+    // mulDiv 暫存陣列中各段的起始位置：被除數、除數、正規化後的被除數與除數、餘數
+    private static final int U = 0;
+    private static final int V = 8;
+    private static final int UN = 12;
+    private static final int VN = 21;
+    private static final int R = 25;
+    private static final int SCRATCH_SIZE = 29;
+
+    private long hi;
+    private long lo;
+    private int[] scratch;
+
+    public Fixed128() {
+    }
+
+    public Fixed128(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+    }
+
+    public long hi() {
+        return hi;
+    }
+
+    public long lo() {
+        return lo;
+    }
+
+    public Fixed128 set(long hi, long lo) {
+        this.hi = hi;
+        this.lo = lo;
+        return this;
+    }
+
+    public Fixed128 set(Fixed128 other) {
+        return set(other.hi, other.lo);
+    }
+
+    public Fixed128 setOne() {
+        return set(0, ONE_UNSCALED);
+    }
+
+    /**
+     * 判斷數值能否無損地以本型別表示：非負、小數位數不超過 18 且未縮放值不超過 128 位元。
+     */
+    public static boolean fits(BigDecimal value) {
+        if (value.signum() < 0) {
+            return false;
+        }
+        if (value.signum() == 0) {
+            return true;
+        }
+        if (value.scale() > SCALE && value.stripTrailingZeros().scale() > SCALE) {
+            return false;
+        }
+        // 未縮放值的位元數上界：log2(10) < 3.33
+        return value.precision() - value.scale() + SCALE <= 38;
+    }
+
+    /**
+     * 以 BigDecimal 設定數值，呼叫前須以 {@link #fits(BigDecimal)} 確認可表示。
+     */
+    public Fixed128 set(BigDecimal value) {
+        BigInteger unscaled = value.scale() == SCALE
+                ? value.unscaledValue()
+                : value.setScale(SCALE).unscaledValue();
+        if (unscaled.bitLength() < 64) {
+            return set(0, unscaled.longValue());
+        }
+        return set(unscaled.shiftRight(64).longValue(), unscaled.longValue());
+    }
+
+    public BigDecimal toBigDecimal() {
+        if (hi == 0 && lo >= 0) {
+            return BigDecimal.valueOf(lo, SCALE);
+        }
+        byte[] magnitude = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            magnitude[i] = (byte) (hi >>> (56 - 8 * i));
+            magnitude[i + 8] = (byte) (lo >>> (56 - 8 * i));
+        }
+        return new BigDecimal(new BigInteger(1, magnitude), SCALE);
+    }
+
+    public boolean isZero() {
+        return hi == 0 && lo == 0;
+    }
+
+    public int compareTo(Fixed128 other) {
+        return compare(hi, lo, other.hi, other.lo);
+    }
+
+    /**
+     * this = a + b，溢位時拋出 ArithmeticException。
+     */
+    public Fixed128 add(Fixed128 a, Fixed128 b) {
+        long sumLo = a.lo + b.lo;
+        long carry = Long.compareUnsigned(sumLo, a.lo) < 0 ? 1 : 0;
+        long partialHi = a.hi + b.hi;
+        long sumHi = partialHi + carry;
+        if (Long.compareUnsigned(partialHi, a.hi) < 0 || (carry == 1 && sumHi == 0)) {
+            throw new ArithmeticException("Fixed128 overflow");
+        }
+        return set(sumHi, sumLo);
+    }
+
+    /**
+     * this = a - b，結果為負時拋出 ArithmeticException。
+     */
+    public Fixed128 subtract(Fixed128 a, Fixed128 b) {
+        if (compare(a.hi, a.lo, b.hi, b.lo) < 0) {
+            throw new ArithmeticException("Fixed128 underflow");
+        }
+        long diffLo = a.lo - b.lo;
+        long borrow = Long.compareUnsigned(a.lo, b.lo) < 0 ? 1 : 0;
+        return set(a.hi - b.hi - borrow, diffLo);
+    }
+
+    /**
+     * 判斷 {@link #mulDiv} 是否支援此捨入模式。
+     */
+    public static boolean supports(RoundingMode mode) {
+        return mode == RoundingMode.DOWN || mode == RoundingMode.UP || mode == RoundingMode.HALF_UP;
+    }
+
+    /**
+     * this = a * b / c，以 256 位元中間值計算，依 mode 捨入：DOWN 向零截斷，UP 在有餘數時進位，
+     * HALF_UP 四捨五入；其他模式拋出 IllegalArgumentException。結果超過 128 位元時拋出 ArithmeticException。
+     */
+    public Fixed128 mulDiv(Fixed128 a, Fixed128 b, Fixed128 c, RoundingMode mode) {
+        if (!supports(mode)) {
+            throw new IllegalArgumentException("Unsupported rounding mode: " + mode);
+        }
+        if (c.isZero()) {
+            throw new ArithmeticException("Division by zero");
+        }
+        // 256 位元乘積 p3:p2:p1:p0
+        long a0 = a.lo, a1 = a.hi, b0 = b.lo, b1 = b.hi;
+
+        long p0 = a0 * b0;
+        long p1 = unsignedMultiplyHigh(a0, b0);
+
+        long t = a1 * b0;
+        long tHi = unsignedMultiplyHigh(a1, b0);
+        long p1n = p1 + t;
+        long carry = Long.compareUnsigned(p1n, p1) < 0 ? 1 : 0;
+        p1 = p1n;
+        long p2 = tHi + carry;
+        long p3 = Long.compareUnsigned(p2, tHi) < 0 ? 1 : 0;
+
+        t = a0 * b1;
+        tHi = unsignedMultiplyHigh(a0, b1);
+        p1n = p1 + t;
+        carry = Long.compareUnsigned(p1n, p1) < 0 ? 1 : 0;
+        p1 = p1n;
+        long p2n = p2 + tHi;
+        long carry2 = Long.compareUnsigned(p2n, p2) < 0 ? 1 : 0;
+        p2 = p2n + carry;
+        carry2 += Long.compareUnsigned(p2, p2n) < 0 ? 1 : 0;
+        p3 += carry2;
+
+        t = a1 * b1;
+        tHi = unsignedMultiplyHigh(a1, b1);
+        p2n = p2 + t;
+        carry = Long.compareUnsigned(p2n, p2) < 0 ? 1 : 0;
+        p2 = p2n;
+        p3 = p3 + tHi + carry;
+
+        // 以 32 位元為一位數的長除法（Knuth Algorithm D），暫存陣列隨接收者重複使用
+        if (scratch == null) {
+            scratch = new int[SCRATCH_SIZE];
+        }
+        int[] w = scratch;
+        w[U] = (int) p0; w[U + 1] = (int) (p0 >>> 32);
+        w[U + 2] = (int) p1; w[U + 3] = (int) (p1 >>> 32);
+        w[U + 4] = (int) p2; w[U + 5] = (int) (p2 >>> 32);
+        w[U + 6] = (int) p3; w[U + 7] = (int) (p3 >>> 32);
+        w[V] = (int) c.lo; w[V + 1] = (int) (c.lo >>> 32);
+        w[V + 2] = (int) c.hi; w[V + 3] = (int) (c.hi >>> 32);
+
+        int m = 8;
+        while (m > 0 && w[U + m - 1] == 0) {
+            m--;
+        }
+        int n = 4;
+        while (w[V + n - 1] == 0) {
+            n--;
+        }
+
+        long qHi = 0, qLo = 0, rHi, rLo;
+        if (m < n) {
+            rHi = p1;
+            rLo = p0;
+        } else if (n == 1) {
+            long divisor = w[V] & MASK;
+            long rem = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long num = (rem << 32) | (w[U + j] & MASK);
+                long digit = Long.divideUnsigned(num, divisor);
+                rem = Long.remainderUnsigned(num, divisor);
+                if (j >= 4) {
+                    if (digit != 0) {
+                        throw new ArithmeticException("Fixed128 overflow");
+                    }
+                } else if (j >= 2) {
+                    qHi |= digit << (32 * (j - 2));
+                } else {
+                    qLo |= digit << (32 * j);
+                }
+            }
+            rHi = 0;
+            rLo = rem;
+        } else {
+            // 正規化：使除數最高位數的最高位元為 1
+            int shift = Integer.numberOfLeadingZeros(w[V + n - 1]);
+            for (int i = n - 1; i > 0; i--) {
+                w[VN + i] = shift == 0 ? w[V + i] : (w[V + i] << shift) | (w[V + i - 1] >>> (32 - shift));
+            }
+            w[VN] = w[V] << shift;
+            w[UN + m] = shift == 0 ? 0 : w[U + m - 1] >>> (32 - shift);
+            for (int i = m - 1; i > 0; i--) {
+                w[UN + i] = shift == 0 ? w[U + i] : (w[U + i] << shift) | (w[U + i - 1] >>> (32 - shift));
+            }
+            w[UN] = w[U] << shift;
+
+            long vTop = w[VN + n - 1] & MASK;
+            long vNext = w[VN + n - 2] & MASK;
+            for (int j = m - n; j >= 0; j--) {
+                long num = ((w[UN + j + n] & MASK) << 32) | (w[UN + j + n - 1] & MASK);
+                long qhat = Long.divideUnsigned(num, vTop);
+                long rhat = Long.remainderUnsigned(num, vTop);
+                while (qhat > MASK
+                        || Long.compareUnsigned(qhat * vNext, (rhat << 32) | (w[UN + j + n - 2] & MASK)) > 0) {
+                    qhat--;
+                    rhat += vTop;
+                    if (rhat > MASK) {
+                        break;
+                    }
+                }
+
+                long borrow = 0;
+                long diff;
+                for (int i = 0; i < n; i++) {
+                    long product = qhat * (w[VN + i] & MASK);
+                    diff = (w[UN + i + j] & MASK) - borrow - (product & MASK);
+                    w[UN + i + j] = (int) diff;
+                    borrow = (product >>> 32) - (diff >> 32);
+                }
+                diff = (w[UN + j + n] & MASK) - borrow;
+                w[UN + j + n] = (int) diff;
+
+                if (diff < 0) {
+                    // 估計的商多了 1，加回除數
+                    qhat--;
+                    long addCarry = 0;
+                    for (int i = 0; i < n; i++) {
+                        diff = (w[UN + i + j] & MASK) + (w[VN + i] & MASK) + addCarry;
+                        w[UN + i + j] = (int) diff;
+                        addCarry = diff >>> 32;
+                    }
+                    w[UN + j + n] += (int) addCarry;
+                }
+
+                if (j >= 4) {
+                    if (qhat != 0) {
+                        throw new ArithmeticException("Fixed128 overflow");
+                    }
+                } else if (j >= 2) {
+                    qHi |= qhat << (32 * (j - 2));
+                } else {
+                    qLo |= qhat << (32 * j);
+                }
+            }
+
+            // 反正規化餘數
+            for (int i = 0; i < n; i++) {
+                w[R + i] = shift == 0 ? w[UN + i] : (w[UN + i] >>> shift) | (w[UN + i + 1] << (32 - shift));
+            }
+            for (int i = n; i < 4; i++) {
+                w[R + i] = 0;
+            }
+            rLo = (w[R] & MASK) | ((w[R + 1] & MASK) << 32);
+            rHi = (w[R + 2] & MASK) | ((w[R + 3] & MASK) << 32);
+        }
+
+        boolean roundUp;
+        if (mode == RoundingMode.UP) {
+            roundUp = rHi != 0 || rLo != 0;
+        } else if (mode == RoundingMode.HALF_UP) {
+            // 2r >= c 時進位
+            boolean twiceOverflows = (rHi >>> 63) != 0;
+            long twiceHi = (rHi << 1) | (rLo >>> 63);
+            long twiceLo = rLo << 1;
+            roundUp = twiceOverflows || compare(twiceHi, twiceLo, c.hi, c.lo) >= 0;
+        } else {
+            roundUp = false;
+        }
+        if (roundUp) {
+            qLo++;
+            if (qLo == 0) {
+                qHi++;
+                if (qHi == 0) {
+                    throw new ArithmeticException("Fixed128 overflow");
+                }
+            }
+        }
+        return set(qHi, qLo);
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+
+    private static int compare(long aHi, long aLo, long bHi, long bLo) {
+        int cmp = Long.compareUnsigned(aHi, bHi);
+        return cmp != 0 ? cmp : Long.compareUnsigned(aLo, bLo);
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+}
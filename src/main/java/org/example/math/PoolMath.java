@@ -0,0 +1,109 @@
+package org.example.math;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+
+/**
+ * 流動性池的定點運算：匯率、恆定乘積交換與份額計算。
+ * 運算在 {@link Fixed128} 上以基本型別完成（捨入模式 DOWN、UP、HALF_UP）；其他捨入模式與
+ * 無法以 18 位小數無損表示的輸入（負數、更多小數位、超出 128 位元）退回與原本相同的 BigDecimal 計算。
+ * <p>
+ * 以 BigDecimal 為參數的方法每次呼叫仍要轉換輸入與結果，會配置 BigInteger 與 BigDecimal；
+ * 不配置物件的是直接以 {@link Fixed128} 運算的多載，路由報價的搜尋使用它們。
+ */
+public final class PoolMath {
+    private static final int SCALE = Fixed128.SCALE;
+
+    // 每個線程重複使用的暫存數值：a, b, c, 結果
+    private static final ThreadLocal<Fixed128[]> SCRATCH = ThreadLocal.withInitial(
+            () -> new Fixed128[] {new Fixed128(), new Fixed128(), new Fixed128(), new Fixed128()});
+    // 含費報價的暫存數值：費率、萬分之一基數、費用、淨投入、投入後的儲備
+    private static final ThreadLocal<Fixed128[]> QUOTE_SCRATCH = ThreadLocal.withInitial(
+            () -> new Fixed128[] {new Fixed128(), new Fixed128(), new Fixed128(), new Fixed128(), new Fixed128()});
+    private static final long BPS = 10_000;
+
+    private PoolMath() {
+    }
+
+    /**
+     * a * b / c，結果保留 18 位小數，等同於 {@code a.multiply(b).divide(c, 18, mode)}。
+     */
+    public static BigDecimal mulDiv(BigDecimal a, BigDecimal b, BigDecimal c, RoundingMode mode) {
+        if (!Fixed128.supports(mode) || !Fixed128.fits(a) || !Fixed128.fits(b) || !Fixed128.fits(c) || c.signum() == 0) {
+            return a.multiply(b).divide(c, SCALE, mode);
+        }
+        Fixed128[] s = SCRATCH.get();
+        try {
+            return s[3].mulDiv(s[0].set(a), s[1].set(b), s[2].set(c), mode).toBigDecimal();
+        } catch (ArithmeticException e) {
+            return a.multiply(b).divide(c, SCALE, mode);
+        }
+    }
+
+    /**
+     * a / c，結果保留 18 位小數，等同於 {@code a.divide(c, 18, mode)}。
+     */
+    public static BigDecimal divide(BigDecimal a, BigDecimal c, RoundingMode mode) {
+        if (!Fixed128.supports(mode) || !Fixed128.fits(a) || !Fixed128.fits(c) || c.signum() == 0) {
+            return a.divide(c, SCALE, mode);
+        }
+        Fixed128[] s = SCRATCH.get();
+        try {
+            return s[3].mulDiv(s[0].set(a), s[1].setOne(), s[2].set(c), mode).toBigDecimal();
+        } catch (ArithmeticException e) {
+            return a.divide(c, SCALE, mode);
+        }
+    }
+
+    /**
+     * 平方根，結果保留 18 位小數並向下截斷；用於由目標匯率反推儲備。
+     */
+    public static BigDecimal sqrt(BigDecimal value) {
+        return value.sqrt(new MathContext(value.precision() + SCALE + 2)).setScale(SCALE, RoundingMode.DOWN);
+    }
+
+    /**
+     * 恆定乘積公式下投入 amountIn 可換得的數量：amountIn * reserveOut / (reserveIn + amountIn)，向下截斷。
+     */
+    public static BigDecimal amountOut(BigDecimal amountIn, BigDecimal reserveIn, BigDecimal reserveOut) {
+        if (!Fixed128.fits(amountIn) || !Fixed128.fits(reserveIn) || !Fixed128.fits(reserveOut)) {
+            return amountIn.multiply(reserveOut).divide(reserveIn.add(amountIn), SCALE, RoundingMode.DOWN);
+        }
+        Fixed128[] s = SCRATCH.get();
+        try {
+            return amountOut(s[0].set(amountIn), s[1].set(reserveIn), s[2].set(reserveOut), s[3]).toBigDecimal();
+        } catch (ArithmeticException e) {
+            return amountIn.multiply(reserveOut).divide(reserveIn.add(amountIn), SCALE, RoundingMode.DOWN);
+        }
+    }
+
+    /**
+     * 不配置物件的恆定乘積報價，結果寫入 out；reserveIn 會被改寫為 reserveIn + amountIn。
+     */
+    public static Fixed128 amountOut(Fixed128 amountIn, Fixed128 reserveIn, Fixed128 reserveOut, Fixed128 out) {
+        reserveIn.add(reserveIn, amountIn);
+        return out.mulDiv(amountIn, reserveOut, reserveIn, RoundingMode.DOWN);
+    }
+
+    /**
+     * 不配置物件的含費報價：先扣除萬分之 feeBps 的交換費用（向上取整，與 LiquidityPool#swapFee 相同），
+     * 再以恆定乘積計算淨投入可換得的數量寫入 out；淨投入為零時結果為零。參數都不會被改寫，out 不可與它們是同一個實例。
+     */
+    public static Fixed128 amountOutAfterFee(Fixed128 amountIn, int feeBps, Fixed128 reserveIn, Fixed128 reserveOut,
+                                             Fixed128 out) {
+        Fixed128[] s = QUOTE_SCRATCH.get();
+        Fixed128 net = s[3];
+        if (feeBps == 0) {
+            net.set(amountIn);
+        } else {
+            // mulDiv 以未縮放值計算 a * b / c，費率與基數只需使用相同的縮放
+            Fixed128 fee = s[2].mulDiv(amountIn, s[0].set(0, feeBps), s[1].set(0, BPS), RoundingMode.UP);
+            net.subtract(amountIn, fee);
+        }
+        if (net.isZero()) {
+            return out.set(0, 0);
+        }
+        return amountOut(net, s[4].set(reserveIn), reserveOut, out);
+    }
+}
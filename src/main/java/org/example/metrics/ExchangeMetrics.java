@@ -0,0 +1,147 @@
+package org.example.metrics;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.example.model.PoolSnapshot;
+import org.example.service.PoolSnapshotStore;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 交易熱路徑的 Micrometer 指標。各操作的延遲以 {@code @Timed} 記錄在 exchange.operation，這裡記錄：
+ * <ul>
+ *   <li>exchange.pool.wait：取得池子寫入權的等待時間，mode 為 row_lock（列鎖）或 engine（單寫者引擎的排隊時間）</li>
+ *   <li>exchange.balance.update：餘額列條件更新的時間，競爭時主要是等待列鎖</li>
+ *   <li>exchange.pool.reserves、exchange.pool.rate：各池子最新快照的儲備與匯率</li>
+ * </ul>
+ */
+@Component
+public class ExchangeMetrics {
+    public static final String OPERATION = "exchange.operation";
+    public static final String ROW_LOCK = "row_lock";
+    public static final String ENGINE = "engine";
+
+    private final MeterRegistry registry;
+    private final Timer rowLockWait;
+    private final Timer engineWait;
+    private final Timer usdcUpdate;
+    private final Timer cctUpdate;
+    private final ConcurrentMap<Long, PoolSnapshot> pools = new ConcurrentHashMap<>();
+
+    public ExchangeMetrics(MeterRegistry registry, PoolSnapshotStore snapshotStore) {
+        this.registry = registry;
+        this.rowLockWait = poolWaitTimer(ROW_LOCK);
+        this.engineWait = poolWaitTimer(ENGINE);
+        this.usdcUpdate = balanceUpdateTimer("USDC");
+        this.cctUpdate = balanceUpdateTimer("CCT");
+        snapshotStore.addListener(this::poolChanged);
+    }
+
+    /**
+     * 開始等待池子的寫入權；取得後呼叫 {@link PoolWait#acquired()}。
+     */
+    public PoolWait poolWait(String mode) {
+        return new PoolWait(ENGINE.equals(mode) ? engineWait : rowLockWait, SqlStatementCounter.current());
+    }
+
+    /**
+     * 執行 USDC 餘額列的條件更新並記錄耗時，回傳更新的列數。
+     */
+    public int usdcBalanceUpdate(IntSupplier update) {
+        return timeUpdate(usdcUpdate, update);
+    }
+
+    public int cctBalanceUpdate(IntSupplier update) {
+        return timeUpdate(cctUpdate, update);
+    }
+
+    private static int timeUpdate(Timer timer, IntSupplier update) {
+        long started = System.nanoTime();
+        try {
+            return update.getAsInt();
+        } finally {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // 池子第一次發布快照時註冊 gauge，之後只更新 gauge 讀取的快照
+    private void poolChanged(PoolSnapshot snapshot) {
+        Long exchangeId = snapshot.getExchangeId();
+        PoolSnapshot previous = pools.putIfAbsent(exchangeId, snapshot);
+        if (previous != null) {
+            pools.merge(exchangeId, snapshot, (a, b) -> b.getVersion() > a.getVersion() ? b : a);
+            return;
+        }
+        poolGauge("exchange.pool.reserves", exchangeId, PoolSnapshot::getUsdcReserves)
+            .tag("asset", "USDC").description("USDC reserves of the pool").register(registry);
+        poolGauge("exchange.pool.reserves", exchangeId, PoolSnapshot::getCctReserves)
+            .tag("asset", "CCT").description("CCT reserves of the pool").register(registry);
+        poolGauge("exchange.pool.rate", exchangeId, PoolSnapshot::getExchangeRate)
+            .description("USDC per CCT").register(registry);
+    }
+
+    private Gauge.Builder<ConcurrentMap<Long, PoolSnapshot>> poolGauge(String name, Long exchangeId,
+                                                                       Function<PoolSnapshot, BigDecimal> value) {
+        return Gauge.builder(name, pools, p -> {
+            PoolSnapshot snapshot = p.get(exchangeId);
+            BigDecimal current = snapshot == null ? null : value.apply(snapshot);
+            return current == null ? Double.NaN : current.doubleValue();
+        }).tag("exchangeId", exchangeId.toString());
+    }
+
+    private Timer poolWaitTimer(String mode) {
+        return Timer.builder("exchange.pool.wait")
+            .description("Time spent waiting for write access to a liquidity pool")
+            .tag("mode", mode)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    private Timer balanceUpdateTimer(String asset) {
+        return Timer.builder("exchange.balance.update")
+            .description("Time of a conditional balance row update, dominated by row lock waits under contention")
+            .tag("asset", asset)
+            .publishPercentileHistogram()
+            .register(registry);
+    }
+
+    /**
+     * 一次取得池子寫入權的等待。同時記下呼叫端的 SQL 計數器，操作在引擎的工作線程上執行時也計入原請求。
+     */
+    public static final class PoolWait {
+        private final Timer timer;
+        private final AtomicInteger statements;
+        private final long started = System.nanoTime();
+
+        private PoolWait(Timer timer, AtomicInteger statements) {
+            this.timer = timer;
+            this.statements = statements;
+        }
+
+        public void acquired() {
+            timer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 在取得寫入權的線程上執行 operation。
+         */
+        public <T> T acquired(Supplier<T> operation) {
+            acquired();
+            AtomicInteger previous = SqlStatementCounter.bind(statements);
+            try {
+                return operation.get();
+            } finally {
+                SqlStatementCounter.bind(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 計算目前請求執行的 SQL 語句數：Hibernate 每準備一條語句呼叫一次 inspect，計入目前線程綁定的計數器。
+ * 計數器由 {@link RequestSqlMetricsFilter} 在請求開始時綁定；操作改在單寫者引擎的工作線程上執行時，
+ * 由 {@link ExchangeMetrics.PoolWait} 把同一個計數器帶過去。
+ */
+public class SqlStatementCounter implements StatementInspector {
+    private static final ThreadLocal<AtomicInteger> CURRENT = new ThreadLocal<>();
+
+    @Override
+    public String inspect(String sql) {
+        AtomicInteger counter = CURRENT.get();
+        if (counter != null) {
+            counter.incrementAndGet();
+        }
+        return sql;
+    }
+
+    static AtomicInteger current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 把計數器綁定到目前線程，回傳原本綁定的計數器，之後以同一個方法還原。
+     */
+    static AtomicInteger bind(AtomicInteger counter) {
+        AtomicInteger previous = CURRENT.get();
+        if (counter == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(counter);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 單一地址的交易統計，由 transactions 資料表彙總而成，每個地址一列，以主鍵直接定位。
+ * 交易紀錄寫入時以增量更新，也可由交易紀錄完整重建。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "address_stats")
+public class AddressStats {
+    @Id
+    @Column(name = "address", nullable = false)
+    private String address;
+
+    // 地址作為付款方或收款方參與的交易金額總和，依資產分列；交換與增減流動性的兩邊金額分別計入
+    @Column(name = "usdc_volume", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcVolume = BigDecimal.ZERO;
+
+    @Column(name = "cct_volume", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctVolume = BigDecimal.ZERO;
+
+    // 地址作為提供者注入流動性池的金額總和
+    @Column(name = "usdc_liquidity_added", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcLiquidityAdded = BigDecimal.ZERO;
+
+    @Column(name = "cct_liquidity_added", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctLiquidityAdded = BigDecimal.ZERO;
+
+    // 依 Transaction.type 分類的交易筆數
+    @Column(name = "mint_count", nullable = false)
+    private long mintCount;
+
+    @Column(name = "transfer_count", nullable = false)
+    private long transferCount;
+
+    @Column(name = "swap_count", nullable = false)
+    private long swapCount;
+
+    @Column(name = "add_liquidity_count", nullable = false)
+    private long addLiquidityCount;
+
+    @Column(name = "remove_liquidity_count", nullable = false)
+    private long removeLiquidityCount;
+
+    @Column(name = "claim_fees_count", nullable = false)
+    private long claimFeesCount;
+
+    // 地址作為提供者從流動性池領取的交換費用總和
+    @Column(name = "usdc_fees_claimed", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcFeesClaimed = BigDecimal.ZERO;
+
+    @Column(name = "cct_fees_claimed", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctFeesClaimed = BigDecimal.ZERO;
+
+    @Column(name = "first_activity")
+    private LocalDateTime firstActivity;
+
+    @Column(name = "last_activity")
+    private LocalDateTime lastActivity;
+
+    public AddressStats(String address) {
+        this.address = address;
+    }
+
+    /**
+     * 計入同一類交易的 count 筆紀錄。amount 以 token 計價，amount2 以交易對的另一個資產計價；
+     * sender 表示地址是這些紀錄的付款方。
+     */
+    public void add(String type, String token, boolean sender, long count,
+                    BigDecimal amount, BigDecimal amount2, LocalDateTime first, LocalDateTime last) {
+        if ("USDC".equals(token)) {
+            usdcVolume = plus(usdcVolume, amount);
+            cctVolume = plus(cctVolume, amount2);
+        } else if ("CCT".equals(token)) {
+            cctVolume = plus(cctVolume, amount);
+            usdcVolume = plus(usdcVolume, amount2);
+        }
+        if (type != null) {
+            switch (type) {
+                case "MINT":
+                    mintCount += count;
+                    break;
+                case "TRANSFER":
+                    transferCount += count;
+                    break;
+                case "SWAP":
+                    swapCount += count;
+                    break;
+                case "ADD_LIQUIDITY":
+                    addLiquidityCount += count;
+                    if (sender && "USDC".equals(token)) {
+                        usdcLiquidityAdded = plus(usdcLiquidityAdded, amount);
+                        cctLiquidityAdded = plus(cctLiquidityAdded, amount2);
+                    }
+                    break;
+                case "REMOVE_LIQUIDITY":
+                    removeLiquidityCount += count;
+                    break;
+                case "CLAIM_FEES":
+                    // 付款方是池子地址，只有收款的提供者計入領取的費用
+                    claimFeesCount += count;
+                    if (!sender && "USDC".equals(token)) {
+                        usdcFeesClaimed = plus(usdcFeesClaimed, amount);
+                        cctFeesClaimed = plus(cctFeesClaimed, amount2);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (first != null && (firstActivity == null || first.isBefore(firstActivity))) {
+            firstActivity = first;
+        }
+        if (last != null && (lastActivity == null || last.isAfter(lastActivity))) {
+            lastActivity = last;
+        }
+    }
+
+    /**
+     * 合併同一個地址在另一段交易紀錄上的統計。
+     */
+    public void merge(AddressStats other) {
+        usdcVolume = usdcVolume.add(other.usdcVolume);
+        cctVolume = cctVolume.add(other.cctVolume);
+        usdcLiquidityAdded = usdcLiquidityAdded.add(other.usdcLiquidityAdded);
+        cctLiquidityAdded = cctLiquidityAdded.add(other.cctLiquidityAdded);
+        mintCount += other.mintCount;
+        transferCount += other.transferCount;
+        swapCount += other.swapCount;
+        addLiquidityCount += other.addLiquidityCount;
+        removeLiquidityCount += other.removeLiquidityCount;
+        claimFeesCount += other.claimFeesCount;
+        usdcFeesClaimed = usdcFeesClaimed.add(other.usdcFeesClaimed);
+        cctFeesClaimed = cctFeesClaimed.add(other.cctFeesClaimed);
+        add(null, null, false, 0, null, null, other.firstActivity, other.lastActivity);
+    }
+
+    private static BigDecimal plus(BigDecimal total, BigDecimal amount) {
+        return amount == null ? total : total.add(amount);
+    }
+}
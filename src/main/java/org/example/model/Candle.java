@@ -0,0 +1,147 @@
+package org.example.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+
+/**
+ * 池子在一個固定時間區間內的成交價 K 線（開高低收與成交量），價格為每筆交換的 USDC / CCT 成交均價。
+ * openTime 為區間起點的 epoch 毫秒，區間以 UTC 對齊。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "candles")
+@IdClass(CandleId.class)
+public class Candle {
+    @Id
+    @Column(name = "exchange_id", nullable = false)
+    private Long exchangeId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 8)
+    private Resolution resolution;
+
+    @Id
+    @Column(name = "open_time", nullable = false)
+    private long openTime;
+
+    @Column(name = "open_price", precision = 36, scale = 18, nullable = false)
+    private BigDecimal open;
+
+    @Column(name = "high_price", precision = 36, scale = 18, nullable = false)
+    private BigDecimal high;
+
+    @Column(name = "low_price", precision = 36, scale = 18, nullable = false)
+    private BigDecimal low;
+
+    @Column(name = "close_price", precision = 36, scale = 18, nullable = false)
+    private BigDecimal close;
+
+    @Column(name = "cct_volume", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctVolume = BigDecimal.ZERO;
+
+    @Column(name = "usdc_volume", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcVolume = BigDecimal.ZERO;
+
+    @Column(name = "trade_count", nullable = false)
+    private long tradeCount;
+
+    public Candle(Long exchangeId, Resolution resolution, long openTime, BigDecimal price) {
+        this.exchangeId = exchangeId;
+        this.resolution = resolution;
+        this.openTime = openTime;
+        this.open = price;
+        this.high = price;
+        this.low = price;
+        this.close = price;
+    }
+
+    /**
+     * 計入一筆成交。
+     */
+    public void add(BigDecimal price, BigDecimal cctAmount, BigDecimal usdcAmount) {
+        if (price.compareTo(high) > 0) {
+            high = price;
+        }
+        if (price.compareTo(low) < 0) {
+            low = price;
+        }
+        close = price;
+        cctVolume = cctVolume.add(cctAmount);
+        usdcVolume = usdcVolume.add(usdcAmount);
+        tradeCount++;
+    }
+
+    /**
+     * 合併同一區間內較晚的一段成交。
+     */
+    public Candle merge(Candle later) {
+        Candle merged = copy();
+        if (later.high.compareTo(merged.high) > 0) {
+            merged.high = later.high;
+        }
+        if (later.low.compareTo(merged.low) < 0) {
+            merged.low = later.low;
+        }
+        merged.close = later.close;
+        merged.cctVolume = merged.cctVolume.add(later.cctVolume);
+        merged.usdcVolume = merged.usdcVolume.add(later.usdcVolume);
+        merged.tradeCount += later.tradeCount;
+        return merged;
+    }
+
+    public long getCloseTime() {
+        return openTime + resolution.getMillis();
+    }
+
+    public Candle copy() {
+        Candle copy = new Candle(exchangeId, resolution, openTime, open);
+        copy.high = high;
+        copy.low = low;
+        copy.close = close;
+        copy.cctVolume = cctVolume;
+        copy.usdcVolume = usdcVolume;
+        copy.tradeCount = tradeCount;
+        return copy;
+    }
+
+    public enum Resolution {
+        SECOND("1s", 1_000L),
+        MINUTE("1m", 60_000L),
+        HOUR("1h", 3_600_000L),
+        DAY("1d", 86_400_000L);
+
+        private final String label;
+        private final long millis;
+
+        Resolution(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public long bucketStart(long epochMillis) {
+            return epochMillis - Math.floorMod(epochMillis, millis);
+        }
+
+        public static Resolution fromLabel(String label) {
+            for (Resolution resolution : values()) {
+                if (resolution.label.equalsIgnoreCase(label) || resolution.name().equalsIgnoreCase(label)) {
+                    return resolution;
+                }
+            }
+            throw new IllegalArgumentException("Unknown candle resolution: " + label);
+        }
+    }
+}
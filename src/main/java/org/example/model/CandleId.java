@@ -0,0 +1,14 @@
+package org.example.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+@Data
+@NoArgsConstructor
+public class CandleId implements Serializable {
+    private Long exchangeId;
+    private Candle.Resolution resolution;
+    private long openTime;
+}
@@ -31,12 +31,6 @@ public class CarbonCreditToken {
     @Column(nullable = false)
     private BigDecimal totalSupply = BigDecimal.ZERO;
 
-    @ElementCollection
-    @CollectionTable(name = "token_balances", joinColumns = @JoinColumn(name = "token_id"))
-    @MapKeyColumn(name = "address")
-    @Column(name = "balance")
-    private Map<String, BigDecimal> balances = new HashMap<>();
-
     @ElementCollection
     @CollectionTable(name = "token_allowances", joinColumns = @JoinColumn(name = "token_id"))
     @MapKeyColumn(name = "owner_address")
@@ -49,7 +43,10 @@ public class CarbonCreditToken {
         this.adminAddress = adminAddress;
     }
 
-    public void mint(String to, BigDecimal amount) {
+    /**
+     * 檢查是否可鑄造並增加總供給量；持有人的餘額另外記在 {@link TokenBalance}。
+     */
+    public void mint(BigDecimal amount) {
         if (!mintingEnabled) {
             throw new IllegalStateException("Minting is disabled");
         }
@@ -57,7 +54,6 @@ public class CarbonCreditToken {
             throw new IllegalArgumentException("Amount must be positive");
         }
         totalSupply = totalSupply.add(amount);
-        balances.merge(to, amount, BigDecimal::add);
     }
 
     public void disableMinting() {
@@ -67,18 +63,6 @@ public class CarbonCreditToken {
         mintingEnabled = false;
     }
 
-    public void transfer(String from, String to, BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Amount must be positive");
-        }
-        BigDecimal fromBalance = balances.getOrDefault(from, BigDecimal.ZERO);
-        if (fromBalance.compareTo(amount) < 0) {
-            throw new IllegalStateException("Insufficient balance");
-        }
-        balances.put(from, fromBalance.subtract(amount));
-        balances.merge(to, amount, BigDecimal::add);
-    }
-
     public void approve(String owner, String spender, BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("Amount cannot be negative");
@@ -86,7 +70,10 @@ public class CarbonCreditToken {
         allowances.put(spender, amount);
     }
 
-    public void transferFrom(String owner, String spender, String to, BigDecimal amount) {
+    /**
+     * 扣減 spender 的授權額度；owner 的餘額由呼叫端另外扣款。
+     */
+    public void spendAllowance(String spender, BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new IllegalArgumentException("Amount must be positive");
         }
@@ -94,19 +81,9 @@ public class CarbonCreditToken {
         if (allowance.compareTo(amount) < 0) {
             throw new IllegalStateException("Insufficient allowance");
         }
-        BigDecimal ownerBalance = balances.getOrDefault(owner, BigDecimal.ZERO);
-        if (ownerBalance.compareTo(amount) < 0) {
-            throw new IllegalStateException("Insufficient balance");
-        }
-        balances.put(owner, ownerBalance.subtract(amount));
-        balances.merge(to, amount, BigDecimal::add);
         allowances.put(spender, allowance.subtract(amount));
     }
 
-    public BigDecimal getBalance(String address) {
-        return balances.getOrDefault(address, BigDecimal.ZERO);
-    }
-
     public String getAddress() {
         return adminAddress;
     }
@@ -114,8 +91,4 @@ public class CarbonCreditToken {
     public BigDecimal getAllowance(String owner, String spender) {
         return allowances.getOrDefault(owner + ":" + spender, BigDecimal.ZERO);
     }
-
-    public void setBalance(String address, BigDecimal amount) {
-        balances.put(address, amount);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,139 @@
+package org.example.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 事件日誌中的一筆帳本事件。每筆交易（鑄造、轉帳、交換、增減流動性）都拆成它對餘額與池子造成的效果：
+ * 餘額以增減量記錄，池子與流動性提供者以異動後的完整狀態記錄，重播時依序號取最新的一筆。
+ */
+@Data
+@NoArgsConstructor
+public class LedgerEvent {
+    // 在產生事件時分配；同一個池子的事件在持有寫入權時產生，序號順序即寫入順序
+    private long sequence;
+    private Type type;
+
+    private Long tokenId;
+    private Long exchangeId;
+    private String address;
+    private BigDecimal amount;
+
+    // TOKEN_CREATED
+    private String name;
+    private String symbol;
+
+    // POOL_STATE：異動後的池子狀態（不含流動性提供者）
+    private LiquidityPool pool;
+
+    // PROVIDER_SHARES：異動後的份額與費用結算狀態
+    private LiquidityProvider provider;
+
+    private LedgerEvent(Type type) {
+        this.type = type;
+    }
+
+    public static LedgerEvent usdcCredit(String address, BigDecimal amount) {
+        return of(Type.USDC_CREDIT, null, address, amount);
+    }
+
+    public static LedgerEvent usdcDebit(String address, BigDecimal amount) {
+        return of(Type.USDC_DEBIT, null, address, amount);
+    }
+
+    public static LedgerEvent usdcSet(String address, BigDecimal balance) {
+        return of(Type.USDC_SET, null, address, balance);
+    }
+
+    public static LedgerEvent cctCredit(Long tokenId, String address, BigDecimal amount) {
+        return of(Type.CCT_CREDIT, tokenId, address, amount);
+    }
+
+    public static LedgerEvent cctDebit(Long tokenId, String address, BigDecimal amount) {
+        return of(Type.CCT_DEBIT, tokenId, address, amount);
+    }
+
+    public static LedgerEvent tokenCreated(CarbonCreditToken token) {
+        LedgerEvent event = new LedgerEvent(Type.TOKEN_CREATED);
+        event.tokenId = token.getId();
+        event.name = token.getName();
+        event.symbol = token.getSymbol();
+        event.address = token.getAdminAddress();
+        return event;
+    }
+
+    public static LedgerEvent tokenMinted(Long tokenId, BigDecimal amount) {
+        return of(Type.TOKEN_MINTED, tokenId, null, amount);
+    }
+
+    public static LedgerEvent mintingDisabled(Long tokenId) {
+        return of(Type.MINTING_DISABLED, tokenId, null, null);
+    }
+
+    public static LedgerEvent exchangeCreated(Long exchangeId, Long tokenId) {
+        LedgerEvent event = new LedgerEvent(Type.EXCHANGE_CREATED);
+        event.exchangeId = exchangeId;
+        event.tokenId = tokenId;
+        return event;
+    }
+
+    public static LedgerEvent poolState(LiquidityPool pool) {
+        LedgerEvent event = new LedgerEvent(Type.POOL_STATE);
+        event.exchangeId = pool.getExchangeId();
+        event.pool = pool.snapshot();
+        return event;
+    }
+
+    public static LedgerEvent providerShares(LiquidityProvider provider) {
+        LedgerEvent event = new LedgerEvent(Type.PROVIDER_SHARES);
+        event.exchangeId = provider.getExchangeId();
+        event.address = provider.getProviderAddress();
+        event.amount = provider.getShares();
+        event.provider = provider.snapshot();
+        return event;
+    }
+
+    private static LedgerEvent of(Type type, Long tokenId, String address, BigDecimal amount) {
+        LedgerEvent event = new LedgerEvent(type);
+        event.tokenId = tokenId;
+        event.address = address;
+        event.amount = amount;
+        return event;
+    }
+
+    public enum Type {
+        // 代碼寫入日誌檔，已使用的代碼不可更改
+        USDC_CREDIT(1),
+        USDC_DEBIT(2),
+        USDC_SET(3),
+        CCT_CREDIT(4),
+        CCT_DEBIT(5),
+        TOKEN_CREATED(6),
+        TOKEN_MINTED(7),
+        MINTING_DISABLED(8),
+        EXCHANGE_CREATED(9),
+        POOL_STATE(10),
+        PROVIDER_SHARES(11);
+
+        private final byte code;
+
+        Type(int code) {
+            this.code = (byte) code;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        public static Type fromCode(byte code) {
+            for (Type type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown ledger event type: " + code);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.example.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 掛在流動性池旁的限價單。掛單時投入的資產先從交易者餘額扣出保管，池子匯率到達限價時對恆定乘積曲線成交，
+ * 可以分次成交；撤單時退回尚未成交的部分。
+ * 買單（BUY_CARBON）在成交後匯率不高於 limitRate 時成交，賣單（SELL_CARBON）在成交後匯率不低於 limitRate 時成交。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "limit_orders", indexes = {
+    @Index(name = "idx_limit_orders_status", columnList = "status, exchange_id"),
+    @Index(name = "idx_limit_orders_trader", columnList = "trader, status")
+})
+public class LimitOrder {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "exchange_id", nullable = false)
+    private Long exchangeId;
+
+    @Column(name = "trader", nullable = false)
+    private String trader;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "side", nullable = false, length = 16)
+    private Side side;
+
+    // 以 USDC / CCT 表示的限價
+    @Column(name = "limit_rate", precision = 36, scale = 18, nullable = false)
+    private BigDecimal limitRate;
+
+    // 投入的數量：買單為 USDC，賣單為 CCT
+    @Column(name = "amount", precision = 36, scale = 18, nullable = false)
+    private BigDecimal amount;
+
+    // 尚未成交、仍在保管中的投入數量
+    @Column(name = "remaining", precision = 36, scale = 18, nullable = false)
+    private BigDecimal remaining;
+
+    // 已成交換得的數量：買單為 CCT，賣單為 USDC
+    @Column(name = "amount_out", precision = 36, scale = 18, nullable = false)
+    private BigDecimal amountOut = BigDecimal.ZERO;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status = Status.OPEN;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public LimitOrder(Long exchangeId, String trader, Side side, BigDecimal amount, BigDecimal limitRate) {
+        this.exchangeId = exchangeId;
+        this.trader = trader;
+        this.side = side;
+        this.amount = amount;
+        this.remaining = amount;
+        this.limitRate = limitRate;
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = createdAt;
+    }
+
+    /**
+     * 計入一次成交；投入全部成交後狀態改為 FILLED。
+     */
+    public void fill(BigDecimal amountIn, BigDecimal out) {
+        remaining = remaining.subtract(amountIn);
+        amountOut = amountOut.add(out);
+        if (remaining.signum() <= 0) {
+            status = Status.FILLED;
+        }
+        updatedAt = LocalDateTime.now();
+    }
+
+    public boolean isBuy() {
+        return side == Side.BUY_CARBON;
+    }
+
+    public boolean isOpen() {
+        return status == Status.OPEN;
+    }
+
+    public enum Side {
+        // 投入 USDC 換取 CCT
+        BUY_CARBON,
+        // 投入 CCT 換取 USDC
+        SELL_CARBON
+    }
+
+    public enum Status {
+        OPEN,
+        FILLED,
+        CANCELLED
+    }
+}
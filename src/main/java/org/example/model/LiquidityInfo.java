@@ -7,6 +7,7 @@ import java.math.BigDecimal;
 @Data
 @NoArgsConstructor
 public class LiquidityInfo {
+    private Long exchangeId;
     private BigDecimal userLiquidity = BigDecimal.ZERO;
     private BigDecimal totalCarbonReserves = BigDecimal.ZERO;
     private BigDecimal totalBaseReserves = BigDecimal.ZERO;
@@ -16,4 +17,7 @@ public class LiquidityInfo {
     private BigDecimal usdcReserves;
     private BigDecimal exchangeRate;
     private BigDecimal totalShares;
+    private LiquidityPool.SettlementMode settlementMode;
+    private int feeBps;
+    private long version;
 } 
\ No newline at end of file
@@ -2,20 +2,22 @@ package org.example.model;
 
 import javax.persistence.*;
 import lombok.Data;
+import org.example.math.PoolMath;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.util.ArrayList;
-import java.util.List;
 
 @Data
 @Entity
 @Table(name = "liquidity_pools")
 public class LiquidityPool {
+    public static final int MAX_FEE_BPS = 1000;
+    private static final BigDecimal BPS = BigDecimal.valueOf(10_000);
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "exchange_id", nullable = false)
+    @Column(name = "exchange_id", nullable = false, unique = true)
     private Long exchangeId;
 
     @Column(name = "total_base_reserves", precision = 36, scale = 18)
@@ -33,8 +35,27 @@ public class LiquidityPool {
     @Column(name = "k", precision = 36, scale = 18, nullable = false)
     private BigDecimal k = BigDecimal.ZERO;
 
-    @OneToMany(mappedBy = "pool", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<LiquidityProvider> liquidityProviders = new ArrayList<>();
+    @Column(name = "settlement_mode")
+    @Enumerated(EnumType.STRING)
+    private SettlementMode settlementMode = SettlementMode.CONTINUOUS;
+
+    // 交換費率（萬分之一），從投入數量中扣除，不計入交易儲備
+    @Column(name = "fee_bps", nullable = false)
+    private int feeBps;
+
+    // 每一份額累計分得的費用；提供者的可領取費用為份額乘以自上次結算以來的增量
+    @Column(name = "usdc_fee_growth", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcFeeGrowth = BigDecimal.ZERO;
+
+    @Column(name = "cct_fee_growth", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctFeeGrowth = BigDecimal.ZERO;
+
+    // 已收取但尚未被領取的費用
+    @Column(name = "usdc_fee_reserves", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcFeeReserves = BigDecimal.ZERO;
+
+    @Column(name = "cct_fee_reserves", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctFeeReserves = BigDecimal.ZERO;
 
     public LiquidityPool() {
         this.usdcReserves = BigDecimal.ZERO;
@@ -44,34 +65,88 @@ public class LiquidityPool {
         this.k = BigDecimal.ZERO;
     }
 
-    public BigDecimal getLiquidity(String address) {
-        return liquidityProviders.stream()
-                .filter(p -> p.getProviderAddress().equals(address))
-                .findFirst()
-                .map(LiquidityProvider::getShares)
-                .orElse(BigDecimal.ZERO);
+    /**
+     * 複製池子的儲備與份額狀態（不含流動性提供者），供單寫者引擎保存/回滾與寫回使用
+     */
+    public LiquidityPool snapshot() {
+        LiquidityPool copy = new LiquidityPool();
+        copy.restore(this);
+        copy.setId(id);
+        return copy;
     }
 
-    public BigDecimal getUserSharePercentage(String address) {
-        if (totalShares.compareTo(BigDecimal.ZERO) == 0) {
+    public void restore(LiquidityPool state) {
+        this.exchangeId = state.getExchangeId();
+        this.usdcReserves = state.getUsdcReserves();
+        this.cctReserves = state.getCctReserves();
+        this.totalShares = state.getTotalShares();
+        this.exchangeRateMultiplier = state.getExchangeRateMultiplier();
+        this.k = state.getK();
+        this.settlementMode = state.getSettlementMode();
+        this.feeBps = state.getFeeBps();
+        this.usdcFeeGrowth = state.getUsdcFeeGrowth();
+        this.cctFeeGrowth = state.getCctFeeGrowth();
+        this.usdcFeeReserves = state.getUsdcFeeReserves();
+        this.cctFeeReserves = state.getCctFeeReserves();
+    }
+
+    /**
+     * 投入 amountIn 時收取的交換費用，向上取整；池子沒有份額時不收費。
+     */
+    public BigDecimal swapFee(BigDecimal amountIn) {
+        return swapFee(amountIn, feeBps, totalShares);
+    }
+
+    public static BigDecimal swapFee(BigDecimal amountIn, int feeBps, BigDecimal totalShares) {
+        if (feeBps == 0 || totalShares.signum() == 0) {
             return BigDecimal.ZERO;
         }
-        return getLiquidity(address).divide(totalShares, 18, RoundingMode.HALF_UP);
+        return PoolMath.mulDiv(amountIn, BigDecimal.valueOf(feeBps), BPS, RoundingMode.UP);
     }
 
-    public void addLiquidityProvider(String providerAddress, BigDecimal shares) {
-        LiquidityProvider provider = new LiquidityProvider();
-        provider.setProviderAddress(providerAddress);
-        provider.setShares(shares);
-        provider.setPool(this);
-        liquidityProviders.add(provider);
+    /**
+     * 扣除交換費用後淨投入不超過 net 的最大投入數量，向下取整。
+     */
+    public BigDecimal maxAmountInForNet(BigDecimal net) {
+        return maxAmountInForNet(net, feeBps, totalShares);
+    }
+
+    public static BigDecimal maxAmountInForNet(BigDecimal net, int feeBps, BigDecimal totalShares) {
+        if (feeBps == 0 || totalShares.signum() == 0) {
+            return net;
+        }
+        return PoolMath.mulDiv(net, BPS, BPS.subtract(BigDecimal.valueOf(feeBps)), RoundingMode.DOWN);
+    }
+
+    /**
+     * 把收取的 USDC 費用按份額累加到每份額的費用增長；只更新池子本身，與提供者數量無關。
+     * 增長向下取整，捨入的零頭留在費用儲備中。
+     */
+    public void accrueUsdcFee(BigDecimal fee) {
+        if (fee.signum() == 0) {
+            return;
+        }
+        usdcFeeReserves = usdcFeeReserves.add(fee);
+        usdcFeeGrowth = usdcFeeGrowth.add(PoolMath.divide(fee, totalShares, RoundingMode.DOWN));
+    }
+
+    public void accrueCctFee(BigDecimal fee) {
+        if (fee.signum() == 0) {
+            return;
+        }
+        cctFeeReserves = cctFeeReserves.add(fee);
+        cctFeeGrowth = cctFeeGrowth.add(PoolMath.divide(fee, totalShares, RoundingMode.DOWN));
+    }
+
+    public boolean isBatchAuction() {
+        return settlementMode == SettlementMode.BATCH_AUCTION;
     }
 
     public BigDecimal calculateExchangeRate() {
         if (cctReserves.compareTo(BigDecimal.ZERO) == 0) {
             return BigDecimal.ZERO;
         }
-        return usdcReserves.divide(cctReserves, 18, RoundingMode.HALF_UP);
+        return PoolMath.divide(usdcReserves, cctReserves, RoundingMode.HALF_UP);
     }
 
     public BigDecimal getCctReserves() {
@@ -81,4 +156,11 @@ public class LiquidityPool {
     public BigDecimal getUsdcReserves() {
         return usdcReserves;
     }
-} 
\ No newline at end of file
+
+    public enum SettlementMode {
+        // 每筆交換立即與池子成交
+        CONTINUOUS,
+        // 時間窗口內的交換集中淨額結算，以統一清算價成交
+        BATCH_AUCTION
+    }
+}
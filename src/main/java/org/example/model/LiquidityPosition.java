@@ -0,0 +1,21 @@
+package org.example.model;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+/**
+ * 地址在流動性池中的份額，以及依池子快照換算的份額比例與可贖回的 USDC、CCT 數量。
+ */
+@Data
+public class LiquidityPosition {
+    private Long exchangeId;
+    private String providerAddress;
+    private BigDecimal shares;
+    private BigDecimal sharePercentage;
+    private BigDecimal usdcAmount;
+    private BigDecimal cctAmount;
+    // 目前可領取的交換費用
+    private BigDecimal claimableUsdcFees;
+    private BigDecimal claimableCctFees;
+}
@@ -2,7 +2,9 @@ package org.example.model;
 
 import javax.persistence.*;
 import lombok.Data;
+import org.example.math.PoolMath;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 @Data
 @Entity
@@ -17,13 +19,27 @@ public class LiquidityProvider {
     @Column(name = "provider_address", nullable = false)
     private String providerAddress;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "pool_id", nullable = false)
     private LiquidityPool pool;
 
     @Column(name = "shares", precision = 36, scale = 18, nullable = false)
     private BigDecimal shares = BigDecimal.ZERO;
 
+    // 上次結算費用時池子的每份額費用增長
+    @Column(name = "usdc_fee_growth_last", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcFeeGrowthLast = BigDecimal.ZERO;
+
+    @Column(name = "cct_fee_growth_last", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctFeeGrowthLast = BigDecimal.ZERO;
+
+    // 已結算但尚未領取的費用
+    @Column(name = "usdc_fees_owed", precision = 36, scale = 18, nullable = false)
+    private BigDecimal usdcFeesOwed = BigDecimal.ZERO;
+
+    @Column(name = "cct_fees_owed", precision = 36, scale = 18, nullable = false)
+    private BigDecimal cctFeesOwed = BigDecimal.ZERO;
+
     public LiquidityProvider() {
         this.shares = BigDecimal.ZERO;
     }
@@ -63,4 +79,44 @@ public class LiquidityProvider {
     public LiquidityPool getPool() {
         return pool;
     }
+
+    /**
+     * 以池子目前的每份額費用增長計算可領取的 USDC 費用，不修改狀態。
+     */
+    public BigDecimal claimableUsdcFees(BigDecimal usdcFeeGrowth) {
+        return usdcFeesOwed.add(PoolMath.mulDiv(shares, usdcFeeGrowth.subtract(usdcFeeGrowthLast), BigDecimal.ONE, RoundingMode.DOWN));
+    }
+
+    public BigDecimal claimableCctFees(BigDecimal cctFeeGrowth) {
+        return cctFeesOwed.add(PoolMath.mulDiv(shares, cctFeeGrowth.subtract(cctFeeGrowthLast), BigDecimal.ONE, RoundingMode.DOWN));
+    }
+
+    /**
+     * 把到目前為止分得的費用結算到 owed 並更新增長快照；份額變動前必須先結算。
+     */
+    public void accrueFees(LiquidityPool pool) {
+        usdcFeesOwed = claimableUsdcFees(pool.getUsdcFeeGrowth());
+        cctFeesOwed = claimableCctFees(pool.getCctFeeGrowth());
+        usdcFeeGrowthLast = pool.getUsdcFeeGrowth();
+        cctFeeGrowthLast = pool.getCctFeeGrowth();
+    }
+
+    public boolean isEmpty() {
+        return shares.signum() == 0 && usdcFeesOwed.signum() == 0 && cctFeesOwed.signum() == 0;
+    }
+
+    /**
+     * 複製份額與費用狀態（不含池子關聯），供事件日誌使用。
+     */
+    public LiquidityProvider snapshot() {
+        LiquidityProvider copy = new LiquidityProvider();
+        copy.exchangeId = exchangeId;
+        copy.providerAddress = providerAddress;
+        copy.shares = shares;
+        copy.usdcFeeGrowthLast = usdcFeeGrowthLast;
+        copy.cctFeeGrowthLast = cctFeeGrowthLast;
+        copy.usdcFeesOwed = usdcFeesOwed;
+        copy.cctFeesOwed = cctFeesOwed;
+        return copy;
+    }
 } 
\ No newline at end of file
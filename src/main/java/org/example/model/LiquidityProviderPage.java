@@ -0,0 +1,18 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一頁流動性提供者，依地址排序；nextCursor 為 null 表示沒有下一頁。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LiquidityProviderPage {
+    private List<LiquidityPosition> items;
+    private String nextCursor;
+}
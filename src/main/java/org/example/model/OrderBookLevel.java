@@ -0,0 +1,19 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * 限價簿中同一個價位的掛單彙總：尚未成交的投入數量合計與掛單數。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderBookLevel {
+    private BigDecimal limitRate;
+    private BigDecimal remaining;
+    private int orders;
+}
@@ -0,0 +1,94 @@
+package org.example.model;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import org.example.math.Fixed128;
+import org.example.math.PoolMath;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 流動性池在某次成功寫入後的不可變快照；同一快照內的儲備、匯率與份額彼此一致。
+ * version 隨每次寫入遞增。
+ */
+@Value
+public class PoolSnapshot {
+    Long exchangeId;
+    long version;
+    BigDecimal usdcReserves;
+    BigDecimal cctReserves;
+    BigDecimal totalShares;
+    BigDecimal exchangeRate;
+    LiquidityPool.SettlementMode settlementMode;
+    int feeBps;
+    BigDecimal usdcFeeGrowth;
+    BigDecimal cctFeeGrowth;
+
+    // 報價用的儲備，建立快照時轉換一次之後只讀取；無法表示時為 null
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Fixed128 fixedUsdcReserves;
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    Fixed128 fixedCctReserves;
+
+    public static PoolSnapshot of(LiquidityPool pool, long version) {
+        boolean hasReserves = pool.getUsdcReserves() != null && pool.getCctReserves() != null;
+        BigDecimal usdc = hasReserves ? pool.getUsdcReserves() : BigDecimal.ZERO;
+        BigDecimal cct = hasReserves ? pool.getCctReserves() : BigDecimal.ZERO;
+        return new PoolSnapshot(
+            pool.getExchangeId(),
+            version,
+            usdc,
+            cct,
+            pool.getTotalShares(),
+            hasReserves ? pool.calculateExchangeRate() : BigDecimal.ZERO,
+            pool.getSettlementMode(),
+            pool.getFeeBps(),
+            pool.getUsdcFeeGrowth(),
+            pool.getCctFeeGrowth(),
+            toFixed(usdc),
+            toFixed(cct));
+    }
+
+    // 小數超過 18 位的儲備截斷後報價，與資料表 DECIMAL(36,18) 保存的值相同
+    private static Fixed128 toFixed(BigDecimal value) {
+        BigDecimal scaled = value.scale() > Fixed128.SCALE ? value.setScale(Fixed128.SCALE, RoundingMode.DOWN) : value;
+        return Fixed128.fits(scaled) ? new Fixed128().set(scaled) : null;
+    }
+
+    public boolean isEmpty() {
+        return cctReserves.signum() == 0 && usdcReserves.signum() == 0;
+    }
+
+    /**
+     * 以快照的費率與份額計算投入 amountIn 時的交換費用，與 {@link LiquidityPool#swapFee} 相同。
+     */
+    public BigDecimal swapFee(BigDecimal amountIn) {
+        return LiquidityPool.swapFee(amountIn, feeBps, totalShares);
+    }
+
+    /**
+     * 不配置物件的含費報價，與 {@link #swapFee} 扣費後再以 {@link PoolMath#amountOut} 計算的結果相同；
+     * 結果寫入 out 並回傳，儲備無法以 {@link Fixed128} 表示時回傳 null。
+     */
+    public Fixed128 quote(boolean usdcIn, Fixed128 amountIn, Fixed128 out) {
+        if (fixedUsdcReserves == null || fixedCctReserves == null) {
+            return null;
+        }
+        int fee = totalShares.signum() == 0 ? 0 : feeBps;
+        return usdcIn
+            ? PoolMath.amountOutAfterFee(amountIn, fee, fixedUsdcReserves, fixedCctReserves, out)
+            : PoolMath.amountOutAfterFee(amountIn, fee, fixedCctReserves, fixedUsdcReserves, out);
+    }
+
+    public boolean isBatchAuction() {
+        return settlementMode == LiquidityPool.SettlementMode.BATCH_AUCTION;
+    }
+}
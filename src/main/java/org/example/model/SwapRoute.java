@@ -0,0 +1,33 @@
+package org.example.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 跨池子的交換路徑與各段的報價。資產以 "USDC" 或碳權代幣的 tokenId 表示。
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SwapRoute {
+    private String tokenIn;
+    private String tokenOut;
+    private BigDecimal amountIn;
+    private BigDecimal amountOut;
+    private List<Hop> hops;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hop {
+        private Long exchangeId;
+        private String tokenIn;
+        private String tokenOut;
+        private BigDecimal amountIn;
+        private BigDecimal amountOut;
+    }
+}
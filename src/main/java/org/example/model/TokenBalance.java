@@ -0,0 +1,33 @@
+package org.example.model;
+
+import javax.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.math.BigDecimal;
+
+/**
+ * 單一地址持有某個碳權代幣的餘額，每個 (token_id, address) 一列，以主鍵直接定位。
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "token_balances")
+@IdClass(TokenBalanceId.class)
+public class TokenBalance {
+    @Id
+    @Column(name = "token_id", nullable = false)
+    private Long tokenId;
+
+    @Id
+    @Column(name = "address", nullable = false)
+    private String address;
+
+    @Column(name = "balance", precision = 36, scale = 18, nullable = false)
+    private BigDecimal balance = BigDecimal.ZERO;
+
+    public TokenBalance(Long tokenId, String address, BigDecimal balance) {
+        this.tokenId = tokenId;
+        this.address = address;
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,18 @@
+package org.example.model;
+
+import lombok.Data;
+import java.io.Serializable;
+
+@Data
+public class TokenBalanceId implements Serializable {
+    private Long tokenId;
+    private String address;
+
+    public TokenBalanceId() {
+    }
+
+    public TokenBalanceId(Long tokenId, String address) {
+        this.tokenId = tokenId;
+        this.address = address;
+    }
+}
@@ -7,7 +7,11 @@ import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+    // 依地址查詢交易紀錄時按 (timestamp, id) 倒序分頁
+    @Index(name = "idx_transactions_from_time", columnList = "from_address, timestamp, id"),
+    @Index(name = "idx_transactions_to_time", columnList = "to_address, timestamp, id")
+})
 public class Transaction {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -26,12 +30,12 @@ public class Transaction {
     private String tokenAddress;
 
     @Column(name = "type")
-    private String type; // "MINT", "TRANSFER", "SWAP", "ADD_LIQUIDITY", "REMOVE_LIQUIDITY"
+    private String type; // "MINT", "TRANSFER", "SWAP", "ADD_LIQUIDITY", "REMOVE_LIQUIDITY", "CLAIM_FEES"
 
     @Column(name = "timestamp")
     private LocalDateTime timestamp = LocalDateTime.now();
 
-    @Column
+    @Column(name = "amount2", precision = 36, scale = 18)
     private BigDecimal amount2; // 用於交換操作的第二個金額
 
     @Column
@@ -0,0 +1,9 @@
+package org.example.repository;
+
+import org.example.model.AddressStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface AddressStatsRepository extends JpaRepository<AddressStats, String> {
+}
@@ -0,0 +1,26 @@
+package org.example.repository;
+
+import org.example.model.Candle;
+import org.example.model.CandleId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CandleRepository extends JpaRepository<Candle, CandleId> {
+
+    /**
+     * 池子在 [from, to) 區間內開始的已收盤 K 線，依開始時間排序；走主鍵索引。
+     */
+    @Query("select c from Candle c where c.exchangeId = :exchangeId and c.resolution = :resolution " +
+           "and c.openTime >= :from and c.openTime < :to order by c.openTime")
+    List<Candle> findRange(@Param("exchangeId") Long exchangeId,
+                           @Param("resolution") Candle.Resolution resolution,
+                           @Param("from") long from,
+                           @Param("to") long to,
+                           Pageable pageable);
+}
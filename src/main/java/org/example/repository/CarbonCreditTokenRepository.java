@@ -4,6 +4,9 @@ import org.example.model.CarbonCreditToken;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Optional;
+
 @Repository
 public interface CarbonCreditTokenRepository extends JpaRepository<CarbonCreditToken, Long> {
-} 
\ No newline at end of file
+    Optional<CarbonCreditToken> findFirstByOrderByIdAsc();
+}
@@ -0,0 +1,17 @@
+package org.example.repository;
+
+import org.example.model.LimitOrder;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LimitOrderRepository extends JpaRepository<LimitOrder, Long> {
+
+    List<LimitOrder> findByStatusOrderByIdAsc(LimitOrder.Status status);
+
+    List<LimitOrder> findByExchangeIdAndStatusOrderByIdAsc(Long exchangeId, LimitOrder.Status status);
+
+    List<LimitOrder> findByTraderAndStatusOrderByIdAsc(String trader, LimitOrder.Status status);
+}
@@ -2,10 +2,32 @@ package org.example.repository;
 
 import org.example.model.LiquidityPool;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
 import java.util.Optional;
 
 @Repository
 public interface LiquidityPoolRepository extends JpaRepository<LiquidityPool, Long> {
     Optional<LiquidityPool> findByExchangeId(Long exchangeId);
-} 
\ No newline at end of file
+
+    Optional<LiquidityPool> findFirstByOrderByIdAsc();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select p from LiquidityPool p where p.exchangeId = :exchangeId")
+    Optional<LiquidityPool> lockByExchangeId(@Param("exchangeId") Long exchangeId);
+
+    @Modifying
+    @Query("update LiquidityPool p set p.usdcReserves = :#{#state.usdcReserves}, " +
+           "p.cctReserves = :#{#state.cctReserves}, p.totalShares = :#{#state.totalShares}, " +
+           "p.exchangeRateMultiplier = :#{#state.exchangeRateMultiplier}, p.k = :#{#state.k}, " +
+           "p.settlementMode = :#{#state.settlementMode}, p.feeBps = :#{#state.feeBps}, " +
+           "p.usdcFeeGrowth = :#{#state.usdcFeeGrowth}, p.cctFeeGrowth = :#{#state.cctFeeGrowth}, " +
+           "p.usdcFeeReserves = :#{#state.usdcFeeReserves}, p.cctFeeReserves = :#{#state.cctFeeReserves} " +
+           "where p.id = :#{#state.id}")
+    int writeState(@Param("state") LiquidityPool state);
+}
@@ -2,9 +2,24 @@ package org.example.repository;
 
 import org.example.model.LiquidityProvider;
 import org.example.model.LiquidityProviderId;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 @Repository
 public interface LiquidityProviderRepository extends JpaRepository<LiquidityProvider, LiquidityProviderId> {
-} 
\ No newline at end of file
+    /**
+     * 池子中地址排在 after 之後的提供者，依地址排序；走 (exchange_id, provider_address) 主鍵，
+     * 每頁的成本與池子的提供者數量無關。
+     */
+    @Query("select p from LiquidityProvider p " +
+           "where p.exchangeId = :exchangeId and p.providerAddress > :after " +
+           "order by p.providerAddress")
+    List<LiquidityProvider> findPage(@Param("exchangeId") Long exchangeId,
+                                     @Param("after") String after,
+                                     Pageable pageable);
+}
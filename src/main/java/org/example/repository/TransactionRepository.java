@@ -1,12 +1,69 @@
 package org.example.repository;
 
 import org.example.model.Transaction;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
-    List<Transaction> findByFromAddressOrToAddressOrderByTimestampDesc(String fromAddress, String toAddress);
-} 
\ No newline at end of file
+
+    /**
+     * 由 address 發出、(timestamp, id) 小於游標且不早於 since 的交易，依 (timestamp, id) 倒序；
+     * 走 (from_address, timestamp, id) 索引，筆數由 pageable 限制。
+     */
+    @Query("select t from Transaction t where t.fromAddress = :address " +
+           "and t.timestamp >= :since " +
+           "and (t.timestamp < :cursorTime or (t.timestamp = :cursorTime and t.id < :cursorId)) " +
+           "and (:type is null or t.type = :type) " +
+           "order by t.timestamp desc, t.id desc")
+    List<Transaction> findPageFrom(@Param("address") String address,
+                                   @Param("type") String type,
+                                   @Param("since") LocalDateTime since,
+                                   @Param("cursorTime") LocalDateTime cursorTime,
+                                   @Param("cursorId") Long cursorId,
+                                   Pageable pageable);
+
+    /**
+     * 與 {@link #findPageFrom} 相同，但查詢 address 收到的交易，走 (to_address, timestamp, id) 索引。
+     */
+    @Query("select t from Transaction t where t.toAddress = :address " +
+           "and t.timestamp >= :since " +
+           "and (t.timestamp < :cursorTime or (t.timestamp = :cursorTime and t.id < :cursorId)) " +
+           "and (:type is null or t.type = :type) " +
+           "order by t.timestamp desc, t.id desc")
+    List<Transaction> findPageTo(@Param("address") String address,
+                                 @Param("type") String type,
+                                 @Param("since") LocalDateTime since,
+                                 @Param("cursorTime") LocalDateTime cursorTime,
+                                 @Param("cursorId") Long cursorId,
+                                 Pageable pageable);
+
+    /**
+     * address 發出或收到、時間在 [since, until) 之間的所有交易，依 (timestamp, id) 正序。
+     * 以單向游標每次從資料庫取 500 筆，呼叫端須在交易中逐筆處理並關閉串流。
+     */
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("select t from Transaction t where (t.fromAddress = :address or t.toAddress = :address) " +
+           "and t.timestamp >= :since and t.timestamp < :until " +
+           "and (:type is null or t.type = :type) " +
+           "order by t.timestamp, t.id")
+    Stream<Transaction> streamHistory(@Param("address") String address,
+                                      @Param("type") String type,
+                                      @Param("since") LocalDateTime since,
+                                      @Param("until") LocalDateTime until);
+}
@@ -2,10 +2,33 @@ package org.example.repository;
 
 import org.example.model.USDCBalance;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
 import java.util.Optional;
 
 @Repository
 public interface UsdcBalanceRepository extends JpaRepository<USDCBalance, String> {
     Optional<USDCBalance> findByAddress(String address);
-} 
\ No newline at end of file
+
+    @Query("select b.balance from USDCBalance b where b.address = :address")
+    Optional<BigDecimal> findBalance(@Param("address") String address);
+
+    /**
+     * 餘額足夠時扣款，回傳更新的列數；0 表示餘額不足或地址沒有餘額。
+     */
+    @Modifying
+    @Query("update USDCBalance b set b.balance = b.balance - :amount " +
+           "where b.address = :address and b.balance >= :amount")
+    int debit(@Param("address") String address, @Param("amount") BigDecimal amount);
+
+    /**
+     * 對已存在的餘額列入帳，回傳更新的列數；0 表示該地址尚無餘額列。
+     */
+    @Modifying
+    @Query("update USDCBalance b set b.balance = b.balance + :amount where b.address = :address")
+    int credit(@Param("address") String address, @Param("amount") BigDecimal amount);
+}
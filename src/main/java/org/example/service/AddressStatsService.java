@@ -0,0 +1,362 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.AddressStats;
+import org.example.model.Transaction;
+import org.example.repository.AddressStatsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 維護 address_stats 資料表。交易紀錄日誌每寫入一個批次，就把該批次依地址彙總後
+ * 在同一個資料庫交易中累加到統計列，查詢時以地址主鍵直接讀取，不需掃描交易紀錄。
+ * 重建時把 transactions 依主鍵切成多段平行彙總，補上彙總期間提交的紀錄後寫入暫存表；
+ * 之後才暫停日誌寫入，只補上最後一小段紀錄並把暫存表整表複製到 address_stats，等待日誌的請求只被阻塞這一小段時間。
+ */
+@Service
+@RequiredArgsConstructor
+public class AddressStatsService {
+    private static final Logger logger = LoggerFactory.getLogger(AddressStatsService.class);
+
+    private static final String COLUMNS = "usdc_volume, cct_volume, usdc_liquidity_added, cct_liquidity_added, " +
+        "mint_count, transfer_count, swap_count, add_liquidity_count, remove_liquidity_count, " +
+        "claim_fees_count, usdc_fees_claimed, cct_fees_claimed, first_activity, last_activity, address";
+    // 重建結果先寫入的暫存表，結構與 address_stats 相同，每次重建時重新建立
+    private static final String STAGING_TABLE = "address_stats_rebuild";
+    private static final String INSERT_SQL = insertSql("address_stats");
+    private static final String INCREMENT_SQL = incrementSql("address_stats");
+    private static final String STAGING_INSERT_SQL = insertSql(STAGING_TABLE);
+    private static final String STAGING_INCREMENT_SQL = incrementSql(STAGING_TABLE);
+    // 付款方與收款方各彙總一次；自己轉給自己的紀錄只計入付款方
+    private static final String AGGREGATE_SQL =
+        "select from_address, type, token_address, 1, count(*), sum(amount), sum(amount2), min(timestamp), max(timestamp) " +
+        "from transactions where id > ? and id <= ? and (status is null or status <> 'FAILED') " +
+        "group by from_address, type, token_address " +
+        "union all " +
+        "select to_address, type, token_address, 0, count(*), sum(amount), sum(amount2), min(timestamp), max(timestamp) " +
+        "from transactions where id > ? and id <= ? and (status is null or status <> 'FAILED') " +
+        "and to_address <> from_address " +
+        "group by to_address, type, token_address";
+    private static final int IN_CLAUSE_SIZE = 500;
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final AddressStatsRepository addressStatsRepository;
+    private final TransactionJournal transactionJournal;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+
+    // 每個線程佔用一條連線池的連線，數量應明顯小於連線池大小
+    @Value("${exchange.address-stats.rebuild-threads:4}")
+    private int rebuildThreads;
+
+    @PostConstruct
+    public void registerJournalListener() {
+        transactionJournal.addBatchListener(this::applyBatch);
+    }
+
+    /**
+     * 讀取地址的統計；沒有任何交易紀錄的地址回傳全為零的統計。
+     */
+    public AddressStats getStats(String address) {
+        return addressStatsRepository.findById(address).orElseGet(() -> new AddressStats(address));
+    }
+
+    /**
+     * 由 transactions 資料表重新計算所有地址的統計並替換現有內容，回傳地址數、紀錄數與耗時。
+     * 同一時間只執行一個重建。
+     */
+    public Map<String, Object> rebuild() {
+        rebuildLock.lock();
+        try {
+            return rebuildStats();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private Map<String, Object> rebuildStats() {
+        long started = System.nanoTime();
+        long maxId = maxTransactionId();
+        Map<String, AddressStats> stats = aggregateInParallel(maxId);
+
+        // 彙總期間提交的紀錄先在不暫停日誌的情況下補上，暫停時只剩下最後一小段
+        long lastId = maxTransactionId();
+        List<Transaction> tail = readTail(maxId, lastId);
+        mergeInto(stats, fold(tail));
+        writeStaging(stats.values());
+
+        // 暫停日誌寫入期間不會有新紀錄提交，主鍵大於 lastId 的紀錄即為寫入暫存表後提交的全部紀錄；
+        // 暫停期間只補上這段紀錄並以一條語句把暫存表複製到 address_stats
+        long caughtUp = transactionJournal.pauseWriter(() -> transactionTemplate.execute(status -> {
+            List<Transaction> last = readTail(lastId, Long.MAX_VALUE);
+            Map<String, AddressStats> deltas = fold(last);
+            upsertStaging(deltas.values(), stats.keySet());
+            mergeInto(stats, deltas);
+            jdbcTemplate.update("delete from address_stats");
+            jdbcTemplate.update("insert into address_stats (" + COLUMNS + ") select " + COLUMNS + " from " + STAGING_TABLE);
+            return (long) last.size();
+        }));
+        jdbcTemplate.execute("drop table if exists " + STAGING_TABLE);
+
+        long elapsedMs = (System.nanoTime() - started) / 1_000_000;
+        logger.info("地址統計重建完成 - {} 個地址，交易紀錄主鍵至 {}，另補上 {} 筆（暫停寫入期間 {} 筆），耗時 {} ms",
+            stats.size(), maxId, tail.size() + caughtUp, caughtUp, elapsedMs);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("addresses", stats.size());
+        result.put("lastTransactionId", maxId);
+        result.put("caughtUpTransactions", tail.size() + caughtUp);
+        result.put("elapsedMs", elapsedMs);
+        return result;
+    }
+
+    private long maxTransactionId() {
+        return jdbcTemplate.queryForObject("select coalesce(max(id), 0) from transactions", Long.class);
+    }
+
+    /**
+     * 讀取主鍵在 (lower, upper] 之間的交易紀錄。
+     */
+    private List<Transaction> readTail(long lower, long upper) {
+        return jdbcTemplate.query(
+            "select from_address, to_address, amount, amount2, token_address, type, timestamp, status " +
+                "from transactions where id > ? and id <= ? order by id",
+            (rs, rowNum) -> {
+                Transaction t = new Transaction();
+                t.setFromAddress(rs.getString(1));
+                t.setToAddress(rs.getString(2));
+                t.setAmount(rs.getBigDecimal(3));
+                t.setAmount2(rs.getBigDecimal(4));
+                t.setTokenAddress(rs.getString(5));
+                t.setType(rs.getString(6));
+                t.setTimestamp(toLocalDateTime(rs.getTimestamp(7)));
+                t.setStatus(rs.getString(8));
+                return t;
+            }, lower, upper);
+    }
+
+    /**
+     * 重新建立暫存表並寫入重建結果；不暫停日誌寫入，address_stats 在此期間照常累加。
+     */
+    private void writeStaging(Collection<AddressStats> stats) {
+        jdbcTemplate.execute("drop table if exists " + STAGING_TABLE);
+        jdbcTemplate.execute("create table " + STAGING_TABLE + " as select * from address_stats where 1 = 0");
+        List<Object[]> rows = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (AddressStats s : stats) {
+            rows.add(values(s));
+            if (rows.size() == INSERT_BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(STAGING_INSERT_SQL, rows);
+                rows.clear();
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(STAGING_INSERT_SQL, rows);
+        }
+    }
+
+    /**
+     * 把增量累加到暫存表：existing 中的地址已有統計列，其餘新增。
+     */
+    private void upsertStaging(Collection<AddressStats> deltas, Set<String> existing) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> increments = new ArrayList<>();
+        for (AddressStats delta : deltas) {
+            (existing.contains(delta.getAddress()) ? increments : inserts).add(values(delta));
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(STAGING_INSERT_SQL, inserts);
+        }
+        if (!increments.isEmpty()) {
+            jdbcTemplate.batchUpdate(STAGING_INCREMENT_SQL, increments);
+        }
+    }
+
+    private static void mergeInto(Map<String, AddressStats> stats, Map<String, AddressStats> deltas) {
+        deltas.forEach((address, delta) -> stats.merge(address, delta, (a, b) -> {
+            a.merge(b);
+            return a;
+        }));
+    }
+
+    private Map<String, AddressStats> aggregateInParallel(long maxId) {
+        int threads = Math.max(1, rebuildThreads);
+        long rangeSize = Math.max(1, (maxId + threads - 1) / threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<String, AddressStats>>> parts = new ArrayList<>();
+            for (long from = 0; from < maxId; from += rangeSize) {
+                long lower = from;
+                long upper = Math.min(maxId, from + rangeSize);
+                parts.add(executor.submit(() -> aggregateRange(lower, upper)));
+            }
+            Map<String, AddressStats> stats = new HashMap<>();
+            for (Future<Map<String, AddressStats>> part : parts) {
+                part.get().forEach((address, partial) -> stats.merge(address, partial, (a, b) -> {
+                    a.merge(b);
+                    return a;
+                }));
+            }
+            return stats;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while rebuilding address stats", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to rebuild address stats: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 彙總主鍵在 (lower, upper] 之間的交易紀錄。
+     */
+    private Map<String, AddressStats> aggregateRange(long lower, long upper) {
+        Map<String, AddressStats> stats = new HashMap<>();
+        jdbcTemplate.query(AGGREGATE_SQL, (ResultSet rs) -> {
+            String address = rs.getString(1);
+            stats.computeIfAbsent(address, AddressStats::new).add(
+                rs.getString(2), rs.getString(3), rs.getInt(4) == 1, rs.getLong(5),
+                rs.getBigDecimal(6), rs.getBigDecimal(7),
+                toLocalDateTime(rs.getTimestamp(8)), toLocalDateTime(rs.getTimestamp(9)));
+        }, lower, upper, lower, upper);
+        return stats;
+    }
+
+    /**
+     * 在日誌寫入線程的連線上，把一個批次的增量累加到統計列；不存在的地址直接新增。
+     */
+    private void applyBatch(Connection connection, List<Transaction> transactions) throws SQLException {
+        Map<String, AddressStats> deltas = fold(transactions);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Set<String> existing = existingAddresses(connection, new ArrayList<>(deltas.keySet()));
+        try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+             PreparedStatement increment = connection.prepareStatement(INCREMENT_SQL)) {
+            boolean inserts = false;
+            boolean increments = false;
+            for (AddressStats delta : deltas.values()) {
+                PreparedStatement ps = existing.contains(delta.getAddress()) ? increment : insert;
+                Object[] values = values(delta);
+                for (int i = 0; i < values.length; i++) {
+                    ps.setObject(i + 1, values[i]);
+                }
+                ps.addBatch();
+                if (ps == insert) {
+                    inserts = true;
+                } else {
+                    increments = true;
+                }
+            }
+            if (inserts) {
+                insert.executeBatch();
+            }
+            if (increments) {
+                increment.executeBatch();
+            }
+        }
+    }
+
+    private static Set<String> existingAddresses(Connection connection, List<String> addresses) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        for (int start = 0; start < addresses.size(); start += IN_CLAUSE_SIZE) {
+            List<String> chunk = addresses.subList(start, Math.min(addresses.size(), start + IN_CLAUSE_SIZE));
+            String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+            try (PreparedStatement ps = connection.prepareStatement(
+                "select address from address_stats where address in (" + placeholders + ")")) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        existing.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * 把交易紀錄依地址累加成增量；付款方與收款方相同時只計入一次。
+     * 缺少地址的一方不計入，這種紀錄本身寫不進交易表，不能讓它中斷整個批次。
+     */
+    static Map<String, AddressStats> fold(List<Transaction> transactions) {
+        Map<String, AddressStats> stats = new HashMap<>();
+        for (Transaction t : transactions) {
+            if ("FAILED".equals(t.getStatus())) {
+                continue;
+            }
+            if (t.getFromAddress() != null) {
+                stats.computeIfAbsent(t.getFromAddress(), AddressStats::new).add(t.getType(), t.getTokenAddress(), true, 1,
+                    t.getAmount(), t.getAmount2(), t.getTimestamp(), t.getTimestamp());
+            }
+            if (t.getToAddress() != null && !Objects.equals(t.getToAddress(), t.getFromAddress())) {
+                stats.computeIfAbsent(t.getToAddress(), AddressStats::new).add(t.getType(), t.getTokenAddress(), false, 1,
+                    t.getAmount(), t.getAmount2(), t.getTimestamp(), t.getTimestamp());
+            }
+        }
+        return stats;
+    }
+
+    // 欄位順序與 COLUMNS 相同，地址在最後，供新增與累加共用
+    private static Object[] values(AddressStats s) {
+        return new Object[]{
+            s.getUsdcVolume(), s.getCctVolume(), s.getUsdcLiquidityAdded(), s.getCctLiquidityAdded(),
+            s.getMintCount(), s.getTransferCount(), s.getSwapCount(), s.getAddLiquidityCount(), s.getRemoveLiquidityCount(),
+            s.getClaimFeesCount(), s.getUsdcFeesClaimed(), s.getCctFeesClaimed(),
+            toTimestamp(s.getFirstActivity()), toTimestamp(s.getLastActivity()), s.getAddress()
+        };
+    }
+
+    private static String insertSql(String table) {
+        return "insert into " + table + " (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    }
+
+    private static String incrementSql(String table) {
+        return "update " + table + " set " +
+            "usdc_volume = usdc_volume + ?, cct_volume = cct_volume + ?, " +
+            "usdc_liquidity_added = usdc_liquidity_added + ?, cct_liquidity_added = cct_liquidity_added + ?, " +
+            "mint_count = mint_count + ?, transfer_count = transfer_count + ?, swap_count = swap_count + ?, " +
+            "add_liquidity_count = add_liquidity_count + ?, remove_liquidity_count = remove_liquidity_count + ?, " +
+            "claim_fees_count = claim_fees_count + ?, usdc_fees_claimed = usdc_fees_claimed + ?, " +
+            "cct_fees_claimed = cct_fees_claimed + ?, " +
+            "first_activity = least(first_activity, ?), last_activity = greatest(last_activity, ?) " +
+            "where address = ?";
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
@@ -0,0 +1,156 @@
+package org.example.service;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * 批次拍賣撮合：同一個池子在時間窗口內收到的交換訂單集中起來，由結算函式一次淨額結算。
+ * 下單的請求線程會等待所屬批次結算完成後取得成交數量，最多等待時間窗口加上 exchange.batch-auction.settle-timeout-ms；
+ * 逾時的訂單若尚未被結算線程取走即作廢，之後的結算不會再處理它。
+ */
+@Component
+public class BatchAuction {
+
+    public enum Side {
+        // 投入 USDC 換取 CCT
+        BUY_CARBON,
+        // 投入 CCT 換取 USDC
+        SELL_CARBON
+    }
+
+    @Getter
+    public static class Order {
+        private final Side side;
+        private final String trader;
+        private final BigDecimal amountIn;
+        private final BigDecimal maxExchangeRate;
+        private final CompletableFuture<BigDecimal> result = new CompletableFuture<>();
+        // 結算時寫入：成交數量或拒絕原因
+        @Setter
+        private BigDecimal amountOut;
+        @Setter
+        private RuntimeException rejection;
+        // 結算線程與逾時放棄的請求線程以此決定訂單歸屬，只有一方能取得
+        @Getter(AccessLevel.NONE)
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        public Order(Side side, String trader, BigDecimal amountIn, BigDecimal maxExchangeRate) {
+            this.side = side;
+            this.trader = trader;
+            this.amountIn = amountIn;
+            this.maxExchangeRate = maxExchangeRate;
+        }
+
+        public boolean isOpen() {
+            return rejection == null;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    @Value("${exchange.batch-auction.window-ms:20}")
+    private long windowMs;
+
+    @Value("${exchange.batch-auction.settle-timeout-ms:5000}")
+    private long settleTimeoutMs;
+
+    // 不同池子的批次在各自的線程上結算，互不阻塞
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(),
+            r -> new Thread(r, "batch-auction-" + threadCount.incrementAndGet()));
+    private final Map<Long, List<Order>> pending = new ConcurrentHashMap<>();
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * 將訂單加入池子目前的批次並等待結算，回傳成交數量。
+     * settler 在交易內完成整批的餘額與池子更新，並為每張訂單寫入成交數量或拒絕原因。
+     */
+    public BigDecimal submit(Long exchangeId, Order order, BiConsumer<Long, List<Order>> settler) {
+        pending.compute(exchangeId, (id, batch) -> {
+            if (batch == null) {
+                batch = new ArrayList<>();
+                scheduler.schedule(() -> settle(id, settler), windowMs, TimeUnit.MILLISECONDS);
+            }
+            batch.add(order);
+            return batch;
+        });
+        long timeoutMs = windowMs + settleTimeoutMs;
+        try {
+            return order.getResult().get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw abandon(order, "Interrupted while waiting for batch settlement", e);
+        } catch (TimeoutException e) {
+            throw abandon(order, "Batch settlement timed out after " + timeoutMs + " ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * 請求線程停止等待時作廢訂單。結算線程已取走訂單時結果未知，由呼叫端查詢餘額確認。
+     */
+    private static IllegalStateException abandon(Order order, String reason, Exception cause) {
+        if (order.claim()) {
+            IllegalStateException failure = new IllegalStateException(reason + "; order was not executed", cause);
+            order.getResult().completeExceptionally(failure);
+            return failure;
+        }
+        return new IllegalStateException(reason + " while the batch was being settled; check balances before retrying", cause);
+    }
+
+    private void settle(Long exchangeId, BiConsumer<Long, List<Order>> settler) {
+        List<Order> batch = pending.remove(exchangeId);
+        if (batch == null) {
+            return;
+        }
+        // 已逾時作廢的訂單不再結算
+        batch.removeIf(order -> !order.claim());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            settler.accept(exchangeId, batch);
+        } catch (RuntimeException e) {
+            batch.forEach(order -> order.getResult().completeExceptionally(e));
+            return;
+        }
+        for (Order order : batch) {
+            if (order.getRejection() != null) {
+                order.getResult().completeExceptionally(order.getRejection());
+            } else {
+                order.getResult().complete(order.getAmountOut());
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.math.PoolMath;
+import org.example.model.Candle;
+import org.example.repository.CandleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 由每筆已提交的交換即時彙總各池子的 K 線。每個池子每種週期只有一根未收盤的 K 線留在記憶體中，
+ * 成交落入新的區間或區間結束後即收盤，收盤的 K 線由背景線程定期批次寫入 candles 資料表。
+ * 寫入以「更新不到就插入」的方式合併，重新啟動後同一區間的 K 線會與已寫入的部分合併。
+ */
+@Component
+@RequiredArgsConstructor
+public class CandleAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(CandleAggregator.class);
+
+    private static final String MERGE_SQL = "update candles set " +
+        "high_price = greatest(high_price, ?), low_price = least(low_price, ?), close_price = ?, " +
+        "cct_volume = cct_volume + ?, usdc_volume = usdc_volume + ?, trade_count = trade_count + ? " +
+        "where exchange_id = ? and resolution = ? and open_time = ?";
+    private static final String INSERT_SQL = "insert into candles " +
+        "(open_price, high_price, low_price, close_price, cct_volume, usdc_volume, trade_count, " +
+        "exchange_id, resolution, open_time) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final Candle.Resolution[] RESOLUTIONS = Candle.Resolution.values();
+
+    private final CandleRepository candleRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${exchange.candles.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    private final ConcurrentMap<Long, Series> series = new ConcurrentHashMap<>();
+    // 已收盤、尚未確認寫入的 K 線；寫入成功後才移除，讀取時與資料表的結果合併
+    private final ConcurrentLinkedQueue<Candle> closed = new ConcurrentLinkedQueue<>();
+    // 讀取端在鎖內查詢資料表，使用 ReentrantLock 使虛擬線程等待時不佔住載體線程
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "candle-flusher"));
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止時把未收盤的 K 線也寫入，重新啟動後同一區間的成交會合併到這一列。
+     */
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        series.values().forEach(s -> s.closeBefore(Long.MAX_VALUE));
+        flush();
+    }
+
+    /**
+     * 記錄一筆交換的成交數量；在交易中呼叫時於提交後才計入，回滾的交換不會出現在 K 線中。
+     */
+    public void recordSwap(Long exchangeId, BigDecimal usdcAmount, BigDecimal cctAmount) {
+        if (cctAmount.signum() <= 0 || usdcAmount.signum() <= 0) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    series(exchangeId).add(usdcAmount, cctAmount);
+                }
+            });
+        } else {
+            series(exchangeId).add(usdcAmount, cctAmount);
+        }
+    }
+
+    /**
+     * 池子在 [from, to) 區間內開始的 K 線，依開始時間排序，最多 limit 根；包含尚未寫入與尚未收盤的 K 線。
+     */
+    public List<Candle> getCandles(Long exchangeId, Candle.Resolution resolution, long from, long to, int limit) {
+        TreeMap<Long, Candle> candles = new TreeMap<>();
+        Map<Long, Candle> unsaved = new HashMap<>();
+        Series current = series.get(exchangeId);
+        // 寫入與移出佇列在同一個鎖內完成，鎖內讀到的記憶體 K 線都還不在資料表中。
+        // 先讀未收盤的再讀佇列，期間剛收盤的 K 線以佇列中的為準；
+        // 資料表已有同一區間時，是重新啟動前寫入的前半段，兩者合併
+        flushLock.lock();
+        try {
+            Candle open = current == null ? null : current.open(resolution);
+            if (open != null && matches(open, exchangeId, resolution, from, to)) {
+                unsaved.put(open.getOpenTime(), open);
+            }
+            for (Candle candle : candleRepository.findRange(exchangeId, resolution, from, to, PageRequest.of(0, limit))) {
+                candles.put(candle.getOpenTime(), candle);
+            }
+            for (Candle candle : closed) {
+                if (matches(candle, exchangeId, resolution, from, to)) {
+                    unsaved.put(candle.getOpenTime(), candle);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+        unsaved.forEach((openTime, candle) -> candles.merge(openTime, candle, Candle::merge));
+        List<Candle> result = new ArrayList<>(limit);
+        for (Candle candle : candles.values()) {
+            if (result.size() == limit) {
+                break;
+            }
+            result.add(candle);
+        }
+        return result;
+    }
+
+    private static boolean matches(Candle candle, Long exchangeId, Candle.Resolution resolution, long from, long to) {
+        return candle.getExchangeId().equals(exchangeId) && candle.getResolution() == resolution
+            && candle.getOpenTime() >= from && candle.getOpenTime() < to;
+    }
+
+    private Series series(Long exchangeId) {
+        return series.computeIfAbsent(exchangeId, Series::new);
+    }
+
+    private void flush() {
+        long now = System.currentTimeMillis();
+        series.values().forEach(s -> s.closeBefore(now));
+        List<Candle> batch = new ArrayList<>(closed);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flushLock.lock();
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(batch));
+                closed.removeAll(batch);
+            } finally {
+                flushLock.unlock();
+            }
+        } catch (RuntimeException e) {
+            logger.error("寫入 K 線失敗，{} 根 K 線下次重試", batch.size(), e);
+        }
+    }
+
+    private void write(List<Candle> batch) {
+        int[] updated = jdbcTemplate.batchUpdate(MERGE_SQL, batch, batch.size(), (ps, c) -> {
+            ps.setBigDecimal(1, c.getHigh());
+            ps.setBigDecimal(2, c.getLow());
+            ps.setBigDecimal(3, c.getClose());
+            ps.setBigDecimal(4, c.getCctVolume());
+            ps.setBigDecimal(5, c.getUsdcVolume());
+            ps.setLong(6, c.getTradeCount());
+            ps.setLong(7, c.getExchangeId());
+            ps.setString(8, c.getResolution().name());
+            ps.setLong(9, c.getOpenTime());
+        })[0];
+        List<Candle> inserts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updated[i] == 0) {
+                inserts.add(batch.get(i));
+            }
+        }
+        if (inserts.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, inserts, inserts.size(), (ps, c) -> {
+            ps.setBigDecimal(1, c.getOpen());
+            ps.setBigDecimal(2, c.getHigh());
+            ps.setBigDecimal(3, c.getLow());
+            ps.setBigDecimal(4, c.getClose());
+            ps.setBigDecimal(5, c.getCctVolume());
+            ps.setBigDecimal(6, c.getUsdcVolume());
+            ps.setLong(7, c.getTradeCount());
+            ps.setLong(8, c.getExchangeId());
+            ps.setString(9, c.getResolution().name());
+            ps.setLong(10, c.getOpenTime());
+        });
+    }
+
+    /**
+     * 單一池子各週期未收盤的 K 線。成交與收盤都在同一個鎖內以單調的時間判斷，
+     * 收盤之後的成交時間必定不早於收盤時間，不會再落入已收盤的區間。
+     */
+    private final class Series {
+        private final Long exchangeId;
+        private final Candle[] open = new Candle[RESOLUTIONS.length];
+        private long lastTime;
+
+        private Series(Long exchangeId) {
+            this.exchangeId = exchangeId;
+        }
+
+        private synchronized void add(BigDecimal usdcAmount, BigDecimal cctAmount) {
+            long now = advance(System.currentTimeMillis());
+            BigDecimal price = PoolMath.divide(usdcAmount, cctAmount, RoundingMode.HALF_UP);
+            for (int i = 0; i < RESOLUTIONS.length; i++) {
+                long bucket = RESOLUTIONS[i].bucketStart(now);
+                Candle candle = open[i];
+                if (candle != null && candle.getOpenTime() != bucket) {
+                    closed.add(candle);
+                    candle = null;
+                }
+                if (candle == null) {
+                    candle = new Candle(exchangeId, RESOLUTIONS[i], bucket, price);
+                    open[i] = candle;
+                }
+                candle.add(price, cctAmount, usdcAmount);
+            }
+        }
+
+        private synchronized void closeBefore(long time) {
+            long now = time == Long.MAX_VALUE ? time : advance(time);
+            for (int i = 0; i < open.length; i++) {
+                if (open[i] != null && open[i].getCloseTime() <= now) {
+                    closed.add(open[i]);
+                    open[i] = null;
+                }
+            }
+        }
+
+        private synchronized Candle open(Candle.Resolution resolution) {
+            Candle candle = open[resolution.ordinal()];
+            return candle == null ? null : candle.copy();
+        }
+
+        // 系統時鐘回撥時沿用上次的時間，讓區間判斷保持單調
+        private long advance(long time) {
+            lastTime = Math.max(lastTime, time);
+            return lastTime;
+        }
+    }
+}
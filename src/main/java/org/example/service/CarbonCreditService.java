@@ -1,95 +1,184 @@
 package org.example.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.example.metrics.ExchangeMetrics;
 import org.example.model.CarbonCreditToken;
+import org.example.model.LedgerEvent;
 import org.example.repository.CarbonCreditTokenRepository;
+import org.example.repository.TokenBalanceRepository;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 
+/**
+ * 碳權代幣的發行與轉帳。餘額按 (token_id, address) 各存一列，
+ * 查詢與轉帳只讀寫相關地址的餘額列，不載入代幣的所有持有人。
+ */
 @Service
 @RequiredArgsConstructor
 public class CarbonCreditService {
+    private static final String INSERT_BALANCE_SQL =
+        "insert into token_balances (token_id, address, balance) values (?, ?, ?)";
+
     private final CarbonCreditTokenRepository tokenRepository;
+    private final TokenBalanceRepository tokenBalanceRepository;
+    private final MarketChangeFeed marketChangeFeed;
+    private final TransactionJournal transactionJournal;
+    private final LedgerEventLog ledgerEventLog;
+    private final ExchangeMetrics exchangeMetrics;
+    private final JdbcTemplate jdbcTemplate;
+
+    // 預設代幣建立後不會改變，快取其 id 使餘額查詢只需一次主鍵查詢
+    private volatile Long defaultTokenId;
 
     @Transactional
     public CarbonCreditToken createToken(String adminAddress) {
-        CarbonCreditToken token = new CarbonCreditToken("Carbon Credit Token", "CCT", adminAddress);
-        return tokenRepository.save(token);
+        CarbonCreditToken token = tokenRepository.save(new CarbonCreditToken("Carbon Credit Token", "CCT", adminAddress));
+        ledgerEventLog.record(LedgerEvent.tokenCreated(token));
+        return token;
     }
 
     @Transactional
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "mint"}, histogram = true)
     public void mint(String adminAddress, String to, BigDecimal amount) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
+        CarbonCreditToken token = defaultToken();
+
         if (!token.getAdminAddress().equals(adminAddress)) {
             throw new IllegalStateException("Only admin can mint tokens");
         }
-        
-        token.mint(to, amount);
+
+        token.mint(amount);
         tokenRepository.save(token);
+        ledgerEventLog.record(LedgerEvent.tokenMinted(token.getId(), amount));
+        credit(token.getId(), to, amount);
+        marketChangeFeed.balanceChanged(to);
+        transactionJournal.record("MINT", adminAddress, to, "CCT", amount, null);
     }
 
     @Transactional
     public void disableMinting(String adminAddress) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
+        CarbonCreditToken token = defaultToken();
+
         if (!token.getAdminAddress().equals(adminAddress)) {
             throw new IllegalStateException("Only admin can disable minting");
         }
-        
+
         token.disableMinting();
         tokenRepository.save(token);
+        ledgerEventLog.record(LedgerEvent.mintingDisabled(token.getId()));
     }
 
     @Transactional
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "cct_transfer"}, histogram = true)
     public void transfer(String from, String to, BigDecimal amount) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
-        token.transfer(from, to, amount);
-        tokenRepository.save(token);
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        move(defaultTokenId(), from, to, amount);
+        marketChangeFeed.balanceChanged(from, to);
+        transactionJournal.record("TRANSFER", from, to, "CCT", amount, null);
     }
 
     @Transactional
     public void approve(String owner, String spender, BigDecimal amount) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
+        CarbonCreditToken token = defaultToken();
+
         token.approve(owner, spender, amount);
         tokenRepository.save(token);
     }
 
     @Transactional
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "cct_transfer_from"}, histogram = true)
     public void transferFrom(String owner, String spender, String to, BigDecimal amount) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
-        token.transferFrom(owner, spender, to, amount);
+        CarbonCreditToken token = defaultToken();
+
+        token.spendAllowance(spender, amount);
+        move(token.getId(), owner, to, amount);
         tokenRepository.save(token);
+        marketChangeFeed.balanceChanged(owner, to);
+        transactionJournal.record("TRANSFER", owner, to, "CCT", amount, null);
     }
 
+    @Transactional(readOnly = true)
     public BigDecimal balanceOf(String address) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
-        return token.getBalance(address);
+        return balanceOf(defaultTokenId(), address);
+    }
+
+    /**
+     * 以主鍵查詢單一地址的餘額，沒有餘額列時為 0。
+     */
+    @Transactional(readOnly = true)
+    public BigDecimal balanceOf(Long tokenId, String address) {
+        return tokenBalanceRepository.findBalance(tokenId, address).orElse(BigDecimal.ZERO);
+    }
+
+    /**
+     * 以單一條件更新扣款，餘額不足時拋出 IllegalStateException 並由交易回滾。
+     */
+    @Transactional
+    public void debit(Long tokenId, String address, BigDecimal amount) {
+        if (exchangeMetrics.cctBalanceUpdate(() -> tokenBalanceRepository.debit(tokenId, address, amount)) == 0) {
+            throw new IllegalStateException("Insufficient balance");
+        }
+        ledgerEventLog.record(LedgerEvent.cctDebit(tokenId, address, amount));
+    }
+
+    /**
+     * 入帳到地址的餘額列，地址第一次持有時新增一列。兩個交易同時為同一地址新增時，
+     * 後插入的一方遇到主鍵衝突，改為再更新一次對方新增的列，兩筆入帳都保留。
+     * 新增以 JdbcTemplate 執行：主鍵衝突只讓這條語句失敗，不會把外層交易標記為只能回滾。
+     */
+    @Transactional
+    public void credit(Long tokenId, String address, BigDecimal amount) {
+        if (exchangeMetrics.cctBalanceUpdate(() -> tokenBalanceRepository.credit(tokenId, address, amount)) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_BALANCE_SQL, tokenId, address, amount);
+            } catch (DuplicateKeyException e) {
+                if (tokenBalanceRepository.credit(tokenId, address, amount) == 0) {
+                    throw new IllegalStateException("Failed to credit balance of " + address, e);
+                }
+            }
+        }
+        ledgerEventLog.record(LedgerEvent.cctCredit(tokenId, address, amount));
+    }
+
+    /**
+     * 在兩個地址間轉帳，只寫入這兩列；依地址順序更新，
+     * 使方向相反的並行轉帳以相同順序取得列鎖而不會互相死結。
+     */
+    @Transactional
+    public void move(Long tokenId, String from, String to, BigDecimal amount) {
+        if (from.compareTo(to) <= 0) {
+            debit(tokenId, from, amount);
+            credit(tokenId, to, amount);
+        } else {
+            credit(tokenId, to, amount);
+            debit(tokenId, from, amount);
+        }
     }
 
     public BigDecimal allowance(String owner, String spender) {
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Token not found"));
-        
+        CarbonCreditToken token = defaultToken();
+
         return token.getAllowance(owner, spender);
     }
-} 
\ No newline at end of file
+
+    /**
+     * 未指定代幣的操作使用最早建立的代幣。
+     */
+    public CarbonCreditToken defaultToken() {
+        CarbonCreditToken token = tokenRepository.findFirstByOrderByIdAsc()
+                .orElseThrow(() -> new IllegalStateException("Token not found"));
+        defaultTokenId = token.getId();
+        return token;
+    }
+
+    private Long defaultTokenId() {
+        Long id = defaultTokenId;
+        return id != null ? id : defaultToken().getId();
+    }
+}
@@ -1,24 +1,42 @@
 package org.example.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.example.math.PoolMath;
+import org.example.metrics.ExchangeMetrics;
 import org.example.model.*;
 import org.example.repository.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class CarbonExchangeService {
     private static final Logger logger = LoggerFactory.getLogger(CarbonExchangeService.class);
+
+    public static final int DEFAULT_PROVIDER_PAGE_SIZE = 50;
+    public static final int MAX_PROVIDER_PAGE_SIZE = 500;
+    public static final int DEFAULT_CANDLE_LIMIT = 500;
+    public static final int MAX_CANDLE_LIMIT = 2000;
     
     private final LiquidityPoolRepository liquidityPoolRepository;
     private final LiquidityProviderRepository liquidityProviderRepository;
@@ -27,93 +45,271 @@ public class CarbonExchangeService {
     private final CarbonCreditTokenRepository carbonCreditTokenRepository;
     private final TransactionRepository transactionRepository;
     private final UserRepository userRepository;
+    private final PoolEngine poolEngine;
+    private final PoolRegistry poolRegistry;
+    private final PoolSnapshotStore poolSnapshotStore;
+    private final PriceOracle priceOracle;
+    private final CandleAggregator candleAggregator;
+    private final BatchAuction batchAuction;
+    private final CarbonCreditService carbonCreditService;
+    private final USDCService usdcService;
+    private final TransactionJournal transactionJournal;
+    private final LedgerEventLog ledgerEventLog;
+    private final MarketChangeFeed marketChangeFeed;
+    private final TransactionTemplate transactionTemplate;
+    private final ExchangeMetrics exchangeMetrics;
+    private final LedgerLogger ledgerLogger;
 
-    @Transactional
+    @Value("${exchange.fee.default-bps:30}")
+    private int defaultFeeBps;
+
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "add_liquidity"}, histogram = true)
     public String addLiquidity(Map<String, String> request) {
         try {
+            Long exchangeId = request.get("exchangeId") == null ? null : Long.valueOf(request.get("exchangeId"));
             String userId = request.get("userId");
             BigDecimal amountUsdc = new BigDecimal(request.get("amountUsdc"));
-            BigDecimal maxSlippagePercentage = new BigDecimal(request.get("maxSlippagePercentage"));
-            
-            logger.info("開始添加流動性 - userId: {}, amountUsdc: {}, maxSlippagePercentage: {}", 
-                userId, amountUsdc, maxSlippagePercentage);
-            
-            // 獲取用戶 USDC 餘額
-            USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(userId)
-                .orElseThrow(() -> {
-                    logger.error("找不到 USDC 餘額，userId: {}", userId);
-                    return new RuntimeException("找不到 USDC 餘額");
-                });
-            logger.info("用戶 USDC 餘額: {}", usdcBalance.getBalance());
-            
-            // 檢查餘額是否足夠
-            if (usdcBalance.getBalance().compareTo(amountUsdc) < 0) {
-                logger.error("USDC 餘額不足，當前餘額: {}, 需要: {}", 
-                    usdcBalance.getBalance(), amountUsdc);
-                return "USDC 餘額不足";
-            }
-            
-            // 獲取流動性池
-            LiquidityPool pool = getLiquidityPool();
-            logger.info("當前流動性池狀態 - USDC: {}, CCT: {}, K: {}", 
-                pool.getUsdcReserves(), pool.getCctReserves(), pool.getK());
-            
-            // 計算新的 K 值
-            BigDecimal newUsdcReserves = pool.getUsdcReserves().add(amountUsdc);
-            BigDecimal newK = newUsdcReserves.multiply(pool.getCctReserves());
-            logger.info("新的 K 值: {}", newK);
-            
-            // 更新用戶 USDC 餘額
-            usdcBalance.setBalance(usdcBalance.getBalance().subtract(amountUsdc));
-            usdcBalanceRepository.save(usdcBalance);
-            logger.info("更新後用戶 USDC 餘額: {}", usdcBalance.getBalance());
-            
-            // 更新流動性池
-            pool.setUsdcReserves(newUsdcReserves);
-            pool.setK(newK);
-            liquidityPoolRepository.save(pool);
-            logger.info("更新後流動性池狀態 - USDC: {}, CCT: {}, K: {}", 
-                pool.getUsdcReserves(), pool.getCctReserves(), pool.getK());
-            
-            return "添加流動性成功";
+            // 只在池子沒有任何份額時使用，決定重新注入的價格
+            BigDecimal amountCct = request.get("amountCct") == null ? null : new BigDecimal(request.get("amountCct"));
+            // 依儲備比例存入不移動價格，請求中的 maxSlippagePercentage 沒有可檢查的對象，不再讀取
+            return withPool(exchangeId, pool -> applyAddLiquidity(pool, userId, amountUsdc, amountCct));
         } catch (Exception e) {
             logger.error("添加流動性失敗", e);
             return "添加流動性失敗: " + e.getMessage();
         }
     }
 
-    private void validateSlippage(BigDecimal maxSlippagePercentage) {
-        BigDecimal currentRate = calculateExchangeRate();
-        BigDecimal slippageFactor = BigDecimal.ONE.subtract(
-            maxSlippagePercentage.divide(BigDecimal.valueOf(100), 18, RoundingMode.HALF_UP)
-        );
+    /**
+     * 依目前儲備比例存入 USDC 與 CCT。所有份額都已提領時，池子的價格由這次存入的 initialCct 重新決定，
+     * 份額與建立池子時相同以存入的 USDC 數量計；餘額不足等驗證失敗時拋出例外，整個操作回滾。
+     */
+    private String applyAddLiquidity(LiquidityPool pool, String userId, BigDecimal amountUsdc, BigDecimal initialCct) {
+        if (amountUsdc.signum() <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        boolean firstDeposit = pool.getTotalShares().signum() == 0;
+        if (firstDeposit && (initialCct == null || initialCct.signum() <= 0)) {
+            throw new IllegalArgumentException("池子目前沒有流動性，需指定 amountCct 以設定價格");
+        }
+        // 獲取用戶 USDC 餘額
+        USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(userId)
+            .orElseThrow(() -> {
+                logger.error("找不到 USDC 餘額，userId: {}", userId);
+                return new RuntimeException("找不到 USDC 餘額");
+            });
+        // 檢查餘額是否足夠
+        if (usdcBalance.getBalance().compareTo(amountUsdc) < 0) {
+            logger.error("USDC 餘額不足，當前餘額: {}, 需要: {}", 
+                usdcBalance.getBalance(), amountUsdc);
+            throw new IllegalStateException("USDC 餘額不足");
+        }
         
-        BigDecimal minRate = currentRate.multiply(slippageFactor);
-        BigDecimal maxRate = currentRate.divide(slippageFactor, 18, RoundingMode.HALF_UP);
+        BigDecimal amountCct;
+        BigDecimal shares;
+        if (firstDeposit) {
+            // 提領後殘留的零頭儲備沒有持有人，一併歸入這次存入
+            amountCct = initialCct;
+            shares = amountUsdc;
+        } else {
+            // 依目前儲備比例同時存入 CCT，並按存入的 USDC 佔儲備的比例鑄造份額；兩者的捨入都對池子有利
+            amountCct = PoolMath.mulDiv(amountUsdc, pool.getCctReserves(), pool.getUsdcReserves(), RoundingMode.UP);
+            shares = PoolMath.mulDiv(amountUsdc, pool.getTotalShares(), pool.getUsdcReserves(), RoundingMode.DOWN);
+        }
+        Long tokenId = tokenFor(pool).getId();
+        if (carbonCreditService.balanceOf(tokenId, userId).compareTo(amountCct) < 0) {
+            logger.error("CCT 餘額不足，需要: {}", amountCct);
+            throw new IllegalStateException("CCT 餘額不足");
+        }
         
-        // 獲取實際執行時的匯率
-        BigDecimal executionRate = calculateExchangeRate();
+        usdcService.debit(userId, amountUsdc);
+        carbonCreditService.debit(tokenId, userId, amountCct);
+        marketChangeFeed.balanceChanged(userId);
+        transactionJournal.record("ADD_LIQUIDITY", userId, poolAddress(pool), "USDC", amountUsdc, amountCct);
         
-        if (executionRate.compareTo(minRate) < 0 || executionRate.compareTo(maxRate) > 0) {
-            throw new IllegalStateException(
-                String.format("Slippage too large. Current rate: %s, Allowed range: %s - %s",
-                    executionRate, minRate, maxRate)
-            );
+        // 更新流動性池
+        BigDecimal newUsdcReserves = pool.getUsdcReserves().add(amountUsdc);
+        BigDecimal newCctReserves = pool.getCctReserves().add(amountCct);
+        pool.setUsdcReserves(newUsdcReserves);
+        pool.setCctReserves(newCctReserves);
+        pool.setK(newUsdcReserves.multiply(newCctReserves));
+        pool.setTotalShares(pool.getTotalShares().add(shares));
+        mintShares(pool, userId, shares);
+        ledgerLogger.liquidityAdded(pool, userId, amountUsdc, amountCct, shares);
+        
+        return "添加流動性成功";
+    }
+
+    /**
+     * 為地址增加份額並回傳增加後的份額；地址第一次提供流動性時新增一列。
+     */
+    private BigDecimal mintShares(LiquidityPool pool, String address, BigDecimal shares) {
+        LiquidityProvider provider = liquidityProviderRepository.findById(new LiquidityProviderId(pool.getExchangeId(), address))
+            .orElseGet(() -> {
+                LiquidityProvider created = new LiquidityProvider();
+                created.setExchangeId(pool.getExchangeId());
+                created.setProviderAddress(address);
+                created.setPool(pool);
+                return created;
+            });
+        // 新的提供者以目前的增長為起點，不分得加入前收取的費用
+        provider.accrueFees(pool);
+        provider.setShares(provider.getShares().add(shares));
+        liquidityProviderRepository.save(provider);
+        ledgerEventLog.record(LedgerEvent.providerShares(provider));
+        return provider.getShares();
+    }
+
+    /**
+     * 銷毀地址的份額並按份額比例把池子的 USDC 與 CCT 支付給地址；份額歸零且沒有未領取的費用時刪除該列。
+     */
+    private void burnShares(LiquidityPool pool, LiquidityProvider provider, BigDecimal shares) {
+        String address = provider.getProviderAddress();
+        BigDecimal carbonAmount = PoolMath.mulDiv(shares, pool.getCctReserves(),
+                pool.getTotalShares(), RoundingMode.DOWN);
+        BigDecimal usdcAmount = PoolMath.mulDiv(shares, pool.getUsdcReserves(),
+                pool.getTotalShares(), RoundingMode.DOWN);
+
+        pool.setCctReserves(pool.getCctReserves().subtract(carbonAmount));
+        pool.setUsdcReserves(pool.getUsdcReserves().subtract(usdcAmount));
+        pool.setK(pool.getUsdcReserves().multiply(pool.getCctReserves()));
+        pool.setTotalShares(pool.getTotalShares().subtract(shares));
+        provider.accrueFees(pool);
+        provider.setShares(provider.getShares().subtract(shares));
+        if (provider.isEmpty()) {
+            liquidityProviderRepository.delete(provider);
+        } else {
+            liquidityProviderRepository.save(provider);
+        }
+
+        usdcService.credit(address, usdcAmount);
+        carbonCreditService.credit(tokenFor(pool).getId(), address, carbonAmount);
+        marketChangeFeed.balanceChanged(address);
+        ledgerEventLog.record(LedgerEvent.providerShares(provider));
+        transactionJournal.record("REMOVE_LIQUIDITY", poolAddress(pool), address, "USDC", usdcAmount, carbonAmount);
+        ledgerLogger.liquidityRemoved(pool, address, usdcAmount, carbonAmount, shares);
+    }
+
+    /**
+     * 對指定流動性池執行一個變更操作。啟用單寫者引擎時交由該池子的序列執行器執行並延後寫回，
+     * 否則在交易中以列鎖讀取池子並在操作後保存；不同池子的操作互不阻塞。
+     * 呼叫端不應再包一層交易：等待序列執行器時外層交易佔用的連線會使連線池在高並行時耗盡。
+     */
+    <T> T withPool(Long exchangeId, Function<LiquidityPool, T> operation) {
+        return withPool(exchangeId, operation, result -> true);
+    }
+
+    /**
+     * 同 {@link #withPool(Long, Function)}，但只有 modified 對結果成立時才保存池子並發布新快照。
+     * 供可能什麼都不做的操作使用（例如沒有成交的撮合），避免無變動的寫入與快照觸發監聽者。
+     */
+    <T> T withPool(Long exchangeId, Function<LiquidityPool, T> operation, Predicate<? super T> modified) {
+        Long id = poolRegistry.resolve(exchangeId);
+        if (poolEngine.isEnabled()) {
+            ExchangeMetrics.PoolWait wait = exchangeMetrics.poolWait(ExchangeMetrics.ENGINE);
+            return poolEngine.execute(id, pool -> wait.acquired(() -> {
+                T result = operation.apply(pool);
+                if (modified.test(result)) {
+                    publishPoolState(pool);
+                }
+                return result;
+            }), modified);
+        }
+        return transactionTemplate.execute(status -> {
+            ExchangeMetrics.PoolWait wait = exchangeMetrics.poolWait(ExchangeMetrics.ROW_LOCK);
+            LiquidityPool pool = liquidityPoolRepository.lockByExchangeId(id)
+                .orElseThrow(() -> new RuntimeException("No liquidity pool found for exchange " + id));
+            wait.acquired();
+            T result = operation.apply(pool);
+            if (modified.test(result)) {
+                liquidityPoolRepository.save(pool);
+                publishPoolState(pool);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 在多個流動性池上以單一交易執行一個變更操作，全部成功或全部回滾。
+     * 依 exchangeId 由小到大取得各池子的寫入權（列鎖或引擎的序列執行器），同時寫入多個池子的操作不會互相死結。
+     */
+    <T> T withPools(Collection<Long> exchangeIds, Function<Map<Long, LiquidityPool>, T> operation) {
+        List<Long> ids = exchangeIds.stream().map(poolRegistry::resolve).distinct().sorted().collect(Collectors.toList());
+        if (poolEngine.isEnabled()) {
+            ExchangeMetrics.PoolWait wait = exchangeMetrics.poolWait(ExchangeMetrics.ENGINE);
+            return poolEngine.executeAll(ids, pools -> wait.acquired(() -> {
+                T result = operation.apply(pools);
+                pools.values().forEach(this::publishPoolState);
+                return result;
+            }));
+        }
+        return transactionTemplate.execute(status -> {
+            ExchangeMetrics.PoolWait wait = exchangeMetrics.poolWait(ExchangeMetrics.ROW_LOCK);
+            Map<Long, LiquidityPool> pools = new LinkedHashMap<>();
+            for (Long id : ids) {
+                pools.put(id, liquidityPoolRepository.lockByExchangeId(id)
+                    .orElseThrow(() -> new RuntimeException("No liquidity pool found for exchange " + id)));
+            }
+            wait.acquired();
+            T result = operation.apply(pools);
+            pools.values().forEach(pool -> {
+                liquidityPoolRepository.save(pool);
+                publishPoolState(pool);
+            });
+            return result;
+        });
+    }
+
+    private void publishPoolState(LiquidityPool pool) {
+        poolSnapshotStore.publishAfterCommit(pool);
+        ledgerEventLog.record(LedgerEvent.poolState(pool));
+        ledgerLogger.poolState(pool);
+    }
+
+    /**
+     * 池子最新已提交狀態的快照，讀取時不查詢資料庫。
+     */
+    public PoolSnapshot getPoolSnapshot(Long exchangeId) {
+        return poolSnapshotStore.get(poolRegistry.resolve(exchangeId), this::loadPool);
+    }
+
+    /**
+     * 池子在結束於 agoSeconds 秒前、長度為 windowSeconds 秒的區間內的時間加權平均匯率，並附上目前的即時匯率。
+     */
+    public Map<String, Object> getTwap(Long exchangeId, long windowSeconds, long agoSeconds) {
+        if (windowSeconds <= 0 || agoSeconds < 0) {
+            throw new IllegalArgumentException("windowSeconds must be positive and agoSeconds must not be negative");
         }
+        // 先取得快照，池子尚未載入時由此開始記錄觀測
+        PoolSnapshot snapshot = getPoolSnapshot(exchangeId);
+        long to = System.currentTimeMillis() - agoSeconds * 1000;
+        long from = to - windowSeconds * 1000;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("exchangeId", snapshot.getExchangeId());
+        result.put("from", Instant.ofEpochMilli(from).toString());
+        result.put("to", Instant.ofEpochMilli(to).toString());
+        result.put("twap", priceOracle.twap(snapshot.getExchangeId(), from, to));
+        result.put("spot", snapshot.getExchangeRate());
+        return result;
     }
 
-    public LiquidityPool getLiquidityPool() {
+    /**
+     * 池子在 [from, to) 區間內開始的 K 線，依開始時間排序。
+     */
+    public List<Candle> getCandles(Long exchangeId, Candle.Resolution resolution, long from, long to, int limit) {
+        if (limit <= 0 || limit > MAX_CANDLE_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_CANDLE_LIMIT);
+        }
+        return candleAggregator.getCandles(poolRegistry.resolve(exchangeId), resolution, from, to, limit);
+    }
+
+    private LiquidityPool loadPool(Long id) {
         //logger.info("開始獲取流動性池");
         try {
-            List<LiquidityPool> pools = liquidityPoolRepository.findAll();
-            //logger.info("數據庫中的流動性池數量: {}", pools.size());
-            
-            if (pools.isEmpty()) {
-                logger.error("未找到流動性池");
-                throw new RuntimeException("No liquidity pool found");
+            if (poolEngine.isEnabled()) {
+                return poolEngine.read(id);
             }
-            
-            LiquidityPool pool = pools.get(0);
+            LiquidityPool pool = liquidityPoolRepository.findByExchangeId(id)
+                .orElseThrow(() -> new RuntimeException("No liquidity pool found for exchange " + id));
             //logger.info("獲取到的流動性池: id={}, exchange_id={}", pool.getId(), pool.getExchangeId());
             return pool;
         } catch (Exception e) {
@@ -122,40 +318,119 @@ public class CarbonExchangeService {
         }
     }
 
-    public BigDecimal calculateExchangeRate() {
-        LiquidityPool pool = getLiquidityPool();
-        if (pool == null || pool.getUsdcReserves() == null || pool.getCctReserves() == null) {
-            return BigDecimal.ZERO;
+    public List<LiquidityInfo> listPools() {
+        return poolRegistry.exchangeIds().stream()
+            .map(id -> toLiquidityInfo(getPoolSnapshot(id)))
+            .collect(Collectors.toList());
+    }
+
+    private LiquidityInfo toLiquidityInfo(PoolSnapshot snapshot) {
+        LiquidityInfo info = new LiquidityInfo();
+        info.setExchangeId(snapshot.getExchangeId());
+        info.setCctReserves(snapshot.getCctReserves());
+        info.setUsdcReserves(snapshot.getUsdcReserves());
+        info.setExchangeRate(snapshot.getExchangeRate());
+        info.setTotalShares(snapshot.getTotalShares());
+        info.setSettlementMode(snapshot.getSettlementMode());
+        info.setFeeBps(snapshot.getFeeBps());
+        info.setVersion(snapshot.getVersion());
+        return info;
+    }
+
+    /**
+     * 為指定的碳權代幣建立新的流動性池，創建者注入初始的 USDC 與 CCT 並取得對應份額。
+     */
+    @Transactional
+    public LiquidityPool createPool(Long tokenId, String providerAddress, BigDecimal amountUsdc, BigDecimal amountCct) {
+        if (amountUsdc.compareTo(BigDecimal.ZERO) <= 0 || amountCct.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalArgumentException("Initial reserves must be positive");
+        }
+        CarbonCreditToken token = (tokenId == null
+                ? carbonCreditTokenRepository.findFirstByOrderByIdAsc()
+                : carbonCreditTokenRepository.findById(tokenId))
+            .orElseThrow(() -> new RuntimeException("找不到 CCT token"));
+        
+        USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(providerAddress)
+            .orElseThrow(() -> new RuntimeException("找不到 USDC 餘額"));
+        if (usdcBalance.getBalance().compareTo(amountUsdc) < 0) {
+            throw new RuntimeException("USDC 餘額不足");
         }
-        if (pool.getCctReserves().compareTo(BigDecimal.ZERO) == 0) {
-            return BigDecimal.ZERO;
+        if (carbonCreditService.balanceOf(token.getId(), providerAddress).compareTo(amountCct) < 0) {
+            throw new RuntimeException("CCT 餘額不足");
         }
-        return pool.getUsdcReserves().divide(pool.getCctReserves(), 18, RoundingMode.HALF_UP);
+        usdcService.debit(providerAddress, amountUsdc);
+        carbonCreditService.debit(token.getId(), providerAddress, amountCct);
+        marketChangeFeed.balanceChanged(providerAddress);
+        
+        CarbonExchange exchange = new CarbonExchange();
+        exchange.setToken(token);
+        exchange = carbonExchangeRepository.save(exchange);
+        
+        LiquidityPool pool = new LiquidityPool();
+        pool.setExchangeId(exchange.getId());
+        pool.setUsdcReserves(amountUsdc);
+        pool.setCctReserves(amountCct);
+        pool.setK(amountUsdc.multiply(amountCct));
+        pool.setTotalShares(amountUsdc);
+        pool.setFeeBps(defaultFeeBps);
+        pool = liquidityPoolRepository.save(pool);
+        
+        LiquidityProvider provider = new LiquidityProvider();
+        provider.setExchangeId(exchange.getId());
+        provider.setProviderAddress(providerAddress);
+        provider.setPool(pool);
+        provider.setShares(amountUsdc);
+        liquidityProviderRepository.save(provider);
+        
+        poolRegistry.register(pool);
+        poolSnapshotStore.publishAfterCommit(pool);
+        ledgerEventLog.record(LedgerEvent.exchangeCreated(exchange.getId(), token.getId()));
+        ledgerEventLog.record(LedgerEvent.poolState(pool));
+        ledgerEventLog.record(LedgerEvent.providerShares(provider));
+        transactionJournal.record("ADD_LIQUIDITY", providerAddress, poolAddress(pool), "USDC", amountUsdc, amountCct);
+        ledgerLogger.poolCreated(pool, token.getId(), providerAddress);
+        return pool;
+    }
+
+    /**
+     * 池子所交易的碳權代幣；未綁定交易所的舊池子使用系統中的第一個代幣。
+     */
+    CarbonCreditToken tokenFor(LiquidityPool pool) {
+        return tokenFor(pool.getExchangeId());
+    }
+
+    CarbonCreditToken tokenFor(Long exchangeId) {
+        return carbonExchangeRepository.findById(exchangeId)
+            .map(CarbonExchange::getToken)
+            .or(carbonCreditTokenRepository::findFirstByOrderByIdAsc)
+            .orElseThrow(() -> new RuntimeException("找不到 CCT token"));
+    }
+
+    /**
+     * 交易紀錄中代表池子一方的地址。
+     */
+    static String poolAddress(LiquidityPool pool) {
+        return "pool:" + pool.getExchangeId();
+    }
+
+    public BigDecimal calculateExchangeRate(Long exchangeId) {
+        return getPoolSnapshot(exchangeId).getExchangeRate();
     }
 
     public BigDecimal getBaseBalance(String address) {
-        System.out.println("DEBUG: Getting USDC balance for address: " + address);
-        System.out.println("DEBUG: Querying usdc_balances table directly");
-        
         USDCBalance balance = usdcBalanceRepository.findByAddress(address)
                 .orElseThrow(() -> new IllegalStateException("USDC balance not found for address: " + address));
-        
-        System.out.println("DEBUG: Found balance: " + balance.getBalance());
         return balance.getBalance();
     }
 
-    public LiquidityInfo getLiquidityInfo() {
+    public LiquidityInfo getLiquidityInfo(Long exchangeId) {
         //logger.info("開始獲取流動性池信息");
         try {
-            LiquidityPool pool = getLiquidityPool();
+            PoolSnapshot snapshot = getPoolSnapshot(exchangeId);
             // logger.info("獲取到的流動性池信息: id={}, cctReserves={}, usdcReserves={}, totalShares={}", 
             //     pool.getId(), pool.getCctReserves(), pool.getUsdcReserves(), pool.getTotalShares());
             
-            LiquidityInfo info = new LiquidityInfo();
-            info.setCctReserves(pool.getCctReserves());
-            info.setUsdcReserves(pool.getUsdcReserves());
-            info.setExchangeRate(pool.calculateExchangeRate());
-            info.setTotalShares(pool.getTotalShares());
+            LiquidityInfo info = toLiquidityInfo(snapshot);
             
             //logger.info("設置後的流動性信息: cctReserves={}, usdcReserves={}, exchangeRate={}, totalShares={}", 
             //    info.getCctReserves(), info.getUsdcReserves(), info.getExchangeRate(), info.getTotalShares());
@@ -167,132 +442,433 @@ public class CarbonExchangeService {
         }
     }
 
-    public void removeLiquidity(String userId, BigDecimal amountUsdc, BigDecimal maxSlippagePercentage) {
-        LiquidityPool pool = liquidityPoolRepository.findAll().get(0);
-        CarbonExchange exchange = carbonExchangeRepository.findById(pool.getId())
-            .orElseThrow(() -> new RuntimeException("Exchange not found"));
-        LiquidityProvider provider = liquidityProviderRepository.findById(new LiquidityProviderId(exchange.getId(), userId))
-                .orElseThrow(() -> new RuntimeException("No liquidity provided by this user"));
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "remove_liquidity"}, histogram = true)
+    public void removeLiquidity(Long exchangeId, String userId, BigDecimal amountUsdc) {
+        withPool(exchangeId, pool -> {
+            LiquidityProvider provider = findProvider(pool, userId);
+            if (pool.getUsdcReserves().signum() <= 0) {
+                throw new RuntimeException("流動性池尚未創建");
+            }
 
-        BigDecimal sharesToRemove = amountUsdc.multiply(provider.getShares())
-                .divide(pool.getUsdcReserves(), 18, RoundingMode.DOWN);
+            // 贖回 amountUsdc 需銷毀的份額，向上取整使池子不因捨入而少收份額
+            BigDecimal sharesToRemove = PoolMath.mulDiv(amountUsdc, pool.getTotalShares(),
+                    pool.getUsdcReserves(), RoundingMode.UP);
 
-        if (sharesToRemove.compareTo(provider.getShares()) > 0) {
-            throw new RuntimeException("Insufficient shares");
-        }
+            if (sharesToRemove.compareTo(provider.getShares()) > 0) {
+                throw new RuntimeException("Insufficient shares");
+            }
 
-        BigDecimal carbonAmount = sharesToRemove.multiply(pool.getCctReserves())
-                .divide(pool.getTotalShares(), 18, RoundingMode.DOWN);
-        BigDecimal usdcAmount = sharesToRemove.multiply(pool.getUsdcReserves())
-                .divide(pool.getTotalShares(), 18, RoundingMode.DOWN);
+            burnShares(pool, provider, sharesToRemove);
+            return null;
+        });
+    }
 
-        pool.setCctReserves(pool.getCctReserves().subtract(carbonAmount));
-        pool.setUsdcReserves(pool.getUsdcReserves().subtract(usdcAmount));
-        pool.setTotalShares(pool.getTotalShares().subtract(sharesToRemove));
-        provider.setShares(provider.getShares().subtract(sharesToRemove));
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "remove_all_liquidity"}, histogram = true)
+    public void removeAllLiquidity(Long exchangeId, String userId) {
+        withPool(exchangeId, pool -> {
+            LiquidityProvider provider = findProvider(pool, userId);
+            burnShares(pool, provider, provider.getShares());
+            return null;
+        });
+    }
 
-        liquidityPoolRepository.save(pool);
-        liquidityProviderRepository.save(provider);
+    /**
+     * 把地址在池子中累計的交換費用支付給地址，回傳支付的 USDC 與 CCT 數量。
+     */
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "claim_fees"}, histogram = true)
+    public Map<String, BigDecimal> claimFees(Long exchangeId, String userId) {
+        return withPool(exchangeId, pool -> {
+            LiquidityProvider provider = findProvider(pool, userId);
+            provider.accrueFees(pool);
+            BigDecimal usdcFees = provider.getUsdcFeesOwed();
+            BigDecimal cctFees = provider.getCctFeesOwed();
+            provider.setUsdcFeesOwed(BigDecimal.ZERO);
+            provider.setCctFeesOwed(BigDecimal.ZERO);
+            pool.setUsdcFeeReserves(pool.getUsdcFeeReserves().subtract(usdcFees));
+            pool.setCctFeeReserves(pool.getCctFeeReserves().subtract(cctFees));
+            if (provider.isEmpty()) {
+                liquidityProviderRepository.delete(provider);
+            } else {
+                liquidityProviderRepository.save(provider);
+            }
+
+            if (usdcFees.signum() > 0) {
+                usdcService.credit(userId, usdcFees);
+            }
+            if (cctFees.signum() > 0) {
+                carbonCreditService.credit(tokenFor(pool).getId(), userId, cctFees);
+            }
+            marketChangeFeed.balanceChanged(userId);
+            ledgerEventLog.record(LedgerEvent.providerShares(provider));
+            transactionJournal.record("CLAIM_FEES", poolAddress(pool), userId, "USDC", usdcFees, cctFees);
+
+            Map<String, BigDecimal> claimed = new TreeMap<>();
+            claimed.put("usdc", usdcFees);
+            claimed.put("cct", cctFees);
+            return claimed;
+        });
     }
 
-    public void removeAllLiquidity(String userId, BigDecimal maxSlippagePercentage) {
-        LiquidityPool pool = liquidityPoolRepository.findAll().get(0);
-        CarbonExchange exchange = carbonExchangeRepository.findById(pool.getId())
-            .orElseThrow(() -> new RuntimeException("Exchange not found"));
-        LiquidityProvider provider = liquidityProviderRepository.findById(new LiquidityProviderId(exchange.getId(), userId))
-                .orElseThrow(() -> new RuntimeException("No liquidity provided by this user"));
+    public void setFeeBps(Long exchangeId, int feeBps) {
+        if (feeBps < 0 || feeBps > LiquidityPool.MAX_FEE_BPS) {
+            throw new IllegalArgumentException("feeBps must be between 0 and " + LiquidityPool.MAX_FEE_BPS);
+        }
+        withPool(exchangeId, pool -> {
+            pool.setFeeBps(feeBps);
+            return null;
+        });
+    }
 
-        BigDecimal carbonAmount = provider.getShares().multiply(pool.getCctReserves())
-                .divide(pool.getTotalShares(), 18, RoundingMode.DOWN);
-        BigDecimal usdcAmount = provider.getShares().multiply(pool.getUsdcReserves())
-                .divide(pool.getTotalShares(), 18, RoundingMode.DOWN);
+    private LiquidityProvider findProvider(LiquidityPool pool, String address) {
+        return liquidityProviderRepository.findById(new LiquidityProviderId(pool.getExchangeId(), address))
+            .orElseThrow(() -> new RuntimeException("No liquidity provided by this user"));
+    }
 
-        pool.setCctReserves(pool.getCctReserves().subtract(carbonAmount));
-        pool.setUsdcReserves(pool.getUsdcReserves().subtract(usdcAmount));
-        pool.setTotalShares(pool.getTotalShares().subtract(provider.getShares()));
-        provider.setShares(BigDecimal.ZERO);
+    /**
+     * 地址在池子中的份額，以主鍵直接讀取；換算的數量以池子最新的快照計算。
+     */
+    public LiquidityPosition getPosition(Long exchangeId, String address) {
+        PoolSnapshot snapshot = getPoolSnapshot(exchangeId);
+        LiquidityProvider provider = liquidityProviderRepository.findById(new LiquidityProviderId(snapshot.getExchangeId(), address))
+            .orElseGet(() -> {
+                LiquidityProvider none = new LiquidityProvider();
+                none.setExchangeId(snapshot.getExchangeId());
+                none.setProviderAddress(address);
+                return none;
+            });
+        return toPosition(snapshot, provider);
+    }
 
-        liquidityPoolRepository.save(pool);
-        liquidityProviderRepository.save(provider);
+    /**
+     * 依地址排序分頁列出池子的流動性提供者；以回應中的 nextCursor 作為 cursor 取得下一頁。
+     */
+    public LiquidityProviderPage listProviders(Long exchangeId, String cursor, int limit) {
+        if (limit <= 0 || limit > MAX_PROVIDER_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PROVIDER_PAGE_SIZE);
+        }
+        PoolSnapshot snapshot = getPoolSnapshot(exchangeId);
+        List<LiquidityProvider> rows = liquidityProviderRepository.findPage(snapshot.getExchangeId(),
+            cursor == null ? "" : cursor, PageRequest.of(0, limit + 1));
+        boolean hasMore = rows.size() > limit;
+        List<LiquidityPosition> items = rows.stream()
+            .limit(limit)
+            .map(p -> toPosition(snapshot, p))
+            .collect(Collectors.toList());
+        return new LiquidityProviderPage(items, hasMore ? items.get(limit - 1).getProviderAddress() : null);
     }
 
-    public void swapCarbonCreditsForBaseCurrency(String trader, BigDecimal amountCarbonCredits, BigDecimal maxExchangeRate) {
-        LiquidityPool pool = liquidityPoolRepository.findAll().get(0);
-        BigDecimal exchangeRate = pool.calculateExchangeRate();
+    private static LiquidityPosition toPosition(PoolSnapshot snapshot, LiquidityProvider provider) {
+        BigDecimal shares = provider.getShares();
+        LiquidityPosition position = new LiquidityPosition();
+        position.setExchangeId(snapshot.getExchangeId());
+        position.setProviderAddress(provider.getProviderAddress());
+        position.setShares(shares);
+        position.setClaimableUsdcFees(provider.claimableUsdcFees(snapshot.getUsdcFeeGrowth()));
+        position.setClaimableCctFees(provider.claimableCctFees(snapshot.getCctFeeGrowth()));
+        if (snapshot.getTotalShares().signum() == 0) {
+            position.setSharePercentage(BigDecimal.ZERO);
+            position.setUsdcAmount(BigDecimal.ZERO);
+            position.setCctAmount(BigDecimal.ZERO);
+            return position;
+        }
+        position.setSharePercentage(PoolMath.mulDiv(shares, BigDecimal.valueOf(100), snapshot.getTotalShares(), RoundingMode.HALF_UP));
+        position.setUsdcAmount(PoolMath.mulDiv(shares, snapshot.getUsdcReserves(), snapshot.getTotalShares(), RoundingMode.DOWN));
+        position.setCctAmount(PoolMath.mulDiv(shares, snapshot.getCctReserves(), snapshot.getTotalShares(), RoundingMode.DOWN));
+        return position;
+    }
+
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "swap_cct_for_usdc"}, histogram = true)
+    public void swapCarbonCreditsForBaseCurrency(Long exchangeId, String trader, BigDecimal amountCarbonCredits, BigDecimal maxExchangeRate) {
+        try {
+            PoolSnapshot current = getPoolSnapshot(exchangeId);
+            if (current.isBatchAuction()) {
+                batchAuction.submit(current.getExchangeId(),
+                    new BatchAuction.Order(BatchAuction.Side.SELL_CARBON, trader, amountCarbonCredits, maxExchangeRate),
+                    this::settleBatch);
+                return;
+            }
+            withPool(current.getExchangeId(), pool -> applySwapCarbonForBase(pool, trader, amountCarbonCredits, maxExchangeRate));
+        } catch (Exception e) {
+            logger.error("交換失敗", e);
+            throw e;
+        }
+    }
+
+    private Void applySwapCarbonForBase(LiquidityPool pool, String trader, BigDecimal amountCarbonCredits, BigDecimal maxExchangeRate) {
+        if (pool.getCctReserves().compareTo(BigDecimal.ZERO) <= 0 || 
+            pool.getUsdcReserves().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new RuntimeException("流動性池尚未創建");
+        }
         
+        BigDecimal exchangeRate = pool.calculateExchangeRate();
         if (exchangeRate.compareTo(maxExchangeRate) > 0) {
             throw new RuntimeException("Exchange rate exceeds maximum allowed");
         }
-
-        BigDecimal usdcAmount = amountCarbonCredits.multiply(exchangeRate);
-        pool.setCctReserves(pool.getCctReserves().add(amountCarbonCredits));
+        
+        // 檢查用戶 CCT 餘額
+        CarbonCreditToken cct = tokenFor(pool);
+        if (carbonCreditService.balanceOf(cct.getId(), trader).compareTo(amountCarbonCredits) < 0) {
+            throw new RuntimeException("CCT 餘額不足");
+        }
+        usdcBalanceRepository.findBalance(trader)
+            .orElseThrow(() -> new RuntimeException("找不到 USDC 餘額"));
+        
+        // 扣除交換費用後按恆定乘積計算可獲得的 USDC 數量
+        BigDecimal fee = pool.swapFee(amountCarbonCredits);
+        BigDecimal amountIn = amountCarbonCredits.subtract(fee);
+        BigDecimal usdcAmount = PoolMath.amountOut(amountIn, pool.getCctReserves(), pool.getUsdcReserves());
+        
+        carbonCreditService.debit(cct.getId(), trader, amountCarbonCredits);
+        usdcService.credit(trader, usdcAmount);
+        marketChangeFeed.balanceChanged(trader);
+        transactionJournal.record("SWAP", trader, poolAddress(pool), "CCT", amountCarbonCredits, usdcAmount);
+        candleAggregator.recordSwap(pool.getExchangeId(), usdcAmount, amountCarbonCredits);
+        
+        pool.setCctReserves(pool.getCctReserves().add(amountIn));
         pool.setUsdcReserves(pool.getUsdcReserves().subtract(usdcAmount));
-
-        liquidityPoolRepository.save(pool);
+        pool.accrueCctFee(fee);
+        ledgerLogger.swap(pool, trader, "CCT", amountCarbonCredits, usdcAmount, fee);
+        return null;
     }
 
-    @Transactional
-    public void swapBaseCurrencyForCarbonCredits(String trader, BigDecimal amountBaseCurrency, BigDecimal maxExchangeRate) {
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "swap_usdc_for_cct"}, histogram = true)
+    public void swapBaseCurrencyForCarbonCredits(Long exchangeId, String trader, BigDecimal amountBaseCurrency, BigDecimal maxExchangeRate) {
         try {
-            logger.info("開始交換 USDC 換 CCT - trader: {}, amount: {}, maxRate: {}", 
-                trader, amountBaseCurrency, maxExchangeRate);
-            
-            // 獲取流動性池
-            LiquidityPool pool = getLiquidityPool();
-            if (pool.getCctReserves().compareTo(BigDecimal.ZERO) <= 0 || 
-                pool.getUsdcReserves().compareTo(BigDecimal.ZERO) <= 0) {
-                throw new RuntimeException("流動性池尚未創建");
+            PoolSnapshot current = getPoolSnapshot(exchangeId);
+            if (current.isBatchAuction()) {
+                batchAuction.submit(current.getExchangeId(),
+                    new BatchAuction.Order(BatchAuction.Side.BUY_CARBON, trader, amountBaseCurrency, maxExchangeRate),
+                    this::settleBatch);
+                return;
             }
-            
-            // 檢查用戶 USDC 餘額
-            USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(trader)
-                .orElseThrow(() -> new RuntimeException("找不到 USDC 餘額"));
-            if (usdcBalance.getBalance().compareTo(amountBaseCurrency) < 0) {
-                throw new RuntimeException("USDC 餘額不足");
+            withPool(current.getExchangeId(), pool -> applySwapBaseForCarbon(pool, trader, amountBaseCurrency, maxExchangeRate));
+        } catch (Exception e) {
+            logger.error("交換失敗", e);
+            throw e;
+        }
+    }
+
+    public void setSettlementMode(Long exchangeId, LiquidityPool.SettlementMode mode) {
+        withPool(exchangeId, pool -> {
+            pool.setSettlementMode(mode);
+            return null;
+        });
+    }
+
+    /**
+     * 批次拍賣結算：買賣雙方先互相抵銷，只有淨差額與池子按恆定乘積成交，
+     * 所有訂單以同一清算價成交，池子在整批中只寫入一次。
+     */
+    private void settleBatch(Long exchangeId, List<BatchAuction.Order> orders) {
+        withPool(exchangeId, pool -> applyBatch(pool, orders));
+    }
+
+    private Void applyBatch(LiquidityPool pool, List<BatchAuction.Order> orders) {
+        BigDecimal usdcReserves = pool.getUsdcReserves();
+        BigDecimal cctReserves = pool.getCctReserves();
+        if (cctReserves.compareTo(BigDecimal.ZERO) <= 0 || usdcReserves.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new RuntimeException("流動性池尚未創建");
+        }
+        CarbonCreditToken cct = tokenFor(pool);
+        
+        // 同一交易者可能有多張訂單，按累計數量檢查餘額
+        Map<String, USDCBalance> usdcBalances = new HashMap<>();
+        Map<String, BigDecimal> usdcCommitted = new HashMap<>();
+        Map<String, BigDecimal> cctCommitted = new HashMap<>();
+        for (BatchAuction.Order order : orders) {
+            USDCBalance usdcBalance = usdcBalances.computeIfAbsent(order.getTrader(),
+                trader -> usdcBalanceRepository.findByAddress(trader).orElse(null));
+            if (usdcBalance == null) {
+                order.setRejection(new RuntimeException("找不到 USDC 餘額"));
+                continue;
             }
-            
-            // 計算新的匯率
-            BigDecimal newUsdcReserves = pool.getUsdcReserves().add(amountBaseCurrency);
-            BigDecimal exchangeRate = newUsdcReserves.divide(pool.getCctReserves(), 18, RoundingMode.HALF_UP);
-            logger.info("計算出的匯率: {}", exchangeRate);
-            
-            // 檢查滑點
-            if (exchangeRate.compareTo(maxExchangeRate) > 0) {
-                throw new RuntimeException("滑點過大");
+            if (order.getSide() == BatchAuction.Side.BUY_CARBON) {
+                BigDecimal committed = usdcCommitted.getOrDefault(order.getTrader(), BigDecimal.ZERO).add(order.getAmountIn());
+                if (usdcBalance.getBalance().compareTo(committed) < 0) {
+                    order.setRejection(new RuntimeException("USDC 餘額不足"));
+                    continue;
+                }
+                usdcCommitted.put(order.getTrader(), committed);
+            } else {
+                BigDecimal committed = cctCommitted.getOrDefault(order.getTrader(), BigDecimal.ZERO).add(order.getAmountIn());
+                if (carbonCreditService.balanceOf(cct.getId(), order.getTrader()).compareTo(committed) < 0) {
+                    order.setRejection(new RuntimeException("CCT 餘額不足"));
+                    continue;
+                }
+                cctCommitted.put(order.getTrader(), committed);
             }
-            
-            // 計算可獲得的 CCT 數量
-            BigDecimal amountTokens = amountBaseCurrency.multiply(pool.getCctReserves())
-                .divide(pool.getUsdcReserves().add(amountBaseCurrency), 18, RoundingMode.DOWN);
-            logger.info("可獲得的 CCT 數量: {}", amountTokens);
-            
-            // 檢查流動性池是否有足夠的 CCT
-            if (amountTokens.compareTo(pool.getCctReserves()) > 0) {
-                throw new RuntimeException("流動性池 CCT 不足");
+        }
+        
+        // 清算價以分數 priceNum / priceDen（USDC/CCT）表示；超出限價的訂單剔除後重新計算
+        BigDecimal priceNum;
+        BigDecimal priceDen;
+        BigDecimal clearingPrice;
+        while (true) {
+            BigDecimal totalUsdcIn = BigDecimal.ZERO;
+            BigDecimal totalCctIn = BigDecimal.ZERO;
+            for (BatchAuction.Order order : orders) {
+                if (!order.isOpen()) {
+                    continue;
+                }
+                BigDecimal amountIn = order.getAmountIn().subtract(pool.swapFee(order.getAmountIn()));
+                if (order.getSide() == BatchAuction.Side.BUY_CARBON) {
+                    totalUsdcIn = totalUsdcIn.add(amountIn);
+                } else {
+                    totalCctIn = totalCctIn.add(amountIn);
+                }
             }
+            // 淨額為正時池子收入 USDC：x = (U * Rc - C * Ru) / (Rc + C)，清算價 (Ru + x) / Rc
+            // 淨額為負時池子收入 CCT：y = (C * Ru - U * Rc) / (Ru + U)，清算價 Ru / (Rc + y)
+            BigDecimal imbalance = totalUsdcIn.multiply(cctReserves).subtract(totalCctIn.multiply(usdcReserves));
+            if (imbalance.signum() > 0) {
+                BigDecimal netUsdcIn = imbalance.divide(cctReserves.add(totalCctIn), 18, RoundingMode.DOWN);
+                priceNum = usdcReserves.add(netUsdcIn);
+                priceDen = cctReserves;
+            } else if (imbalance.signum() < 0) {
+                BigDecimal netCctIn = imbalance.negate().divide(usdcReserves.add(totalUsdcIn), 18, RoundingMode.DOWN);
+                priceNum = usdcReserves;
+                priceDen = cctReserves.add(netCctIn);
+            } else {
+                priceNum = usdcReserves;
+                priceDen = cctReserves;
+            }
+            clearingPrice = PoolMath.divide(priceNum, priceDen, RoundingMode.HALF_UP);
             
-            // 更新用戶 USDC 餘額
-            usdcBalance.setBalance(usdcBalance.getBalance().subtract(amountBaseCurrency));
-            usdcBalanceRepository.save(usdcBalance);
-            
-            // 更新用戶 CCT 餘額
-            CarbonCreditToken cct = carbonCreditTokenRepository.findAll().stream()
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("找不到 CCT token"));
-            cct.setBalance(trader, cct.getBalance(trader).add(amountTokens));
-            carbonCreditTokenRepository.save(cct);
-            
-            // 更新流動性池
-            pool.setUsdcReserves(newUsdcReserves);
-            pool.setCctReserves(pool.getCctReserves().subtract(amountTokens));
-            liquidityPoolRepository.save(pool);
-            
-            logger.info("交換完成 - 新的 USDC 儲備: {}, 新的 CCT 儲備: {}, 用戶 CCT 餘額: {}", 
-                pool.getUsdcReserves(), pool.getCctReserves(), cct.getBalance(trader));
-        } catch (Exception e) {
-            logger.error("交換失敗", e);
-            throw e;
+            boolean rejected = false;
+            for (BatchAuction.Order order : orders) {
+                if (order.isOpen() && clearingPrice.compareTo(order.getMaxExchangeRate()) > 0) {
+                    order.setRejection(new RuntimeException("滑點過大"));
+                    rejected = true;
+                }
+            }
+            if (!rejected) {
+                break;
+            }
+        }
+        
+        // 按清算價以扣除費用後的數量成交，池子儲備由守恆計算，捨入誤差留在池中
+        BigDecimal newUsdcReserves = usdcReserves;
+        BigDecimal newCctReserves = cctReserves;
+        BigDecimal usdcFees = BigDecimal.ZERO;
+        BigDecimal cctFees = BigDecimal.ZERO;
+        // 每個交易者的 USDC 與 CCT 淨變動，按地址排序後逐列寫入
+        Map<String, BigDecimal> usdcDeltas = new TreeMap<>();
+        Map<String, BigDecimal> cctDeltas = new TreeMap<>();
+        for (BatchAuction.Order order : orders) {
+            if (!order.isOpen()) {
+                continue;
+            }
+            BigDecimal fee = pool.swapFee(order.getAmountIn());
+            BigDecimal amountIn = order.getAmountIn().subtract(fee);
+            if (order.getSide() == BatchAuction.Side.BUY_CARBON) {
+                BigDecimal amountTokens = PoolMath.mulDiv(amountIn, priceDen, priceNum, RoundingMode.DOWN);
+                usdcDeltas.merge(order.getTrader(), order.getAmountIn().negate(), BigDecimal::add);
+                cctDeltas.merge(order.getTrader(), amountTokens, BigDecimal::add);
+                newUsdcReserves = newUsdcReserves.add(amountIn);
+                usdcFees = usdcFees.add(fee);
+                newCctReserves = newCctReserves.subtract(amountTokens);
+                order.setAmountOut(amountTokens);
+            } else {
+                BigDecimal usdcAmount = PoolMath.mulDiv(amountIn, priceNum, priceDen, RoundingMode.DOWN);
+                cctDeltas.merge(order.getTrader(), order.getAmountIn().negate(), BigDecimal::add);
+                usdcDeltas.merge(order.getTrader(), usdcAmount, BigDecimal::add);
+                newCctReserves = newCctReserves.add(amountIn);
+                cctFees = cctFees.add(fee);
+                newUsdcReserves = newUsdcReserves.subtract(usdcAmount);
+                order.setAmountOut(usdcAmount);
+            }
+        }
+        if (newCctReserves.signum() <= 0 || newUsdcReserves.signum() <= 0) {
+            throw new RuntimeException("流動性池 CCT 不足");
         }
+        
+        usdcDeltas.forEach((trader, delta) -> {
+            if (delta.signum() > 0) {
+                usdcService.credit(trader, delta);
+            } else if (delta.signum() < 0) {
+                usdcService.debit(trader, delta.negate());
+            }
+        });
+        cctDeltas.forEach((trader, delta) -> {
+            if (delta.signum() > 0) {
+                carbonCreditService.credit(cct.getId(), trader, delta);
+            } else if (delta.signum() < 0) {
+                carbonCreditService.debit(cct.getId(), trader, delta.negate());
+            }
+        });
+        marketChangeFeed.balanceChanged(orders.stream()
+            .filter(BatchAuction.Order::isOpen)
+            .map(BatchAuction.Order::getTrader)
+            .distinct()
+            .toArray(String[]::new));
+        for (BatchAuction.Order order : orders) {
+            if (order.isOpen()) {
+                transactionJournal.record("SWAP", order.getTrader(), poolAddress(pool),
+                    order.getSide() == BatchAuction.Side.BUY_CARBON ? "USDC" : "CCT",
+                    order.getAmountIn(), order.getAmountOut());
+                if (order.getSide() == BatchAuction.Side.BUY_CARBON) {
+                    candleAggregator.recordSwap(pool.getExchangeId(), order.getAmountIn(), order.getAmountOut());
+                } else {
+                    candleAggregator.recordSwap(pool.getExchangeId(), order.getAmountOut(), order.getAmountIn());
+                }
+            }
+        }
+        pool.setUsdcReserves(newUsdcReserves);
+        pool.setCctReserves(newCctReserves);
+        pool.accrueUsdcFee(usdcFees);
+        pool.accrueCctFee(cctFees);
+        ledgerLogger.batchSettled(pool, orders, clearingPrice);
+        return null;
+    }
+
+    private Void applySwapBaseForCarbon(LiquidityPool pool, String trader, BigDecimal amountBaseCurrency, BigDecimal maxExchangeRate) {
+        if (pool.getCctReserves().compareTo(BigDecimal.ZERO) <= 0 || 
+            pool.getUsdcReserves().compareTo(BigDecimal.ZERO) <= 0) {
+            throw new RuntimeException("流動性池尚未創建");
+        }
+        
+        // 檢查用戶 USDC 餘額
+        USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(trader)
+            .orElseThrow(() -> new RuntimeException("找不到 USDC 餘額"));
+        if (usdcBalance.getBalance().compareTo(amountBaseCurrency) < 0) {
+            throw new RuntimeException("USDC 餘額不足");
+        }
+        
+        // 計算新的匯率；交換費用不計入儲備
+        BigDecimal fee = pool.swapFee(amountBaseCurrency);
+        BigDecimal amountIn = amountBaseCurrency.subtract(fee);
+        BigDecimal newUsdcReserves = pool.getUsdcReserves().add(amountIn);
+        BigDecimal exchangeRate = PoolMath.divide(newUsdcReserves, pool.getCctReserves(), RoundingMode.HALF_UP);
+        
+        // 檢查滑點
+        if (exchangeRate.compareTo(maxExchangeRate) > 0) {
+            throw new RuntimeException("滑點過大");
+        }
+        
+        // 計算可獲得的 CCT 數量
+        BigDecimal amountTokens = PoolMath.amountOut(amountIn, pool.getUsdcReserves(), pool.getCctReserves());
+        
+        // 檢查流動性池是否有足夠的 CCT
+        if (amountTokens.compareTo(pool.getCctReserves()) > 0) {
+            throw new RuntimeException("流動性池 CCT 不足");
+        }
+        
+        // 更新用戶 USDC 餘額
+        usdcService.debit(trader, amountBaseCurrency);
+        
+        // 更新用戶 CCT 餘額
+        CarbonCreditToken cct = tokenFor(pool);
+        carbonCreditService.credit(cct.getId(), trader, amountTokens);
+        marketChangeFeed.balanceChanged(trader);
+        transactionJournal.record("SWAP", trader, poolAddress(pool), "USDC", amountBaseCurrency, amountTokens);
+        candleAggregator.recordSwap(pool.getExchangeId(), amountBaseCurrency, amountTokens);
+        
+        // 更新流動性池
+        pool.setUsdcReserves(newUsdcReserves);
+        pool.setCctReserves(pool.getCctReserves().subtract(amountTokens));
+        pool.accrueUsdcFee(fee);
+        ledgerLogger.swap(pool, trader, "USDC", amountBaseCurrency, amountTokens, fee);
+        return null;
     }
 
     public void setBaseBalance(String address, BigDecimal newBalance) {
@@ -300,30 +876,29 @@ public class CarbonExchangeService {
                 .orElseThrow(() -> new IllegalStateException("USDC balance not found for address: " + address));
         balance.setBalance(newBalance);
         usdcBalanceRepository.save(balance);
+        ledgerEventLog.record(LedgerEvent.usdcSet(address, newBalance));
+        marketChangeFeed.balanceChanged(address);
     }
 
     @Transactional
     public void getAsset(String address) {
         try {
-            // 獲取用戶當前的 USDC 餘額
-            USDCBalance usdcBalance = usdcBalanceRepository.findByAddress(address)
+            // 確認用戶已有 USDC 餘額
+            usdcBalanceRepository.findBalance(address)
                 .orElseThrow(() -> new RuntimeException("找不到 USDC 餘額"));
             
             // 增加 1000 USDC
-            usdcBalance.setBalance(usdcBalance.getBalance().add(BigDecimal.valueOf(1000)));
-            usdcBalanceRepository.save(usdcBalance);
+            usdcService.credit(address, BigDecimal.valueOf(1000));
             
             // 獲取 CCT token
-            CarbonCreditToken cct = carbonCreditTokenRepository.findAll().stream()
-                .findFirst()
+            CarbonCreditToken cct = carbonCreditTokenRepository.findFirstByOrderByIdAsc()
                 .orElseThrow(() -> new RuntimeException("找不到 CCT token"));
             
             // 增加 1000 CCT
-            cct.setBalance(address, cct.getBalance(address).add(BigDecimal.valueOf(1000)));
-            carbonCreditTokenRepository.save(cct);
-            
-            logger.info("成功為用戶 {} 增加資產 - USDC: {}, CCT: {}", 
-                address, usdcBalance.getBalance(), cct.getBalance(address));
+            carbonCreditService.credit(cct.getId(), address, BigDecimal.valueOf(1000));
+            marketChangeFeed.balanceChanged(address);
+            transactionJournal.record("MINT", "faucet", address, "USDC", BigDecimal.valueOf(1000), BigDecimal.valueOf(1000));
+            ledgerLogger.faucet(address, BigDecimal.valueOf(1000), BigDecimal.valueOf(1000));
         } catch (Exception e) {
             logger.error("獲取資產失敗", e);
             throw e;
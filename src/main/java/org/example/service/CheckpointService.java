@@ -0,0 +1,434 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LiquidityPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 整個交易所帳本狀態的二進位檢查點：代幣（含授權額度）、交易所、流動性池、提供者份額、CCT 與 USDC 餘額。
+ * 匯出時在一致性快照的唯讀交易中逐列串流讀取並寫出，不把資料表載入記憶體；啟用池子引擎時先暫停引擎並寫回
+ * 延後的池子狀態，再建立快照，池子與餘額來自同一個時間點。
+ * 匯入時以 JDBC 批次寫入，不經過 Hibernate 實體。同一份檔案也可作為大型測試資料。
+ * 設定 exchange.checkpoint.load-on-startup 時在所有元件建立後、開始接受請求前載入。
+ * <p>
+ * 格式：檔頭 [MAGIC][版本][事件日誌序號][建立時間]，接著依固定順序的各區段，
+ * 每列以 1 開頭、區段以 0 結束，最後是前面所有位元組的 CRC32。
+ */
+@Service
+@RequiredArgsConstructor
+public class CheckpointService implements SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointService.class);
+
+    private static final int MAGIC = 0x43584350; // "CXCP"
+    // 版本 2 在池子與提供者區段加入交換費用欄位；仍可載入版本 1 的檔案
+    private static final int FORMAT_VERSION = 2;
+    private static final int FETCH_SIZE = 1000;
+    private static final int BATCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final LedgerEventLog ledgerEventLog;
+    private final PoolEngine poolEngine;
+    private final PoolRegistry poolRegistry;
+    private final PoolSnapshotStore poolSnapshotStore;
+
+    @Value("${exchange.checkpoint.directory:data/checkpoints}")
+    private String directory;
+
+    @Value("${exchange.checkpoint.load-on-startup:}")
+    private String loadOnStartup;
+
+    @Value("${exchange.event-log.replay-on-startup:false}")
+    private boolean replayOnStartup;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (loadOnStartup.isEmpty()) {
+            return;
+        }
+        if (replayOnStartup) {
+            // 兩者都會整批覆寫帳本資料表，結果取決於執行順序
+            throw new IllegalStateException(
+                "exchange.checkpoint.load-on-startup cannot be combined with exchange.event-log.replay-on-startup");
+        }
+        load(Paths.get(loadOnStartup));
+    }
+
+    /**
+     * 在檢查點目錄寫出一份新的檢查點，回傳檔案位置與各區段筆數。
+     * 先寫入暫存檔再改名，中途失敗不會留下不完整的檢查點。
+     */
+    public Map<String, Object> export() {
+        Path dir = Paths.get(directory);
+        Path target = dir.resolve("checkpoint-" +
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")) + ".bin");
+        Path temp = dir.resolve(target.getFileName() + ".tmp");
+        long started = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        try {
+            Files.createDirectories(dir);
+            try (CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE), new CRC32());
+                 DataOutputStream out = new DataOutputStream(checked)) {
+                snapshotTemplate().executeWithoutResult(status -> {
+                    long sequence = pinSnapshot();
+                    try {
+                        out.writeInt(MAGIC);
+                        out.writeInt(FORMAT_VERSION);
+                        out.writeLong(sequence);
+                        out.writeLong(System.currentTimeMillis());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    result.put("eventLogSequence", sequence);
+                    writeSections(out, result);
+                });
+                out.flush();
+                out.writeLong(checked.getChecksum().getValue());
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write checkpoint", e);
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                logger.warn("刪除檢查點暫存檔失敗: {}", temp, e);
+            }
+        }
+        result.put("path", target.toAbsolutePath().toString());
+        logger.info("寫出檢查點 {}，耗時 {} ms，{}", target, (System.nanoTime() - started) / 1_000_000, result);
+        return result;
+    }
+
+    /**
+     * 以檢查點取代目前的帳本資料表，在單一交易中完成；檔案校驗失敗時整個交易回滾。
+     * 應在開始接受請求前呼叫；載入後清除池子的快取與引擎中的狀態，之後從新的資料表載入。
+     * 事件日誌的序號推進到檢查點記錄的序號之後；日誌中已有檢查點之後的事件時記錄警告，這些事件不在載入的狀態中。
+     */
+    public Map<String, Object> load(Path path) {
+        long started = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.executeWithoutResult(status -> {
+            try (CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE), new CRC32());
+                 DataInputStream in = new DataInputStream(checked)) {
+                if (in.readInt() != MAGIC) {
+                    throw new IllegalArgumentException("Not a checkpoint file: " + path);
+                }
+                int version = in.readInt();
+                if (version < 1 || version > FORMAT_VERSION) {
+                    throw new IllegalArgumentException("Unsupported checkpoint version " + version + ": " + path);
+                }
+                result.put("eventLogSequence", in.readLong());
+                in.readLong();
+                readSections(in, version, result);
+                long expected = checked.getChecksum().getValue();
+                if (in.readLong() != expected) {
+                    throw new IllegalArgumentException("Checkpoint checksum mismatch: " + path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read checkpoint " + path, e);
+            }
+        });
+        poolEngine.reset();
+        poolRegistry.reset();
+        poolSnapshotStore.reset();
+        long sequence = (Long) result.get("eventLogSequence");
+        if (ledgerEventLog.isEnabled()) {
+            if (ledgerEventLog.currentSequence() > sequence) {
+                logger.warn("事件日誌的最後序號 {} 在檢查點序號 {} 之後，之後的事件不包含在載入的狀態中",
+                    ledgerEventLog.currentSequence(), sequence);
+            }
+            ledgerEventLog.advanceTo(sequence);
+        }
+        logger.info("載入檢查點 {}，耗時 {} ms，{}", path, (System.nanoTime() - started) / 1_000_000, result);
+        return result;
+    }
+
+    /**
+     * 在目前的快照交易中執行第一個讀取以建立快照，回傳此時的事件日誌序號。
+     * 啟用引擎時在引擎暫停、延後的池子狀態寫回後才建立，快照中的池子與餘額一致。
+     */
+    private long pinSnapshot() {
+        long[] sequence = new long[1];
+        Runnable pin = () -> {
+            jdbcTemplate.queryForObject("select count(*) from liquidity_pools", Long.class);
+            sequence[0] = ledgerEventLog.currentSequence();
+        };
+        if (poolEngine.isEnabled()) {
+            poolEngine.quiesce(pin);
+        } else {
+            pin.run();
+        }
+        return sequence[0];
+    }
+
+    // 唯讀、可重複讀的交易：所有區段讀自同一個一致性快照
+    private TransactionTemplate snapshotTemplate() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        template.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return template;
+    }
+
+    private void writeSections(DataOutputStream out, Map<String, Object> counts) {
+        JdbcTemplate jdbc = new JdbcTemplate(jdbcTemplate.getDataSource());
+        jdbc.setFetchSize(FETCH_SIZE);
+        section(jdbc, out, counts, "tokens",
+            "select id, name, symbol, admin_address, minting_enabled, total_supply from carbon_credit_tokens order by id",
+            rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeUTF(rs.getString(2));
+                out.writeUTF(rs.getString(3));
+                out.writeUTF(rs.getString(4));
+                out.writeBoolean(rs.getBoolean(5));
+                writeDecimal(out, rs.getBigDecimal(6));
+            });
+        section(jdbc, out, counts, "allowances",
+            "select token_id, owner_address, amount from token_allowances",
+            rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeUTF(rs.getString(2));
+                writeDecimal(out, rs.getBigDecimal(3));
+            });
+        section(jdbc, out, counts, "exchanges",
+            "select id, token_id from carbon_exchanges order by id",
+            rs -> {
+                out.writeLong(rs.getLong(1));
+                long tokenId = rs.getLong(2);
+                out.writeLong(rs.wasNull() ? 0 : tokenId);
+            });
+        section(jdbc, out, counts, "pools",
+            "select id, exchange_id, total_base_reserves, total_carbon_reserves, total_shares, " +
+                "exchange_rate_multiplier, k, settlement_mode, fee_bps, usdc_fee_growth, cct_fee_growth, " +
+                "usdc_fee_reserves, cct_fee_reserves from liquidity_pools order by id",
+            rs -> {
+                LiquidityPool pool = new LiquidityPool();
+                pool.setId(rs.getLong(1));
+                pool.setExchangeId(rs.getLong(2));
+                pool.setUsdcReserves(rs.getBigDecimal(3));
+                pool.setCctReserves(rs.getBigDecimal(4));
+                pool.setTotalShares(rs.getBigDecimal(5));
+                pool.setExchangeRateMultiplier(rs.getBigDecimal(6));
+                pool.setK(rs.getBigDecimal(7));
+                String mode = rs.getString(8);
+                pool.setSettlementMode(mode == null ? LiquidityPool.SettlementMode.CONTINUOUS
+                    : LiquidityPool.SettlementMode.valueOf(mode));
+                pool.setFeeBps(rs.getInt(9));
+                pool.setUsdcFeeGrowth(rs.getBigDecimal(10));
+                pool.setCctFeeGrowth(rs.getBigDecimal(11));
+                pool.setUsdcFeeReserves(rs.getBigDecimal(12));
+                pool.setCctFeeReserves(rs.getBigDecimal(13));
+                writePool(out, pool);
+            });
+        section(jdbc, out, counts, "providers",
+            "select exchange_id, provider_address, pool_id, shares, usdc_fee_growth_last, cct_fee_growth_last, " +
+                "usdc_fees_owed, cct_fees_owed from liquidity_providers",
+            rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeUTF(rs.getString(2));
+                out.writeLong(rs.getLong(3));
+                for (int column = 4; column <= 8; column++) {
+                    writeDecimal(out, rs.getBigDecimal(column));
+                }
+            });
+        section(jdbc, out, counts, "tokenBalances",
+            "select token_id, address, balance from token_balances",
+            rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeUTF(rs.getString(2));
+                writeDecimal(out, rs.getBigDecimal(3));
+            });
+        section(jdbc, out, counts, "usdcBalances",
+            "select address, balance from usdc_balances",
+            rs -> {
+                out.writeUTF(rs.getString(1));
+                writeDecimal(out, rs.getBigDecimal(2));
+            });
+    }
+
+    private void readSections(DataInputStream in, int version, Map<String, Object> counts) throws IOException {
+        // 依外鍵反向順序清空
+        for (String table : new String[]{"token_allowances", "liquidity_providers", "liquidity_pools",
+                "carbon_exchanges", "token_balances", "usdc_balances", "carbon_credit_tokens"}) {
+            jdbcTemplate.update("delete from " + table);
+        }
+        loadSection(in, counts, "tokens",
+            "insert into carbon_credit_tokens (id, name, symbol, admin_address, minting_enabled, total_supply) values (?, ?, ?, ?, ?, ?)",
+            () -> new Object[]{in.readLong(), in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean(), readDecimal(in)});
+        loadSection(in, counts, "allowances",
+            "insert into token_allowances (token_id, owner_address, amount) values (?, ?, ?)",
+            () -> new Object[]{in.readLong(), in.readUTF(), readDecimal(in)});
+        loadSection(in, counts, "exchanges",
+            "insert into carbon_exchanges (id, token_id, carbon_fee_reserves, base_fee_reserves) values (?, ?, 0, 0)",
+            () -> {
+                long id = in.readLong();
+                long tokenId = in.readLong();
+                return new Object[]{id, tokenId == 0 ? null : tokenId};
+            });
+        loadSection(in, counts, "pools",
+            "insert into liquidity_pools (id, exchange_id, total_base_reserves, total_carbon_reserves, total_shares, " +
+                "exchange_rate_multiplier, k, settlement_mode, fee_bps, usdc_fee_growth, cct_fee_growth, " +
+                "usdc_fee_reserves, cct_fee_reserves) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+            () -> {
+                LiquidityPool pool = readPool(in, version);
+                return new Object[]{pool.getId(), pool.getExchangeId(), pool.getUsdcReserves(), pool.getCctReserves(),
+                    pool.getTotalShares(), pool.getExchangeRateMultiplier(), pool.getK(), pool.getSettlementMode().name(),
+                    pool.getFeeBps(), pool.getUsdcFeeGrowth(), pool.getCctFeeGrowth(),
+                    pool.getUsdcFeeReserves(), pool.getCctFeeReserves()};
+            });
+        loadSection(in, counts, "providers",
+            "insert into liquidity_providers (exchange_id, provider_address, pool_id, shares, usdc_fee_growth_last, " +
+                "cct_fee_growth_last, usdc_fees_owed, cct_fees_owed) values (?, ?, ?, ?, ?, ?, ?, ?)",
+            () -> {
+                Object[] row = {in.readLong(), in.readUTF(), in.readLong(), readDecimal(in),
+                    BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+                if (version >= 2) {
+                    for (int column = 4; column < row.length; column++) {
+                        row[column] = readDecimal(in);
+                    }
+                }
+                return row;
+            });
+        loadSection(in, counts, "tokenBalances",
+            "insert into token_balances (token_id, address, balance) values (?, ?, ?)",
+            () -> new Object[]{in.readLong(), in.readUTF(), readDecimal(in)});
+        loadSection(in, counts, "usdcBalances",
+            "insert into usdc_balances (address, balance) values (?, ?)",
+            () -> new Object[]{in.readUTF(), readDecimal(in)});
+        IdentityColumns.restartAfterExplicitIds(jdbcTemplate, "carbon_credit_tokens", "carbon_exchanges", "liquidity_pools");
+    }
+
+    private static void section(JdbcTemplate jdbc, DataOutputStream out, Map<String, Object> counts,
+                                String name, String sql, RowWriter writer) {
+        long[] count = new long[1];
+        jdbc.query(sql, rs -> {
+            try {
+                out.writeByte(1);
+                writer.write(rs);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count[0]++;
+        });
+        try {
+            out.writeByte(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        counts.put(name, count[0]);
+    }
+
+    private void loadSection(DataInputStream in, Map<String, Object> counts, String name, String sql,
+                             RowReader reader) throws IOException {
+        long count = 0;
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        while (in.readByte() == 1) {
+            batch.add(reader.read());
+            count++;
+            if (batch.size() == BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+        counts.put(name, count);
+    }
+
+    private static void writePool(DataOutputStream out, LiquidityPool pool) throws IOException {
+        out.writeLong(pool.getId());
+        out.writeLong(pool.getExchangeId());
+        writeDecimal(out, pool.getUsdcReserves());
+        writeDecimal(out, pool.getCctReserves());
+        writeDecimal(out, pool.getTotalShares());
+        writeDecimal(out, pool.getExchangeRateMultiplier());
+        writeDecimal(out, pool.getK());
+        out.writeUTF(pool.getSettlementMode().name());
+        out.writeInt(pool.getFeeBps());
+        writeDecimal(out, pool.getUsdcFeeGrowth());
+        writeDecimal(out, pool.getCctFeeGrowth());
+        writeDecimal(out, pool.getUsdcFeeReserves());
+        writeDecimal(out, pool.getCctFeeReserves());
+    }
+
+    private static LiquidityPool readPool(DataInputStream in, int version) throws IOException {
+        LiquidityPool pool = new LiquidityPool();
+        pool.setId(in.readLong());
+        pool.setExchangeId(in.readLong());
+        pool.setUsdcReserves(readDecimal(in));
+        pool.setCctReserves(readDecimal(in));
+        pool.setTotalShares(readDecimal(in));
+        pool.setExchangeRateMultiplier(readDecimal(in));
+        pool.setK(readDecimal(in));
+        pool.setSettlementMode(LiquidityPool.SettlementMode.valueOf(in.readUTF()));
+        if (version >= 2) {
+            pool.setFeeBps(in.readInt());
+            pool.setUsdcFeeGrowth(readDecimal(in));
+            pool.setCctFeeGrowth(readDecimal(in));
+            pool.setUsdcFeeReserves(readDecimal(in));
+            pool.setCctFeeReserves(readDecimal(in));
+        }
+        return pool;
+    }
+
+    private static void writeDecimal(DataOutputStream out, BigDecimal value) throws IOException {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        out.writeInt(value.scale());
+        out.writeByte(unscaled.length);
+        out.write(unscaled);
+    }
+
+    private static BigDecimal readDecimal(DataInputStream in) throws IOException {
+        int scale = in.readInt();
+        byte[] unscaled = new byte[in.readUnsignedByte()];
+        in.readFully(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(ResultSet rs) throws SQLException, IOException;
+    }
+
+    @FunctionalInterface
+    private interface RowReader {
+        Object[] read() throws IOException;
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+
+/**
+ * 以指定主鍵批次新增資料列後調整自動編號。
+ */
+final class IdentityColumns {
+    private IdentityColumns() {
+    }
+
+    /**
+     * 以指定主鍵新增的列不會推進 H2 的自動編號，需把編號移到目前最大主鍵之後；MySQL 會自動調整。
+     */
+    static void restartAfterExplicitIds(JdbcTemplate jdbc, String... tables) {
+        String product = jdbc.execute((Connection connection) -> connection.getMetaData().getDatabaseProductName());
+        if (!"H2".equals(product)) {
+            return;
+        }
+        for (String table : tables) {
+            Long max = jdbc.queryForObject("select coalesce(max(id), 0) from " + table, Long.class);
+            jdbc.execute("alter table " + table + " alter column id restart with " + (max + 1));
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package org.example.service;
 
 import lombok.RequiredArgsConstructor;
-import org.example.model.CarbonCreditToken;
 import org.example.repository.CarbonCreditTokenRepository;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
@@ -12,6 +11,7 @@ import org.springframework.transaction.annotation.Transactional;
 @RequiredArgsConstructor
 public class InitializationService {
     private final CarbonCreditTokenRepository tokenRepository;
+    private final CarbonCreditService carbonCreditService;
     private static final String ADMIN_ADDRESS = "0x1234567890123456789012345678901234567890"; // 系統管理員地址
 
     @EventListener(ApplicationReadyEvent.class)
@@ -20,12 +20,7 @@ public class InitializationService {
         // 檢查是否已經存在 CCT token
         if (tokenRepository.findAll().isEmpty()) {
             // 創建新的 CCT token
-            CarbonCreditToken token = new CarbonCreditToken(
-                "Carbon Credit Token",
-                "CCT",
-                ADMIN_ADDRESS
-            );
-            tokenRepository.save(token);
+            carbonCreditService.createToken(ADMIN_ADDRESS);
         }
     }
 } 
\ No newline at end of file
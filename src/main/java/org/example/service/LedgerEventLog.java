@@ -0,0 +1,467 @@
+package org.example.service;
+
+import org.example.model.LedgerEvent;
+import org.example.model.LiquidityPool;
+import org.example.model.LiquidityProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 帳本事件的只追加二進位日誌。事件寫入記憶體映射的固定大小分段檔（ledger-00000000.log …），
+ * 寫滿時換到下一個分段；每筆紀錄為 [長度][CRC32][內容]，讀取時遇到長度為 0 或 CRC 不符即視為結尾，
+ * 因此寫到一半中斷的最後一筆會被忽略。
+ * 在交易中產生的事件於交易提交後才寫入，回滾的異動不會留下事件。序號在寫入時於日誌的鎖內分配，
+ * 日誌中的序號依寫入順序遞增，與提交回呼的執行順序一致。
+ * <p>
+ * 事件在資料庫提交之後才寫入：程序在提交與寫入之間終止時，日誌會少於資料庫中已提交的異動。
+ * {@link LedgerReplayer} 重播時會比對資料庫現有的餘額並記錄日誌無法解釋的差異。
+ */
+@Component
+public class LedgerEventLog {
+    private static final Logger logger = LoggerFactory.getLogger(LedgerEventLog.class);
+
+    private static final int MAGIC = 0x4C454447; // "LEDG"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    @Value("${exchange.event-log.enabled:false}")
+    private boolean enabled;
+
+    @Value("${exchange.event-log.directory:data/event-log}")
+    private String directory;
+
+    @Value("${exchange.event-log.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    // 為 true 時每次寫入後把映射頁寫回磁碟（msync）；預設只寫入頁快取，行程當機不會遺失事件，作業系統當機則可能遺失最後幾筆
+    @Value("${exchange.event-log.sync:false}")
+    private boolean sync;
+
+    // 只在 append 的監視器內遞增；在鎖外讀取目前的值
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 以下欄位只在 append 的監視器內使用
+    private final CRC32 crc = new CRC32();
+    private ByteBuffer scratch = ByteBuffer.allocate(1024);
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(Paths.get(directory));
+        List<Path> segments = segments();
+        if (segments.isEmpty()) {
+            openSegment(0);
+            return;
+        }
+        // 最後一個分段的寫入位置；最後一個分段可能剛換段而還沒有紀錄，序號取最後兩個分段中的最大值
+        Path last = segments.get(segments.size() - 1);
+        segmentIndex = segments.size() - 1;
+        segment = map(last, FileChannel.MapMode.READ_WRITE);
+        long maxSequence = scan(segment, event -> { });
+        if (segments.size() > 1) {
+            maxSequence = Math.max(maxSequence, readSegment(segments.get(segments.size() - 2), event -> { }));
+        }
+        sequence.set(maxSequence);
+        int end = segment.position();
+        if (end + Integer.BYTES <= segment.limit() && segment.getInt(end) != 0) {
+            // 中斷時寫到一半的紀錄，清除剩餘空間避免殘留內容之後被誤讀
+            logger.warn("事件日誌分段 {} 在位置 {} 有不完整的紀錄，已截斷", last, end);
+            for (int i = end; i < segment.limit(); i++) {
+                segment.put(i, (byte) 0);
+            }
+        }
+        logger.info("開啟事件日誌 {}，分段 {}，最後序號 {}", directory, last.getFileName(), maxSequence);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 目前為止寫入日誌的最大序號。
+     */
+    public long currentSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * 使之後分配的序號大於 target；載入序號為 target 的檢查點後呼叫，新事件不會與檢查點已涵蓋的序號重疊。
+     */
+    public synchronized void advanceTo(long target) {
+        sequence.accumulateAndGet(target, Math::max);
+    }
+
+    /**
+     * 記錄一筆事件，序號在寫入日誌時分配。在交易中呼叫時，事件於交易提交後才寫入日誌。
+     */
+    public void record(LedgerEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            append(List.of(event));
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        List<LedgerEvent> pending = (List<LedgerEvent>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<LedgerEvent> buffer = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    append(buffer);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(LedgerEventLog.this);
+                }
+            });
+            pending = buffer;
+        }
+        pending.add(event);
+    }
+
+    /**
+     * 依寫入順序讀取所有分段的事件，回傳讀到的最大序號。
+     */
+    public long readAll(Consumer<LedgerEvent> consumer) {
+        long maxSequence = 0;
+        try {
+            for (Path path : segments()) {
+                maxSequence = Math.max(maxSequence, readSegment(path, consumer));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return maxSequence;
+    }
+
+    private synchronized void append(List<LedgerEvent> events) {
+        try {
+            for (LedgerEvent event : events) {
+                event.setSequence(sequence.incrementAndGet());
+                encode(event);
+                int recordSize = RECORD_HEADER_SIZE + scratch.remaining();
+                // 保留 4 個位元組給結尾的 0 長度
+                if (segment.remaining() < recordSize + Integer.BYTES) {
+                    rotate(recordSize);
+                }
+                crc.reset();
+                crc.update(scratch.duplicate());
+                segment.putInt(scratch.remaining());
+                segment.putInt((int) crc.getValue());
+                segment.put(scratch);
+            }
+            if (sync) {
+                segment.force();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to the ledger event log", e);
+        }
+    }
+
+    private void rotate(int recordSize) throws IOException {
+        if (SEGMENT_HEADER_SIZE + recordSize + Integer.BYTES > segmentSize()) {
+            throw new IllegalStateException("Ledger event larger than a log segment: " + recordSize);
+        }
+        segment.force();
+        openSegment(segmentIndex + 1);
+    }
+
+    private void openSegment(int index) throws IOException {
+        Path path = Paths.get(directory, String.format("ledger-%08d.log", index));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(segmentSize());
+        }
+        segment = map(path, FileChannel.MapMode.READ_WRITE);
+        segment.putInt(MAGIC);
+        segment.putInt(FORMAT_VERSION);
+        segmentIndex = index;
+    }
+
+    private long readSegment(Path path, Consumer<LedgerEvent> consumer) throws IOException {
+        return scan(map(path, FileChannel.MapMode.READ_ONLY), consumer);
+    }
+
+    /**
+     * 從分段開頭讀到最後一筆完整的紀錄，結束時 buffer 的位置停在下一筆紀錄的寫入位置。
+     */
+    private long scan(MappedByteBuffer buffer, Consumer<LedgerEvent> consumer) {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalStateException("Not a ledger event log segment");
+        }
+        buffer.position(SEGMENT_HEADER_SIZE);
+        CRC32 check = new CRC32();
+        long maxSequence = 0;
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                buffer.position(start);
+                break;
+            }
+            ByteBuffer body = buffer.slice();
+            body.limit(length);
+            check.reset();
+            check.update(body.duplicate());
+            if ((int) check.getValue() != expected) {
+                buffer.position(start);
+                break;
+            }
+            LedgerEvent event = decode(body);
+            maxSequence = Math.max(maxSequence, event.getSequence());
+            consumer.accept(event);
+            buffer.position(start + RECORD_HEADER_SIZE + length);
+        }
+        return maxSequence;
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(directory))) {
+            return files.filter(p -> p.getFileName().toString().matches("ledger-\\d{8}\\.log"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static MappedByteBuffer map(Path path, FileChannel.MapMode mode) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+            ? new StandardOpenOption[]{StandardOpenOption.READ}
+            : new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE};
+        // 映射在通道關閉後仍然有效
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            return channel.map(mode, 0, channel.size());
+        }
+    }
+
+    private long segmentSize() {
+        return segmentSizeMb * 1024L * 1024L;
+    }
+
+    // ---- 編碼 ----
+
+    private void encode(LedgerEvent event) {
+        while (true) {
+            scratch.clear();
+            try {
+                writeBody(event);
+                scratch.flip();
+                return;
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+            }
+        }
+    }
+
+    private void writeBody(LedgerEvent event) {
+        scratch.putLong(event.getSequence());
+        scratch.put(event.getType().getCode());
+        switch (event.getType()) {
+            case USDC_CREDIT:
+            case USDC_DEBIT:
+            case USDC_SET:
+                putString(event.getAddress());
+                putDecimal(event.getAmount());
+                break;
+            case CCT_CREDIT:
+            case CCT_DEBIT:
+                scratch.putLong(event.getTokenId());
+                putString(event.getAddress());
+                putDecimal(event.getAmount());
+                break;
+            case TOKEN_CREATED:
+                scratch.putLong(event.getTokenId());
+                putString(event.getName());
+                putString(event.getSymbol());
+                putString(event.getAddress());
+                break;
+            case TOKEN_MINTED:
+                scratch.putLong(event.getTokenId());
+                putDecimal(event.getAmount());
+                break;
+            case MINTING_DISABLED:
+                scratch.putLong(event.getTokenId());
+                break;
+            case EXCHANGE_CREATED:
+                scratch.putLong(event.getExchangeId());
+                scratch.putLong(event.getTokenId());
+                break;
+            case POOL_STATE:
+                LiquidityPool pool = event.getPool();
+                scratch.putLong(pool.getExchangeId());
+                scratch.putLong(pool.getId());
+                putDecimal(pool.getUsdcReserves());
+                putDecimal(pool.getCctReserves());
+                putDecimal(pool.getTotalShares());
+                putDecimal(pool.getExchangeRateMultiplier());
+                putDecimal(pool.getK());
+                putString(pool.getSettlementMode().name());
+                scratch.putInt(pool.getFeeBps());
+                putDecimal(pool.getUsdcFeeGrowth());
+                putDecimal(pool.getCctFeeGrowth());
+                putDecimal(pool.getUsdcFeeReserves());
+                putDecimal(pool.getCctFeeReserves());
+                break;
+            case PROVIDER_SHARES:
+                scratch.putLong(event.getExchangeId());
+                putString(event.getAddress());
+                putDecimal(event.getAmount());
+                LiquidityProvider provider = event.getProvider();
+                putDecimal(provider.getUsdcFeeGrowthLast());
+                putDecimal(provider.getCctFeeGrowthLast());
+                putDecimal(provider.getUsdcFeesOwed());
+                putDecimal(provider.getCctFeesOwed());
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported ledger event type: " + event.getType());
+        }
+    }
+
+    private static LedgerEvent decode(ByteBuffer body) {
+        LedgerEvent event = new LedgerEvent();
+        event.setSequence(body.getLong());
+        LedgerEvent.Type type = LedgerEvent.Type.fromCode(body.get());
+        event.setType(type);
+        switch (type) {
+            case USDC_CREDIT:
+            case USDC_DEBIT:
+            case USDC_SET:
+                event.setAddress(getString(body));
+                event.setAmount(getDecimal(body));
+                break;
+            case CCT_CREDIT:
+            case CCT_DEBIT:
+                event.setTokenId(body.getLong());
+                event.setAddress(getString(body));
+                event.setAmount(getDecimal(body));
+                break;
+            case TOKEN_CREATED:
+                event.setTokenId(body.getLong());
+                event.setName(getString(body));
+                event.setSymbol(getString(body));
+                event.setAddress(getString(body));
+                break;
+            case TOKEN_MINTED:
+                event.setTokenId(body.getLong());
+                event.setAmount(getDecimal(body));
+                break;
+            case MINTING_DISABLED:
+                event.setTokenId(body.getLong());
+                break;
+            case EXCHANGE_CREATED:
+                event.setExchangeId(body.getLong());
+                event.setTokenId(body.getLong());
+                break;
+            case POOL_STATE:
+                LiquidityPool pool = new LiquidityPool();
+                pool.setExchangeId(body.getLong());
+                pool.setId(body.getLong());
+                pool.setUsdcReserves(getDecimal(body));
+                pool.setCctReserves(getDecimal(body));
+                pool.setTotalShares(getDecimal(body));
+                pool.setExchangeRateMultiplier(getDecimal(body));
+                pool.setK(getDecimal(body));
+                pool.setSettlementMode(LiquidityPool.SettlementMode.valueOf(getString(body)));
+                // 費用欄位在後來加入，之前寫入的紀錄沒有這些欄位，維持預設值 0
+                if (body.hasRemaining()) {
+                    pool.setFeeBps(body.getInt());
+                    pool.setUsdcFeeGrowth(getDecimal(body));
+                    pool.setCctFeeGrowth(getDecimal(body));
+                    pool.setUsdcFeeReserves(getDecimal(body));
+                    pool.setCctFeeReserves(getDecimal(body));
+                }
+                event.setExchangeId(pool.getExchangeId());
+                event.setPool(pool);
+                break;
+            case PROVIDER_SHARES:
+                LiquidityProvider provider = new LiquidityProvider();
+                provider.setExchangeId(body.getLong());
+                provider.setProviderAddress(getString(body));
+                provider.setShares(getDecimal(body));
+                if (body.hasRemaining()) {
+                    provider.setUsdcFeeGrowthLast(getDecimal(body));
+                    provider.setCctFeeGrowthLast(getDecimal(body));
+                    provider.setUsdcFeesOwed(getDecimal(body));
+                    provider.setCctFeesOwed(getDecimal(body));
+                }
+                event.setExchangeId(provider.getExchangeId());
+                event.setAddress(provider.getProviderAddress());
+                event.setAmount(provider.getShares());
+                event.setProvider(provider);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported ledger event type: " + type);
+        }
+        return event;
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        scratch.putShort((short) bytes.length);
+        scratch.put(bytes);
+    }
+
+    private static String getString(ByteBuffer body) {
+        byte[] bytes = new byte[body.getShort() & 0xFFFF];
+        body.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 非標度值以二補數位元組加上標度保存，不經過字串轉換
+    private void putDecimal(BigDecimal value) {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        scratch.putInt(value.scale());
+        scratch.put((byte) unscaled.length);
+        scratch.put(unscaled);
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer body) {
+        int scale = body.getInt();
+        byte[] unscaled = new byte[body.get() & 0xFF];
+        body.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
@@ -0,0 +1,191 @@
+package org.example.service;
+
+import org.example.model.LiquidityPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 帳務操作的結構化事件日誌：每筆交換、流動性變動與批次結算記錄為 org.example.ledger 的一行 key=value。
+ * logback-spring.xml 把這個 logger 接到非同步 appender，請求線程只把訊息放入佇列，I/O 在 appender 的背景線程完成。
+ * <p>
+ * 訊息在呼叫線程以每個線程重複使用的 StringBuilder 組成，交給 logger 時已不含 {} 佔位符，appender 不再解析參數；
+ * 層級未啟用時直接返回，不做任何格式化。在交易中記錄的事件於提交後才寫出，回滾的操作不會出現在日誌中。
+ * 池子狀態的 DEBUG 傾印依 exchange.logging.pool-dump-sample-rate 抽樣，每 N 次寫入約記錄一次。
+ */
+@Component
+public class LedgerLogger {
+    private static final Logger logger = LoggerFactory.getLogger("org.example.ledger");
+
+    private static final int BUFFER_SIZE = 256;
+    // 偶爾出現的超長訊息之後不保留過大的緩衝區
+    private static final int MAX_RETAINED_BUFFER = 4096;
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(BUFFER_SIZE));
+
+    @Value("${exchange.logging.pool-dump-sample-rate:100}")
+    private int poolDumpSampleRate;
+
+    public void swap(LiquidityPool pool, String trader, String assetIn, BigDecimal amountIn, BigDecimal amountOut, BigDecimal fee) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder sb = begin("SWAP", pool);
+        field(sb, "trader", trader);
+        field(sb, "assetIn", assetIn);
+        field(sb, "amountIn", amountIn);
+        field(sb, "amountOut", amountOut);
+        field(sb, "fee", fee);
+        reserves(sb, pool);
+        info(sb);
+    }
+
+    public void liquidityAdded(LiquidityPool pool, String provider, BigDecimal usdc, BigDecimal cct, BigDecimal shares) {
+        liquidity("ADD_LIQUIDITY", pool, provider, usdc, cct, shares);
+    }
+
+    public void liquidityRemoved(LiquidityPool pool, String provider, BigDecimal usdc, BigDecimal cct, BigDecimal shares) {
+        liquidity("REMOVE_LIQUIDITY", pool, provider, usdc, cct, shares);
+    }
+
+    public void poolCreated(LiquidityPool pool, Long tokenId, String provider) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder sb = begin("CREATE_POOL", pool);
+        field(sb, "tokenId", tokenId);
+        field(sb, "provider", provider);
+        reserves(sb, pool);
+        info(sb);
+    }
+
+    public void batchSettled(LiquidityPool pool, List<BatchAuction.Order> orders, BigDecimal clearingPrice) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        int filled = 0;
+        for (BatchAuction.Order order : orders) {
+            if (order.isOpen()) {
+                filled++;
+            }
+        }
+        StringBuilder sb = begin("BATCH_SETTLED", pool);
+        field(sb, "orders", orders.size());
+        field(sb, "filled", filled);
+        field(sb, "clearingPrice", clearingPrice);
+        reserves(sb, pool);
+        info(sb);
+    }
+
+    public void faucet(String address, BigDecimal usdc, BigDecimal cct) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder sb = begin("FAUCET");
+        field(sb, "address", address);
+        field(sb, "usdc", usdc);
+        field(sb, "cct", cct);
+        info(sb);
+    }
+
+    /**
+     * 抽樣記錄池子寫入後的完整狀態（DEBUG）。
+     */
+    public void poolState(LiquidityPool pool) {
+        if (!logger.isDebugEnabled()
+            || (poolDumpSampleRate > 1 && ThreadLocalRandom.current().nextInt(poolDumpSampleRate) != 0)) {
+            return;
+        }
+        StringBuilder sb = begin("POOL_STATE", pool);
+        reserves(sb, pool);
+        field(sb, "totalShares", pool.getTotalShares());
+        field(sb, "usdcFeeReserves", pool.getUsdcFeeReserves());
+        field(sb, "cctFeeReserves", pool.getCctFeeReserves());
+        field(sb, "feeBps", pool.getFeeBps());
+        field(sb, "mode", pool.getSettlementMode());
+        write(sb, false);
+    }
+
+    private void liquidity(String event, LiquidityPool pool, String provider, BigDecimal usdc, BigDecimal cct, BigDecimal shares) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder sb = begin(event, pool);
+        field(sb, "provider", provider);
+        field(sb, "usdc", usdc);
+        field(sb, "cct", cct);
+        field(sb, "shares", shares);
+        reserves(sb, pool);
+        info(sb);
+    }
+
+    private static StringBuilder begin(String event) {
+        StringBuilder sb = BUFFER.get();
+        if (sb.capacity() > MAX_RETAINED_BUFFER) {
+            sb = new StringBuilder(BUFFER_SIZE);
+            BUFFER.set(sb);
+        }
+        sb.setLength(0);
+        return sb.append("event=").append(event);
+    }
+
+    private static StringBuilder begin(String event, LiquidityPool pool) {
+        StringBuilder sb = begin(event);
+        field(sb, "exchangeId", pool.getExchangeId());
+        return sb;
+    }
+
+    private static void reserves(StringBuilder sb, LiquidityPool pool) {
+        field(sb, "usdcReserves", pool.getUsdcReserves());
+        field(sb, "cctReserves", pool.getCctReserves());
+    }
+
+    private static void field(StringBuilder sb, String key, BigDecimal value) {
+        sb.append(' ').append(key).append('=');
+        if (value == null) {
+            sb.append("null");
+        } else {
+            sb.append(value.toPlainString());
+        }
+    }
+
+    private static void field(StringBuilder sb, String key, Object value) {
+        sb.append(' ').append(key).append('=').append(value);
+    }
+
+    private static void field(StringBuilder sb, String key, long value) {
+        sb.append(' ').append(key).append('=').append(value);
+    }
+
+    private static void info(StringBuilder sb) {
+        write(sb, true);
+    }
+
+    private static void write(StringBuilder sb, boolean info) {
+        String message = sb.toString();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    log(message, info);
+                }
+            });
+        } else {
+            log(message, info);
+        }
+    }
+
+    private static void log(String message, boolean info) {
+        if (info) {
+            logger.info(message);
+        } else {
+            logger.debug(message);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.CarbonCreditToken;
+import org.example.model.LedgerEvent;
+import org.example.model.LiquidityPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 從事件日誌重建帳本狀態：代幣、交易所、流動性池與提供者份額、CCT 與 USDC 餘額。
+ * 只讀取日誌而不參考資料庫中的現有狀態，結果在單一交易中覆寫相應的資料表；
+ * 因此日誌必須從空的資料庫開始記錄。
+ * 事件在資料庫提交後才寫入日誌，程序在兩者之間終止時日誌會落後於資料庫；覆寫前先比對資料庫現有的餘額，
+ * 記錄日誌無法解釋的差異，這些差異在重播後會被捨棄。
+ * 設定 exchange.event-log.replay-on-startup=true 時在所有元件建立後、開始接受請求前執行。
+ */
+@Component
+@RequiredArgsConstructor
+public class LedgerReplayer implements SmartInitializingSingleton {
+    private static final Logger logger = LoggerFactory.getLogger(LedgerReplayer.class);
+    private static final int MAX_REPORTED_DIVERGENCE = 20;
+
+    private final LedgerEventLog ledgerEventLog;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${exchange.event-log.replay-on-startup:false}")
+    private boolean replayOnStartup;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (replayOnStartup) {
+            replay();
+        }
+    }
+
+    /**
+     * 重播整個日誌並寫入資料庫，回傳重播到的最大序號。
+     */
+    public long replay() {
+        if (!ledgerEventLog.isEnabled()) {
+            throw new IllegalStateException("Ledger event log is disabled");
+        }
+        long started = System.nanoTime();
+        LedgerState state = new LedgerState();
+        long lastSequence = ledgerEventLog.readAll(state::apply);
+        transactionTemplate.executeWithoutResult(status -> {
+            state.reportDivergence(jdbcTemplate);
+            state.writeTo(jdbcTemplate);
+        });
+        logger.info("事件日誌重播完成 - {} 筆事件，最後序號 {}，耗時 {} ms", state.events, lastSequence,
+            (System.nanoTime() - started) / 1_000_000);
+        return lastSequence;
+    }
+
+    /**
+     * 重播過程中累積的狀態。餘額為增減量的總和，與事件順序無關；
+     * 池子與提供者份額是完整狀態，保留序號最大的一筆。
+     */
+    private static final class LedgerState {
+        private long events;
+        private final Map<Long, CarbonCreditToken> tokens = new TreeMap<>();
+        private final Map<Long, Long> exchanges = new TreeMap<>();
+        private final Map<Long, LedgerEvent> pools = new TreeMap<>();
+        private final Map<Long, Map<String, LedgerEvent>> providers = new TreeMap<>();
+        private final Map<Long, Map<String, BigDecimal>> cctBalances = new TreeMap<>();
+        private final Map<String, BigDecimal> usdcBalances = new TreeMap<>();
+        // USDC_SET 覆寫序號在它之前的增減量，只有序號在它之後的增減量再累加上去
+        private final Map<String, Long> usdcSetAt = new HashMap<>();
+
+        private void apply(LedgerEvent event) {
+            events++;
+            switch (event.getType()) {
+                case USDC_CREDIT:
+                    usdcDelta(event, event.getAmount());
+                    break;
+                case USDC_DEBIT:
+                    usdcDelta(event, event.getAmount().negate());
+                    break;
+                case USDC_SET:
+                    Long setAt = usdcSetAt.get(event.getAddress());
+                    if (setAt == null || setAt < event.getSequence()) {
+                        usdcSetAt.put(event.getAddress(), event.getSequence());
+                        usdcBalances.put(event.getAddress(), event.getAmount());
+                    }
+                    break;
+                case CCT_CREDIT:
+                    cctBalances.computeIfAbsent(event.getTokenId(), id -> new TreeMap<>())
+                        .merge(event.getAddress(), event.getAmount(), BigDecimal::add);
+                    break;
+                case CCT_DEBIT:
+                    cctBalances.computeIfAbsent(event.getTokenId(), id -> new TreeMap<>())
+                        .merge(event.getAddress(), event.getAmount().negate(), BigDecimal::add);
+                    break;
+                case TOKEN_CREATED:
+                    CarbonCreditToken token = new CarbonCreditToken(event.getName(), event.getSymbol(), event.getAddress());
+                    token.setId(event.getTokenId());
+                    tokens.putIfAbsent(event.getTokenId(), token);
+                    break;
+                case TOKEN_MINTED:
+                    CarbonCreditToken minted = token(event.getTokenId());
+                    minted.setTotalSupply(minted.getTotalSupply().add(event.getAmount()));
+                    break;
+                case MINTING_DISABLED:
+                    token(event.getTokenId()).setMintingEnabled(false);
+                    break;
+                case EXCHANGE_CREATED:
+                    exchanges.put(event.getExchangeId(), event.getTokenId());
+                    break;
+                case POOL_STATE:
+                    pools.merge(event.getExchangeId(), event, LedgerState::latest);
+                    break;
+                case PROVIDER_SHARES:
+                    providers.computeIfAbsent(event.getExchangeId(), id -> new TreeMap<>())
+                        .merge(event.getAddress(), event, LedgerState::latest);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported ledger event type: " + event.getType());
+            }
+        }
+
+        private void usdcDelta(LedgerEvent event, BigDecimal delta) {
+            Long setAt = usdcSetAt.get(event.getAddress());
+            if (setAt == null || setAt < event.getSequence()) {
+                usdcBalances.merge(event.getAddress(), delta, BigDecimal::add);
+            }
+        }
+
+        private CarbonCreditToken token(Long tokenId) {
+            CarbonCreditToken token = tokens.get(tokenId);
+            if (token == null) {
+                throw new IllegalStateException("Ledger event for unknown token " + tokenId);
+            }
+            return token;
+        }
+
+        private static LedgerEvent latest(LedgerEvent current, LedgerEvent candidate) {
+            return candidate.getSequence() > current.getSequence() ? candidate : current;
+        }
+
+        /**
+         * 比對資料庫現有的餘額與重播結果，記錄值不同的列；資料庫中沒有的列（例如從空的資料庫重建）不算差異。
+         */
+        private void reportDivergence(JdbcTemplate jdbc) {
+            List<String> diverged = new ArrayList<>();
+            jdbc.query("select address, balance from usdc_balances", (ResultSet rs) -> {
+                if (differs(usdcBalances.get(rs.getString(1)), rs.getBigDecimal(2))) {
+                    diverged.add("USDC " + rs.getString(1));
+                }
+            });
+            jdbc.query("select token_id, address, balance from token_balances", (ResultSet rs) -> {
+                BigDecimal replayed = cctBalances.getOrDefault(rs.getLong(1), Collections.emptyMap()).get(rs.getString(2));
+                if (differs(replayed, rs.getBigDecimal(3))) {
+                    diverged.add("CCT " + rs.getLong(1) + " " + rs.getString(2));
+                }
+            });
+            if (!diverged.isEmpty()) {
+                logger.warn("資料庫有 {} 個餘額與事件日誌重播的結果不同，可能是提交後、寫入日誌前中斷的交易，重播後以日誌為準: {}",
+                    diverged.size(), diverged.subList(0, Math.min(diverged.size(), MAX_REPORTED_DIVERGENCE)));
+            }
+        }
+
+        private static boolean differs(BigDecimal replayed, BigDecimal stored) {
+            return (replayed == null ? BigDecimal.ZERO : replayed).compareTo(stored) != 0;
+        }
+
+        private void writeTo(JdbcTemplate jdbc) {
+            for (CarbonCreditToken token : tokens.values()) {
+                int updated = jdbc.update("update carbon_credit_tokens set name = ?, symbol = ?, admin_address = ?, " +
+                        "minting_enabled = ?, total_supply = ? where id = ?",
+                    token.getName(), token.getSymbol(), token.getAdminAddress(),
+                    token.isMintingEnabled(), token.getTotalSupply(), token.getId());
+                if (updated == 0) {
+                    jdbc.update("insert into carbon_credit_tokens (id, name, symbol, admin_address, minting_enabled, total_supply) " +
+                            "values (?, ?, ?, ?, ?, ?)",
+                        token.getId(), token.getName(), token.getSymbol(), token.getAdminAddress(),
+                        token.isMintingEnabled(), token.getTotalSupply());
+                }
+            }
+            for (Map.Entry<Long, Long> exchange : exchanges.entrySet()) {
+                int updated = jdbc.update("update carbon_exchanges set token_id = ? where id = ?",
+                    exchange.getValue(), exchange.getKey());
+                if (updated == 0) {
+                    jdbc.update("insert into carbon_exchanges (id, token_id, carbon_fee_reserves, base_fee_reserves) " +
+                            "values (?, ?, 0, 0)",
+                        exchange.getKey(), exchange.getValue());
+                }
+            }
+
+            Map<Long, Long> poolIds = new HashMap<>();
+            for (LedgerEvent event : pools.values()) {
+                LiquidityPool pool = event.getPool();
+                poolIds.put(pool.getExchangeId(), pool.getId());
+                int updated = jdbc.update("update liquidity_pools set total_base_reserves = ?, total_carbon_reserves = ?, " +
+                        "total_shares = ?, exchange_rate_multiplier = ?, k = ?, settlement_mode = ?, fee_bps = ?, " +
+                        "usdc_fee_growth = ?, cct_fee_growth = ?, usdc_fee_reserves = ?, cct_fee_reserves = ? " +
+                        "where exchange_id = ?",
+                    pool.getUsdcReserves(), pool.getCctReserves(), pool.getTotalShares(),
+                    pool.getExchangeRateMultiplier(), pool.getK(), pool.getSettlementMode().name(), pool.getFeeBps(),
+                    pool.getUsdcFeeGrowth(), pool.getCctFeeGrowth(), pool.getUsdcFeeReserves(), pool.getCctFeeReserves(),
+                    pool.getExchangeId());
+                if (updated == 0) {
+                    jdbc.update("insert into liquidity_pools (id, exchange_id, total_base_reserves, total_carbon_reserves, " +
+                            "total_shares, exchange_rate_multiplier, k, settlement_mode, fee_bps, usdc_fee_growth, " +
+                            "cct_fee_growth, usdc_fee_reserves, cct_fee_reserves) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+                        pool.getId(), pool.getExchangeId(), pool.getUsdcReserves(), pool.getCctReserves(),
+                        pool.getTotalShares(), pool.getExchangeRateMultiplier(), pool.getK(), pool.getSettlementMode().name(),
+                        pool.getFeeBps(), pool.getUsdcFeeGrowth(), pool.getCctFeeGrowth(),
+                        pool.getUsdcFeeReserves(), pool.getCctFeeReserves());
+                }
+            }
+
+            jdbc.update("delete from liquidity_providers");
+            List<Object[]> providerRows = new ArrayList<>();
+            // 份額歸零且費用已領取的提供者已從資料表刪除
+            providers.forEach((exchangeId, byAddress) -> byAddress.values().stream()
+                .map(LedgerEvent::getProvider)
+                .filter(provider -> !provider.isEmpty())
+                .forEach(provider -> providerRows.add(new Object[]{exchangeId, provider.getProviderAddress(),
+                    poolIds.get(exchangeId), provider.getShares(), provider.getUsdcFeeGrowthLast(),
+                    provider.getCctFeeGrowthLast(), provider.getUsdcFeesOwed(), provider.getCctFeesOwed()})));
+            jdbc.batchUpdate("insert into liquidity_providers (exchange_id, provider_address, pool_id, shares, " +
+                    "usdc_fee_growth_last, cct_fee_growth_last, usdc_fees_owed, cct_fees_owed) values (?, ?, ?, ?, ?, ?, ?, ?)",
+                providerRows);
+
+            jdbc.update("delete from token_balances");
+            List<Object[]> cctRows = new ArrayList<>();
+            cctBalances.forEach((tokenId, byAddress) -> byAddress.forEach((address, balance) ->
+                cctRows.add(new Object[]{tokenId, address, balance})));
+            jdbc.batchUpdate("insert into token_balances (token_id, address, balance) values (?, ?, ?)", cctRows);
+
+            jdbc.update("delete from usdc_balances");
+            List<Object[]> usdcRows = new ArrayList<>();
+            usdcBalances.forEach((address, balance) -> usdcRows.add(new Object[]{address, balance}));
+            jdbc.batchUpdate("insert into usdc_balances (address, balance) values (?, ?)", usdcRows);
+
+            IdentityColumns.restartAfterExplicitIds(jdbc, "carbon_credit_tokens", "carbon_exchanges", "liquidity_pools");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.service;
+
+import org.example.model.LimitOrder;
+import org.example.model.OrderBookLevel;
+import org.example.model.PoolSnapshot;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 記憶體中依價格排序的限價簿，每個池子一份：買單依限價由高到低、賣單由低到高，同價位依掛單先後。
+ * 池子變動後只需檢查兩邊最優的掛單即可判斷是否有可成交的掛單。
+ * 寫入只在持有該池子寫入權時進行（掛單、撤單與撮合都經由池子的寫入路徑），讀取可以並行。
+ */
+@Component
+public class LimitOrderBook {
+    private final ConcurrentMap<Long, Book> books = new ConcurrentHashMap<>();
+
+    public void add(LimitOrder order) {
+        book(order.getExchangeId()).add(order);
+    }
+
+    public void remove(LimitOrder order) {
+        Book book = books.get(order.getExchangeId());
+        if (book != null) {
+            book.remove(order);
+        }
+    }
+
+    /**
+     * 以資料表中的掛單取代池子目前的限價簿。
+     */
+    public void replace(Long exchangeId, Collection<LimitOrder> orders) {
+        Book book = new Book();
+        orders.forEach(book::add);
+        books.put(exchangeId, book);
+    }
+
+    public LimitOrder get(Long exchangeId, Long orderId) {
+        Book book = books.get(exchangeId);
+        return book == null ? null : book.byId.get(orderId);
+    }
+
+    /**
+     * 最高的買單，同價位中最早掛出的一張。
+     */
+    public LimitOrder bestBid(Long exchangeId) {
+        Book book = books.get(exchangeId);
+        return book == null ? null : first(book.bids);
+    }
+
+    /**
+     * 最低的賣單，同價位中最早掛出的一張。
+     */
+    public LimitOrder bestAsk(Long exchangeId) {
+        Book book = books.get(exchangeId);
+        return book == null ? null : first(book.asks);
+    }
+
+    /**
+     * 在快照的儲備下兩邊最優的掛單是否至少有一張可以成交，判斷與撮合時的成交計算相同。
+     * 只比較價位不夠：限價與匯率只差捨入誤差，或部分成交後匯率停在限價附近時，價位看似可成交但換得數量為零。
+     */
+    public boolean hasExecutable(PoolSnapshot snapshot) {
+        Book book = books.get(snapshot.getExchangeId());
+        if (book == null) {
+            return false;
+        }
+        LimitOrder bid = first(book.bids);
+        LimitOrder ask = first(book.asks);
+        return (bid != null && LimitOrderFill.of(bid, snapshot) != null)
+            || (ask != null && LimitOrderFill.of(ask, snapshot) != null);
+    }
+
+    public List<OrderBookLevel> bids(Long exchangeId, int depth) {
+        Book book = books.get(exchangeId);
+        return book == null ? List.of() : levels(book.bids, depth);
+    }
+
+    public List<OrderBookLevel> asks(Long exchangeId, int depth) {
+        Book book = books.get(exchangeId);
+        return book == null ? List.of() : levels(book.asks, depth);
+    }
+
+    private Book book(Long exchangeId) {
+        return books.computeIfAbsent(exchangeId, id -> new Book());
+    }
+
+    private static LimitOrder first(ConcurrentNavigableMap<BigDecimal, Deque<LimitOrder>> side) {
+        for (Deque<LimitOrder> level : side.values()) {
+            LimitOrder order = level.peekFirst();
+            if (order != null) {
+                return order;
+            }
+        }
+        return null;
+    }
+
+    private static List<OrderBookLevel> levels(ConcurrentNavigableMap<BigDecimal, Deque<LimitOrder>> side, int depth) {
+        List<OrderBookLevel> levels = new ArrayList<>(Math.min(depth, side.size()));
+        for (Map.Entry<BigDecimal, Deque<LimitOrder>> entry : side.entrySet()) {
+            if (levels.size() == depth) {
+                break;
+            }
+            BigDecimal remaining = BigDecimal.ZERO;
+            int count = 0;
+            for (LimitOrder order : entry.getValue()) {
+                remaining = remaining.add(order.getRemaining());
+                count++;
+            }
+            if (count > 0) {
+                levels.add(new OrderBookLevel(entry.getKey(), remaining, count));
+            }
+        }
+        return levels;
+    }
+
+    private static final class Book {
+        private final ConcurrentNavigableMap<BigDecimal, Deque<LimitOrder>> bids =
+            new ConcurrentSkipListMap<>(Comparator.reverseOrder());
+        private final ConcurrentNavigableMap<BigDecimal, Deque<LimitOrder>> asks = new ConcurrentSkipListMap<>();
+        private final ConcurrentMap<Long, LimitOrder> byId = new ConcurrentHashMap<>();
+
+        private void add(LimitOrder order) {
+            byId.put(order.getId(), order);
+            side(order).computeIfAbsent(order.getLimitRate(), rate -> new ConcurrentLinkedDeque<>()).addLast(order);
+        }
+
+        private void remove(LimitOrder order) {
+            byId.remove(order.getId());
+            // 價位清空時一併移除，最優價位永遠是有掛單的價位
+            side(order).computeIfPresent(order.getLimitRate(), (rate, level) -> {
+                level.removeIf(o -> o.getId().equals(order.getId()));
+                return level.isEmpty() ? null : level;
+            });
+        }
+
+        private ConcurrentNavigableMap<BigDecimal, Deque<LimitOrder>> side(LimitOrder order) {
+            return order.isBuy() ? bids : asks;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.service;
+
+import lombok.Value;
+import org.example.math.PoolMath;
+import org.example.model.LimitOrder;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 限價單在給定儲備下的一次成交：投入數量、交換費用、淨投入與換得數量。
+ * 撮合與快照發布後判斷是否需要撮合都以這裡的計算為準，兩者對「可成交」的判斷一致。
+ */
+@Value
+class LimitOrderFill {
+    BigDecimal amountIn;
+    BigDecimal fee;
+    BigDecimal net;
+    BigDecimal amountOut;
+
+    static LimitOrderFill of(LimitOrder order, LiquidityPool pool) {
+        return of(order, pool.getUsdcReserves(), pool.getCctReserves(), pool.getFeeBps(), pool.getTotalShares());
+    }
+
+    static LimitOrderFill of(LimitOrder order, PoolSnapshot snapshot) {
+        return of(order, snapshot.getUsdcReserves(), snapshot.getCctReserves(), snapshot.getFeeBps(), snapshot.getTotalShares());
+    }
+
+    /**
+     * 全部剩餘數量的淨投入不超過限價允許的上限時全部成交，否則只成交到恰好到達限價。
+     * 已到達限價，或淨投入、換得數量捨入為零時無法成交，回傳 null。
+     * <p>
+     * 買單投入 USDC：成交後匯率 (usdc + net)² / k 不超過限價，即淨投入不超過 √(限價 × k) − usdc。
+     * 賣單投入 CCT：成交後匯率 k / (cct + net)² 不低於限價，即淨投入不超過 √(k / 限價) − cct。
+     */
+    static LimitOrderFill of(LimitOrder order, BigDecimal usdc, BigDecimal cct, int feeBps, BigDecimal totalShares) {
+        BigDecimal maxNet = order.isBuy()
+            ? PoolMath.sqrt(order.getLimitRate().multiply(usdc).multiply(cct)).subtract(usdc)
+            : PoolMath.sqrt(PoolMath.mulDiv(usdc, cct, order.getLimitRate(), RoundingMode.DOWN)).subtract(cct);
+        if (maxNet.signum() <= 0) {
+            return null;
+        }
+        BigDecimal amountIn = order.getRemaining();
+        if (amountIn.subtract(LiquidityPool.swapFee(amountIn, feeBps, totalShares)).compareTo(maxNet) > 0) {
+            amountIn = LiquidityPool.maxAmountInForNet(maxNet, feeBps, totalShares);
+        }
+        BigDecimal fee = LiquidityPool.swapFee(amountIn, feeBps, totalShares);
+        BigDecimal net = amountIn.subtract(fee);
+        if (net.signum() <= 0) {
+            return null;
+        }
+        BigDecimal out = order.isBuy() ? PoolMath.amountOut(net, usdc, cct) : PoolMath.amountOut(net, cct, usdc);
+        return out.signum() > 0 ? new LimitOrderFill(amountIn, fee, net, out) : null;
+    }
+}
@@ -0,0 +1,290 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LimitOrder;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.example.repository.LimitOrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * 限價單：掛單時保管投入的資產並放入 {@link LimitOrderBook}，池子每發布一個新快照就比較限價簿的最優價位，
+ * 有掛單可成交時交由撮合線程在池子的寫入路徑中一次處理：依價格、時間優先逐張對恆定乘積曲線成交，
+ * 每張單只成交到成交後匯率恰好到達限價為止，剩餘部分繼續掛著。
+ * 掛單、撤單與撮合都經由 {@link CarbonExchangeService#withPool}，與該池子的其他寫入依序執行。
+ * 掛單同時保存在 limit_orders 資料表，啟動時載入仍在掛單中的部分。
+ */
+@Service
+@RequiredArgsConstructor
+public class LimitOrderService {
+    private static final Logger logger = LoggerFactory.getLogger(LimitOrderService.class);
+
+    public static final int DEFAULT_BOOK_DEPTH = 20;
+    public static final int MAX_BOOK_DEPTH = 500;
+    // 單次撮合的成交上限，買賣兩邊交錯成交時避免長時間佔用池子；未處理完的會由下一個快照再觸發
+    private static final int MAX_FILLS_PER_PASS = 256;
+    // 撮合失敗後暫停觸發的時間，避免持續失敗時反覆重試
+    private static final long RETRY_BACKOFF_MS = 1000;
+
+    private final CarbonExchangeService exchangeService;
+    private final LimitOrderBook limitOrderBook;
+    private final LimitOrderRepository limitOrderRepository;
+    private final PoolSnapshotStore poolSnapshotStore;
+    private final CarbonCreditService carbonCreditService;
+    private final USDCService usdcService;
+    private final TransactionJournal transactionJournal;
+    private final CandleAggregator candleAggregator;
+    private final MarketChangeFeed marketChangeFeed;
+    private final LedgerLogger ledgerLogger;
+
+    private final Set<Long> pendingMatches = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<Long, Long> retryAfter = new ConcurrentHashMap<>();
+    private ExecutorService matcher;
+
+    @PostConstruct
+    public void start() {
+        Map<Long, List<LimitOrder>> open = limitOrderRepository.findByStatusOrderByIdAsc(LimitOrder.Status.OPEN).stream()
+            .collect(Collectors.groupingBy(LimitOrder::getExchangeId));
+        open.forEach(limitOrderBook::replace);
+        if (!open.isEmpty()) {
+            logger.info("已載入 {} 個池子的限價單", open.size());
+        }
+        matcher = Executors.newSingleThreadExecutor(r -> new Thread(r, "limit-order-matcher"));
+        poolSnapshotStore.addListener(this::onPoolChanged);
+    }
+
+    @PreDestroy
+    public void stop() {
+        matcher.shutdown();
+    }
+
+    /**
+     * 掛出限價單：從交易者餘額扣出投入的資產保管，匯率已可成交時立即撮合。
+     */
+    public LimitOrder placeOrder(Long exchangeId, String trader, LimitOrder.Side side,
+                                 BigDecimal amount, BigDecimal limitRate) {
+        if (amount == null || amount.signum() <= 0) {
+            throw new IllegalArgumentException("Amount must be positive");
+        }
+        if (limitRate == null || limitRate.signum() <= 0) {
+            throw new IllegalArgumentException("Limit rate must be positive");
+        }
+        return exchangeService.withPool(exchangeId, pool -> {
+            LimitOrder order = new LimitOrder(pool.getExchangeId(), trader, side, amount, limitRate);
+            if (order.isBuy()) {
+                usdcService.debit(trader, amount);
+            } else {
+                carbonCreditService.debit(exchangeService.tokenFor(pool).getId(), trader, amount);
+            }
+            marketChangeFeed.balanceChanged(trader);
+            reloadOnRollback(pool.getExchangeId());
+            limitOrderBook.add(limitOrderRepository.save(order));
+            logger.info("限價單已掛出 - id: {}, trader: {}, side: {}, amount: {}, limit: {}",
+                order.getId(), trader, side, amount, limitRate);
+            if (!pool.isBatchAuction()) {
+                matchOrders(pool);
+            }
+            return order;
+        });
+    }
+
+    /**
+     * 撤銷仍在掛單中的限價單，退回尚未成交的投入。
+     */
+    public LimitOrder cancelOrder(Long orderId, String trader) {
+        LimitOrder stored = limitOrderRepository.findById(orderId)
+            .orElseThrow(() -> new IllegalArgumentException("Order not found: " + orderId));
+        if (!stored.getTrader().equals(trader)) {
+            throw new IllegalArgumentException("Order " + orderId + " does not belong to " + trader);
+        }
+        return exchangeService.withPool(stored.getExchangeId(), pool -> {
+            LimitOrder order = limitOrderBook.get(pool.getExchangeId(), orderId);
+            if (order == null || !order.isOpen()) {
+                throw new IllegalStateException("Order " + orderId + " is not open");
+            }
+            if (order.isBuy()) {
+                usdcService.credit(trader, order.getRemaining());
+            } else {
+                carbonCreditService.credit(exchangeService.tokenFor(pool).getId(), trader, order.getRemaining());
+            }
+            marketChangeFeed.balanceChanged(trader);
+            reloadOnRollback(pool.getExchangeId());
+            order.setStatus(LimitOrder.Status.CANCELLED);
+            order.setUpdatedAt(LocalDateTime.now());
+            limitOrderRepository.save(order);
+            limitOrderBook.remove(order);
+            return order;
+        });
+    }
+
+    public List<LimitOrder> getOrders(String trader, LimitOrder.Status status) {
+        return limitOrderRepository.findByTraderAndStatusOrderByIdAsc(trader, status);
+    }
+
+    /**
+     * 限價簿兩邊最優的 depth 個價位。
+     */
+    public Map<String, Object> getBook(Long exchangeId, int depth) {
+        if (depth <= 0 || depth > MAX_BOOK_DEPTH) {
+            throw new IllegalArgumentException("depth must be between 1 and " + MAX_BOOK_DEPTH);
+        }
+        PoolSnapshot snapshot = exchangeService.getPoolSnapshot(exchangeId);
+        Map<String, Object> book = new LinkedHashMap<>();
+        book.put("exchangeId", snapshot.getExchangeId());
+        book.put("exchangeRate", snapshot.getExchangeRate());
+        book.put("bids", limitOrderBook.bids(snapshot.getExchangeId(), depth));
+        book.put("asks", limitOrderBook.asks(snapshot.getExchangeId(), depth));
+        return book;
+    }
+
+    /**
+     * 快照發布時在發布的線程上呼叫：只檢查兩邊最優的掛單，有可成交的掛單時才交給撮合線程，同一個池子的觸發合併為一次。
+     * 沒有成交的撮合不寫回池子也不發布快照，不會再觸發自己。
+     */
+    private void onPoolChanged(PoolSnapshot snapshot) {
+        Long exchangeId = snapshot.getExchangeId();
+        if (snapshot.isBatchAuction() || !limitOrderBook.hasExecutable(snapshot)) {
+            return;
+        }
+        Long after = retryAfter.get(exchangeId);
+        if (after != null && System.currentTimeMillis() < after) {
+            return;
+        }
+        if (pendingMatches.add(exchangeId)) {
+            matcher.execute(() -> {
+                pendingMatches.remove(exchangeId);
+                try {
+                    exchangeService.withPool(exchangeId, pool -> pool.isBatchAuction() ? 0 : matchOrders(pool), fills -> fills > 0);
+                } catch (RuntimeException e) {
+                    logger.error("撮合限價單失敗，exchangeId: {}", exchangeId, e);
+                    retryAfter.put(exchangeId, System.currentTimeMillis() + RETRY_BACKOFF_MS);
+                }
+            });
+        }
+    }
+
+    /**
+     * 在修改記憶體中的限價簿之前呼叫（仍在池子的寫入交易中）。交易回滾時掛單物件可能已被修改，
+     * 提交失敗後由撮合線程在池子的寫入路徑中重新由資料表載入該池子的限價簿。每個交易只註冊一次。
+     */
+    private void reloadOnRollback(Long exchangeId) {
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, exchangeId);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(LimitOrderService.this);
+                if (status != STATUS_COMMITTED) {
+                    matcher.execute(() -> reload(exchangeId));
+                }
+            }
+        });
+    }
+
+    private void reload(Long exchangeId) {
+        try {
+            exchangeService.withPool(exchangeId, pool -> {
+                limitOrderBook.replace(pool.getExchangeId(), limitOrderRepository.findByExchangeIdAndStatusOrderByIdAsc(
+                    pool.getExchangeId(), LimitOrder.Status.OPEN));
+                return null;
+            });
+            logger.warn("限價簿的寫入已回滾，已重新載入，exchangeId: {}", exchangeId);
+        } catch (RuntimeException e) {
+            logger.error("重新載入限價簿失敗，exchangeId: {}", exchangeId, e);
+        }
+    }
+
+    /**
+     * 依價格、時間優先交錯處理兩邊的最優掛單，直到兩邊都無法再成交；回傳成交次數。
+     */
+    private int matchOrders(LiquidityPool pool) {
+        int fills = 0;
+        while (fills < MAX_FILLS_PER_PASS) {
+            int before = fills;
+            LimitOrder bid = limitOrderBook.bestBid(pool.getExchangeId());
+            if (bid != null && fillBuy(pool, bid)) {
+                fills++;
+            }
+            LimitOrder ask = limitOrderBook.bestAsk(pool.getExchangeId());
+            if (ask != null && fillSell(pool, ask)) {
+                fills++;
+            }
+            if (fills == before) {
+                break;
+            }
+        }
+        if (fills > 0) {
+            logger.info("限價單撮合完成 - exchangeId: {}, 成交次數: {}, 匯率: {}",
+                pool.getExchangeId(), fills, pool.calculateExchangeRate());
+        }
+        return fills;
+    }
+
+    /**
+     * 買單投入 USDC 換取 CCT，成交數量見 {@link LimitOrderFill}。
+     */
+    private boolean fillBuy(LiquidityPool pool, LimitOrder order) {
+        LimitOrderFill fill = LimitOrderFill.of(order, pool);
+        if (fill == null) {
+            return false;
+        }
+        carbonCreditService.credit(exchangeService.tokenFor(pool).getId(), order.getTrader(), fill.getAmountOut());
+        pool.setUsdcReserves(pool.getUsdcReserves().add(fill.getNet()));
+        pool.setCctReserves(pool.getCctReserves().subtract(fill.getAmountOut()));
+        pool.accrueUsdcFee(fill.getFee());
+        recordFill(pool, order, fill, "USDC");
+        candleAggregator.recordSwap(pool.getExchangeId(), fill.getAmountIn(), fill.getAmountOut());
+        return true;
+    }
+
+    /**
+     * 賣單投入 CCT 換取 USDC，成交數量見 {@link LimitOrderFill}。
+     */
+    private boolean fillSell(LiquidityPool pool, LimitOrder order) {
+        LimitOrderFill fill = LimitOrderFill.of(order, pool);
+        if (fill == null) {
+            return false;
+        }
+        usdcService.credit(order.getTrader(), fill.getAmountOut());
+        pool.setCctReserves(pool.getCctReserves().add(fill.getNet()));
+        pool.setUsdcReserves(pool.getUsdcReserves().subtract(fill.getAmountOut()));
+        pool.accrueCctFee(fill.getFee());
+        recordFill(pool, order, fill, "CCT");
+        candleAggregator.recordSwap(pool.getExchangeId(), fill.getAmountOut(), fill.getAmountIn());
+        return true;
+    }
+
+    private void recordFill(LiquidityPool pool, LimitOrder order, LimitOrderFill fill, String token) {
+        reloadOnRollback(pool.getExchangeId());
+        BigDecimal amountIn = fill.getAmountIn();
+        BigDecimal out = fill.getAmountOut();
+        order.fill(amountIn, out);
+        limitOrderRepository.save(order);
+        if (!order.isOpen()) {
+            limitOrderBook.remove(order);
+        }
+        marketChangeFeed.balanceChanged(order.getTrader());
+        transactionJournal.record("SWAP", order.getTrader(), CarbonExchangeService.poolAddress(pool), token, amountIn, out);
+        ledgerLogger.swap(pool, order.getTrader(), token, amountIn, out, fill.getFee());
+    }
+}
@@ -0,0 +1,70 @@
+package org.example.service;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 記錄自上次推送以來有變動的池子與地址。同一個池子或地址在一個推送週期內無論變動幾次只記錄一次，
+ * 推送端每個週期取走一次並讀取最新狀態，因此連續的交換只會產生一則推送訊息。
+ */
+@Component
+public class MarketChangeFeed {
+    private final Set<Long> changedPools = ConcurrentHashMap.newKeySet();
+    private final Set<String> changedAddresses = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 池子有新的已提交快照時呼叫。
+     */
+    public void poolChanged(Long exchangeId) {
+        changedPools.add(exchangeId);
+    }
+
+    /**
+     * 地址的餘額或交易紀錄有變動時呼叫；在交易中呼叫時於提交後才記錄，回滾的變動不會推送。
+     */
+    public void balanceChanged(String... addresses) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    record(addresses);
+                }
+            });
+        } else {
+            record(addresses);
+        }
+    }
+
+    public List<Long> drainPools() {
+        return drain(changedPools);
+    }
+
+    public List<String> drainAddresses() {
+        return drain(changedAddresses);
+    }
+
+    private void record(String... addresses) {
+        for (String address : addresses) {
+            if (address != null) {
+                changedAddresses.add(address);
+            }
+        }
+    }
+
+    // 逐一移除而不是整個替換，取走後才加入的變動會留到下一個週期
+    private static <T> List<T> drain(Set<T> changes) {
+        List<T> drained = new ArrayList<>();
+        for (Iterator<T> it = changes.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+        return drained;
+    }
+}
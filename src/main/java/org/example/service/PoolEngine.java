@@ -0,0 +1,329 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LiquidityPool;
+import org.example.repository.LiquidityPoolRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * 單寫者流動性池引擎：每個池子由各自的序列執行器持有記憶體中的狀態並依序執行交換與流動性操作，
+ * 不同池子在共用的工作線程上並行執行；池子資料表則由背景線程定期合併寫回（write-behind）。
+ */
+@Component
+@RequiredArgsConstructor
+public class PoolEngine {
+    private static final Logger logger = LoggerFactory.getLogger(PoolEngine.class);
+
+    private final LiquidityPoolRepository liquidityPoolRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionJournal transactionJournal;
+
+    @Value("${exchange.engine.enabled:false}")
+    private boolean enabled;
+
+    @Value("${exchange.engine.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    private ExecutorService workers;
+    private ScheduledExecutorService flusher;
+    private final ConcurrentMap<Long, PoolSlot> slots = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                r -> new Thread(r, "pool-sequencer-" + threadCount.incrementAndGet()));
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "pool-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushAll, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("流動性池引擎已啟動，寫回間隔 {} ms", flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!enabled) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushIntervalMs * 10, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+        workers.shutdown();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 在池子的序列執行器上於單一資料庫交易中執行操作；操作失敗時回滾記憶體中的池子狀態。
+     * 池子本身不在此交易中寫入，而是標記為待寫回。
+     * 序列執行器不等待交易紀錄寫入，由呼叫端的線程在回傳前等待。
+     */
+    public <T> T execute(Long exchangeId, Function<LiquidityPool, T> operation) {
+        return execute(exchangeId, operation, result -> true);
+    }
+
+    /**
+     * 同 {@link #execute(Long, Function)}，但只有 modified 對結果成立時才把池子標記為待寫回。
+     */
+    public <T> T execute(Long exchangeId, Function<LiquidityPool, T> operation, Predicate<? super T> modified) {
+        PoolSlot slot = slot(exchangeId);
+        TransactionJournal.Deferred<T> result = slot.call(() -> transactionJournal.deferringFlush(() -> {
+            LiquidityPool current = slot.load();
+            LiquidityPool before = current.snapshot();
+            try {
+                T applied = transactionTemplate.execute(status -> operation.apply(current));
+                if (modified.test(applied)) {
+                    slot.dirty = true;
+                }
+                return applied;
+            } catch (RuntimeException e) {
+                current.restore(before);
+                throw e;
+            }
+        }));
+        return transactionJournal.awaitFlushed(result);
+    }
+
+    /**
+     * 在多個池子上以單一資料庫交易執行操作；操作失敗時回滾所有池子的記憶體狀態。
+     * 依 exchangeId 由小到大逐一佔用各池子的序列執行器，全部佔用後在呼叫端的線程上執行。
+     * 佔用期間各池子的其他操作排隊等待但不佔用工作線程；所有呼叫以相同順序佔用，不會互相等待成環。
+     */
+    public <T> T executeAll(Collection<Long> exchangeIds, Function<Map<Long, LiquidityPool>, T> operation) {
+        List<PoolSlot> held = new ArrayList<>();
+        TransactionJournal.Deferred<T> result;
+        try {
+            for (Long id : new TreeSet<>(exchangeIds)) {
+                PoolSlot slot = slot(id);
+                slot.executor.hold().join();
+                held.add(slot);
+            }
+            result = transactionJournal.deferringFlush(() -> {
+                Map<Long, LiquidityPool> pools = new LinkedHashMap<>();
+                Map<Long, LiquidityPool> before = new HashMap<>();
+                for (PoolSlot slot : held) {
+                    LiquidityPool current = slot.load();
+                    pools.put(slot.exchangeId, current);
+                    before.put(slot.exchangeId, current.snapshot());
+                }
+                try {
+                    T applied = transactionTemplate.execute(status -> operation.apply(pools));
+                    held.forEach(slot -> slot.dirty = true);
+                    return applied;
+                } catch (RuntimeException e) {
+                    pools.forEach((id, pool) -> pool.restore(before.get(id)));
+                    throw e;
+                }
+            });
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).executor.release();
+            }
+        }
+        return transactionJournal.awaitFlushed(result);
+    }
+
+    /**
+     * 讀取池子目前狀態的副本，與該池子排序中的寫入操作保持先後順序。
+     */
+    public LiquidityPool read(Long exchangeId) {
+        PoolSlot slot = slot(exchangeId);
+        return slot.call(() -> slot.load().snapshot());
+    }
+
+    /**
+     * 佔用所有池子的序列執行器，把待寫回的池子狀態寫入資料表後執行 work，之後才放行排隊的操作；
+     * 用於要求資料表與記憶體狀態一致的讀取（例如檢查點）。查詢與寫回在獨立的交易中提交，
+     * work 可以在呼叫端已開始、尚未讀取的交易中建立讀取快照。
+     */
+    public void quiesce(Runnable work) {
+        TransactionTemplate separate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        separate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        TreeSet<Long> exchangeIds = new TreeSet<>(slots.keySet());
+        separate.executeWithoutResult(status ->
+            liquidityPoolRepository.findAll().forEach(pool -> exchangeIds.add(pool.getExchangeId())));
+        List<PoolSlot> held = new ArrayList<>();
+        try {
+            for (Long id : exchangeIds) {
+                PoolSlot slot = slot(id);
+                slot.executor.hold().join();
+                held.add(slot);
+            }
+            separate.executeWithoutResult(status -> held.stream()
+                .filter(slot -> slot.dirty)
+                .forEach(slot -> liquidityPoolRepository.writeState(slot.pool.snapshot())));
+            held.forEach(slot -> slot.dirty = false);
+            work.run();
+        } finally {
+            for (int i = held.size() - 1; i >= 0; i--) {
+                held.get(i).executor.release();
+            }
+        }
+    }
+
+    /**
+     * 丟棄記憶體中的池子狀態，之後的操作重新從資料表載入；只應在沒有進行中的操作時呼叫（例如啟動時載入檢查點後）。
+     */
+    public void reset() {
+        slots.clear();
+    }
+
+    private PoolSlot slot(Long exchangeId) {
+        return slots.computeIfAbsent(exchangeId, PoolSlot::new);
+    }
+
+    private void flushAll() {
+        slots.values().forEach(this::flush);
+    }
+
+    private void flush(PoolSlot slot) {
+        LiquidityPool pending;
+        try {
+            pending = slot.call(() -> {
+                if (!slot.dirty) {
+                    return null;
+                }
+                slot.dirty = false;
+                return slot.pool.snapshot();
+            });
+        } catch (RuntimeException e) {
+            logger.error("讀取待寫回的池子狀態失敗，exchangeId: {}", slot.exchangeId, e);
+            return;
+        }
+        if (pending == null) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> liquidityPoolRepository.writeState(pending));
+        } catch (RuntimeException e) {
+            logger.error("寫回流動性池失敗，下次重試，exchangeId: {}", slot.exchangeId, e);
+            slot.executor.execute(() -> slot.dirty = true);
+        }
+    }
+
+    /**
+     * 單一池子的狀態；pool 與 dirty 只在該池子的序列執行器中讀寫。
+     */
+    private final class PoolSlot {
+        private final Long exchangeId;
+        private final SerialExecutor executor = new SerialExecutor(workers);
+        private LiquidityPool pool;
+        private boolean dirty;
+
+        private PoolSlot(Long exchangeId) {
+            this.exchangeId = exchangeId;
+        }
+
+        private LiquidityPool load() {
+            if (pool == null) {
+                pool = liquidityPoolRepository.findByExchangeId(exchangeId)
+                    .orElseThrow(() -> new RuntimeException("No liquidity pool found for exchange " + exchangeId));
+            }
+            return pool;
+        }
+
+        private <T> T call(Supplier<T> task) {
+            try {
+                return CompletableFuture.supplyAsync(task, executor).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+
+    /**
+     * 依提交順序逐一在共用執行器上執行任務，同一時間最多只有一個任務在執行。
+     */
+    private static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor delegate;
+        private Runnable active;
+
+        private SerialExecutor(Executor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        /**
+         * 排入一個佔用標記：輪到它時回傳的 future 完成，之後的任務暫停到 {@link #release} 才繼續。
+         * 標記本身立即結束，佔用期間不佔用工作線程。
+         */
+        private CompletableFuture<Void> hold() {
+            CompletableFuture<Void> held = new CompletableFuture<>();
+            synchronized (this) {
+                tasks.add(() -> held.complete(null));
+                if (active == null) {
+                    scheduleNext();
+                }
+            }
+            return held;
+        }
+
+        private void release() {
+            scheduleNext();
+        }
+
+        private synchronized void scheduleNext() {
+            active = tasks.poll();
+            if (active != null) {
+                delegate.execute(active);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LiquidityPool;
+import org.example.repository.LiquidityPoolRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 以 exchangeId 為鍵的流動性池目錄。未指定 exchangeId 的請求使用最早建立的池子。
+ */
+@Component
+@RequiredArgsConstructor
+public class PoolRegistry {
+    private final LiquidityPoolRepository liquidityPoolRepository;
+
+    // exchangeId -> 池子主鍵，池子建立後不會刪除，因此只需快取已確認存在的鍵
+    private final ConcurrentMap<Long, Long> pools = new ConcurrentHashMap<>();
+    private volatile Long defaultExchangeId;
+    private volatile boolean loadedAll;
+
+    /**
+     * 確認池子存在並回傳其 exchangeId；傳入 null 時回傳預設池子。
+     */
+    public Long resolve(Long exchangeId) {
+        if (exchangeId == null) {
+            return defaultExchangeId();
+        }
+        if (!pools.containsKey(exchangeId)) {
+            LiquidityPool pool = liquidityPoolRepository.findByExchangeId(exchangeId)
+                .orElseThrow(() -> new RuntimeException("No liquidity pool found for exchange " + exchangeId));
+            register(pool);
+        }
+        return exchangeId;
+    }
+
+    public void register(LiquidityPool pool) {
+        pools.put(pool.getExchangeId(), pool.getId());
+    }
+
+    /**
+     * 所有池子的 exchangeId，由小到大排序；第一次呼叫時從資料庫載入，之後只讀取快取。
+     */
+    public List<Long> exchangeIds() {
+        if (!loadedAll) {
+            liquidityPoolRepository.findAll().forEach(this::register);
+            loadedAll = true;
+        }
+        List<Long> ids = new ArrayList<>(pools.keySet());
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * 清除快取，之後重新從資料庫解析；資料表被整批取代（例如載入檢查點）後呼叫。
+     */
+    public void reset() {
+        pools.clear();
+        defaultExchangeId = null;
+        loadedAll = false;
+    }
+
+    private Long defaultExchangeId() {
+        Long id = defaultExchangeId;
+        if (id == null) {
+            LiquidityPool pool = liquidityPoolRepository.findFirstByOrderByIdAsc()
+                .orElseThrow(() -> new RuntimeException("No liquidity pool found"));
+            register(pool);
+            id = pool.getExchangeId();
+            defaultExchangeId = id;
+        }
+        return id;
+    }
+}
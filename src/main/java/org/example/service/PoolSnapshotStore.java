@@ -0,0 +1,91 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 保存每個池子最新已提交狀態的不可變快照，讀取端點直接從這裡取得資料而不查詢資料庫。
+ */
+@Component
+@RequiredArgsConstructor
+public class PoolSnapshotStore {
+    private final MarketChangeFeed marketChangeFeed;
+    private final PriceOracle priceOracle;
+    private final ConcurrentMap<Long, PoolSnapshot> snapshots = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final List<Consumer<PoolSnapshot>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 註冊在池子有較新的快照發布時呼叫的監聽器；在發布的線程上執行，不應阻塞。
+     */
+    public void addListener(Consumer<PoolSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 回傳池子的最新快照；尚未有快照時以 loader 載入一次。
+     * 載入的快照版本為 0，不會覆蓋同時提交的寫入所發布的快照。
+     */
+    public PoolSnapshot get(Long exchangeId, Function<Long, LiquidityPool> loader) {
+        PoolSnapshot snapshot = snapshots.get(exchangeId);
+        if (snapshot != null) {
+            return snapshot;
+        }
+        return publish(PoolSnapshot.of(loader.apply(exchangeId), 0));
+    }
+
+    /**
+     * 在池子被寫入後呼叫（仍持有該池子的寫入權）：立即分配版本號並擷取狀態，
+     * 於目前交易提交後才發布；沒有交易時立即發布。
+     */
+    public void publishAfterCommit(LiquidityPool pool) {
+        PoolSnapshot snapshot = PoolSnapshot.of(pool, nextVersion(pool.getExchangeId()));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(snapshot);
+                    marketChangeFeed.poolChanged(snapshot.getExchangeId());
+                }
+            });
+        } else {
+            publish(snapshot);
+            marketChangeFeed.poolChanged(snapshot.getExchangeId());
+        }
+    }
+
+    /**
+     * 丟棄所有快照，之後的讀取重新從資料庫載入；資料表被整批取代（例如載入檢查點）後呼叫。
+     * 版本號繼續遞增，重設前分配版本的提交回呼不會覆蓋之後發布的快照。
+     */
+    public void reset() {
+        snapshots.clear();
+    }
+
+    private PoolSnapshot publish(PoolSnapshot snapshot) {
+        // 提交回呼的順序不一定與寫入順序相同，只保留版本號較新的快照
+        PoolSnapshot published = snapshots.merge(snapshot.getExchangeId(), snapshot,
+            (current, candidate) -> candidate.getVersion() > current.getVersion() ? candidate : current);
+        if (published == snapshot) {
+            priceOracle.record(snapshot);
+            listeners.forEach(listener -> listener.accept(snapshot));
+        }
+        return published;
+    }
+
+    private long nextVersion(Long exchangeId) {
+        return versions.computeIfAbsent(exchangeId, id -> new AtomicLong()).incrementAndGet();
+    }
+}
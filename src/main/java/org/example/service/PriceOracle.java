@@ -0,0 +1,151 @@
+package org.example.service;
+
+import org.example.model.PoolSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 時間加權平均價格（TWAP）預言機。每個池子維護價格對時間的累計值
+ * （Σ 匯率 × 持續毫秒），每次池子狀態提交時累加並在固定容量的環形緩衝區記錄觀測點；
+ * 任意區間的 TWAP 為兩端累計值之差除以區間長度，端點以二分搜尋定位，操縱單筆交換只能影響極短的時間權重。
+ * <p>
+ * 觀測點只存兩個 long 陣列（時間與累計值），記錄時不配置物件。同一個最小間隔內的多次更新
+ * 只推進累計值而不新增觀測點，查詢落在兩個觀測點之間時線性內插。
+ * 累計值以 long 保存並允許溢位環繞，兩個觀測點之差在區間內的真實值不超過 long 範圍時仍然正確。
+ * 觀測只保存在記憶體中，重新啟動後從第一次載入或寫入池子時重新累計。
+ */
+@Component
+public class PriceOracle {
+    // 匯率以 10^-6 USDC 為單位保存
+    private static final int PRICE_SCALE = 6;
+
+    @Value("${exchange.oracle.capacity:86400}")
+    private int capacity;
+
+    @Value("${exchange.oracle.min-interval-ms:1000}")
+    private long minIntervalMs;
+
+    private final ConcurrentMap<Long, ObservationRing> rings = new ConcurrentHashMap<>();
+
+    /**
+     * 記錄池子新發布的快照。提交回呼可能亂序，版本號不大於已記錄版本的快照會被忽略。
+     */
+    public void record(PoolSnapshot snapshot) {
+        long price = snapshot.getExchangeRate().movePointRight(PRICE_SCALE).setScale(0, RoundingMode.DOWN).longValue();
+        rings.computeIfAbsent(snapshot.getExchangeId(), id -> new ObservationRing(capacity, minIntervalMs))
+            .record(snapshot.getVersion(), System.currentTimeMillis(), price);
+    }
+
+    /**
+     * 池子在 [fromMillis, toMillis] 區間的時間加權平均匯率；區間早於最舊的觀測點時拋出 IllegalArgumentException。
+     */
+    public BigDecimal twap(Long exchangeId, long fromMillis, long toMillis) {
+        if (toMillis <= fromMillis) {
+            throw new IllegalArgumentException("TWAP window must be positive");
+        }
+        ObservationRing ring = rings.get(exchangeId);
+        if (ring == null) {
+            throw new IllegalArgumentException("No price observations for exchange " + exchangeId);
+        }
+        return BigDecimal.valueOf(ring.average(fromMillis, toMillis), PRICE_SCALE);
+    }
+
+    private static final class ObservationRing {
+        private final long[] times;
+        private final long[] cumulatives;
+        private final long minIntervalMs;
+        // 下一個寫入位置與目前的觀測點數量
+        private int head;
+        private int size;
+
+        // 最新一次更新後的累計器，總是精確推進到 currentTime
+        private long lastVersion = -1;
+        private long currentTime;
+        private long currentCumulative;
+        private long currentPrice;
+
+        private ObservationRing(int capacity, long minIntervalMs) {
+            this.times = new long[capacity];
+            this.cumulatives = new long[capacity];
+            this.minIntervalMs = minIntervalMs;
+        }
+
+        private synchronized void record(long version, long now, long price) {
+            if (version <= lastVersion) {
+                return;
+            }
+            lastVersion = version;
+            if (size == 0) {
+                currentTime = now;
+                currentPrice = price;
+                append(now, 0);
+                return;
+            }
+            if (now > currentTime) {
+                currentCumulative += currentPrice * (now - currentTime);
+                currentTime = now;
+            }
+            currentPrice = price;
+            if (currentTime - times[physical(size - 1)] >= minIntervalMs) {
+                append(currentTime, currentCumulative);
+            }
+        }
+
+        private void append(long time, long cumulative) {
+            times[head] = time;
+            cumulatives[head] = cumulative;
+            head = (head + 1) % times.length;
+            if (size < times.length) {
+                size++;
+            }
+        }
+
+        private synchronized long average(long from, long to) {
+            if (size == 0 || from < times[physical(0)]) {
+                throw new IllegalArgumentException("Not enough price history for the requested window");
+            }
+            return (cumulativeAt(to) - cumulativeAt(from)) / (to - from);
+        }
+
+        private long cumulativeAt(long t) {
+            if (t >= currentTime) {
+                return currentCumulative + currentPrice * (t - currentTime);
+            }
+            int last = physical(size - 1);
+            if (t >= times[last]) {
+                return interpolate(times[last], cumulatives[last], currentTime, currentCumulative, t);
+            }
+            // 找出時間不晚於 t 的最後一個觀測點
+            int low = 0;
+            int high = size - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (times[physical(mid)] <= t) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            int i = physical(low);
+            int next = physical(low + 1);
+            return interpolate(times[i], cumulatives[i], times[next], cumulatives[next], t);
+        }
+
+        private static long interpolate(long t0, long c0, long t1, long c1, long t) {
+            if (t == t0 || t1 == t0) {
+                return c0;
+            }
+            return c0 + (long) ((double) (c1 - c0) * (t - t0) / (t1 - t0));
+        }
+
+        // 第 k 舊的觀測點在陣列中的位置
+        private int physical(int k) {
+            return (head - size + k + times.length) % times.length;
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package org.example.service;
+
+import io.micrometer.core.annotation.Timed;
+import lombok.RequiredArgsConstructor;
+import org.example.math.Fixed128;
+import org.example.math.PoolMath;
+import org.example.metrics.ExchangeMetrics;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.example.model.SwapRoute;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 跨池子的交換路由。每個池子是 USDC 與一種碳權代幣之間的一條邊，路由在記憶體中的圖上
+ * 以深度優先搜尋列舉不重複經過同一資產、最多 maxHops 段的路徑，依各池子最新的快照以恆定乘積公式（含交換費用）
+ * 計算輸出，選出輸出最多的路徑。圖的拓撲只在新增池子時重建，儲備直接讀取 {@link PoolSnapshotStore} 的快照，
+ * 報價不查詢資料庫。批次拍賣模式的池子不即時成交，搜尋時略過；路徑上每一段的報價都取自搜尋當下讀到的同一份快照。
+ * 搜尋中的數量以 {@link Fixed128} 逐段傳遞、以快照預先轉換的儲備報價，列舉路徑時不配置數值物件。
+ * 執行時在所有經過的池子上以單一交易依序成交，任何一段失敗或最終輸出低於 minAmountOut 時全部回滾。
+ */
+@Service
+@RequiredArgsConstructor
+public class SwapRouter {
+    public static final String USDC = "USDC";
+
+    private final CarbonExchangeService exchangeService;
+    private final PoolRegistry poolRegistry;
+    private final USDCService usdcService;
+    private final CarbonCreditService carbonCreditService;
+    private final TransactionJournal transactionJournal;
+    private final CandleAggregator candleAggregator;
+    private final MarketChangeFeed marketChangeFeed;
+    private final LedgerLogger ledgerLogger;
+
+    @Value("${exchange.router.max-hops:3}")
+    private int maxHops;
+
+    private volatile Graph graph = new Graph(Collections.emptyMap());
+
+    /**
+     * 以目前的池子狀態為 amountIn 的 tokenIn 找出換得最多 tokenOut 的路徑；沒有可用路徑時拋出 IllegalArgumentException。
+     */
+    public SwapRoute quote(String tokenIn, String tokenOut, BigDecimal amountIn, Integer hops) {
+        String from = normalize(tokenIn);
+        String to = normalize(tokenOut);
+        if (from.equals(to)) {
+            throw new IllegalArgumentException("tokenIn and tokenOut must differ");
+        }
+        if (amountIn == null || amountIn.signum() <= 0) {
+            throw new IllegalArgumentException("amountIn must be positive");
+        }
+        if (!Fixed128.fits(amountIn)) {
+            throw new IllegalArgumentException("amountIn must have at most 18 decimal places and 20 integer digits");
+        }
+        int limit = hops == null ? maxHops : hops;
+        if (limit < 1 || limit > maxHops) {
+            throw new IllegalArgumentException("maxHops must be between 1 and " + maxHops);
+        }
+        Graph current = graph();
+        Search search = new Search(current, to, limit);
+        search.visited.add(from);
+        search.amounts[0].set(amountIn);
+        search.run(from, 0, limit);
+        if (search.bestPath == null) {
+            throw new IllegalArgumentException("No route from " + from + " to " + to);
+        }
+        // 沿選出的路徑重算一次，只有回傳的每段數量轉換為 BigDecimal
+        List<SwapRoute.Hop> route = new ArrayList<>(search.bestPath.size());
+        String asset = from;
+        BigDecimal amount = amountIn;
+        for (int i = 0; i < search.bestPath.size(); i++) {
+            Long exchangeId = search.bestPath.get(i);
+            String next = current.other(exchangeId, asset);
+            BigDecimal out = search.snapshots.get(exchangeId)
+                .quote(USDC.equals(asset), search.amounts[i], search.amounts[i + 1])
+                .toBigDecimal();
+            route.add(new SwapRoute.Hop(exchangeId, asset, next, amount, out));
+            asset = next;
+            amount = out;
+        }
+        return new SwapRoute(from, to, amountIn, amount, route);
+    }
+
+    /**
+     * 依報價選出的路徑在單一交易中成交：扣除 trader 的 tokenIn，依序經過每個池子，最後把 tokenOut 入帳。
+     * 中間資產只在池子之間移轉，不經過 trader 的餘額。
+     */
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "route_swap"}, histogram = true)
+    public SwapRoute swap(String trader, String tokenIn, String tokenOut, BigDecimal amountIn,
+                          BigDecimal minAmountOut, Integer hops) {
+        SwapRoute planned = quote(tokenIn, tokenOut, amountIn, hops);
+        List<Long> exchangeIds = planned.getHops().stream().map(SwapRoute.Hop::getExchangeId).collect(Collectors.toList());
+        return exchangeService.withPools(exchangeIds, pools -> {
+            transfer(trader, planned.getTokenIn(), amountIn.negate());
+            List<SwapRoute.Hop> executed = new ArrayList<>(planned.getHops().size());
+            BigDecimal amount = amountIn;
+            for (SwapRoute.Hop hop : planned.getHops()) {
+                LiquidityPool pool = pools.get(hop.getExchangeId());
+                BigDecimal out = applyHop(trader, pool, USDC.equals(hop.getTokenIn()), amount);
+                executed.add(new SwapRoute.Hop(hop.getExchangeId(), hop.getTokenIn(), hop.getTokenOut(), amount, out));
+                amount = out;
+            }
+            if (minAmountOut != null && amount.compareTo(minAmountOut) < 0) {
+                throw new RuntimeException("滑點過大");
+            }
+            transfer(trader, planned.getTokenOut(), amount);
+            marketChangeFeed.balanceChanged(trader);
+            return new SwapRoute(planned.getTokenIn(), planned.getTokenOut(), amountIn, amount, executed);
+        });
+    }
+
+    private BigDecimal applyHop(String trader, LiquidityPool pool, boolean usdcIn, BigDecimal amountIn) {
+        if (pool.isBatchAuction()) {
+            throw new IllegalStateException("Pool " + pool.getExchangeId() + " settles in batch auctions");
+        }
+        BigDecimal fee = pool.swapFee(amountIn);
+        BigDecimal net = amountIn.subtract(fee);
+        String pooled = CarbonExchangeService.poolAddress(pool);
+        if (usdcIn) {
+            BigDecimal out = PoolMath.amountOut(net, pool.getUsdcReserves(), pool.getCctReserves());
+            requirePositive(out, pool);
+            pool.setUsdcReserves(pool.getUsdcReserves().add(net));
+            pool.setCctReserves(pool.getCctReserves().subtract(out));
+            pool.accrueUsdcFee(fee);
+            transactionJournal.record("SWAP", trader, pooled, "USDC", amountIn, out);
+            candleAggregator.recordSwap(pool.getExchangeId(), amountIn, out);
+            ledgerLogger.swap(pool, trader, "USDC", amountIn, out, fee);
+            return out;
+        }
+        BigDecimal out = PoolMath.amountOut(net, pool.getCctReserves(), pool.getUsdcReserves());
+        requirePositive(out, pool);
+        pool.setCctReserves(pool.getCctReserves().add(net));
+        pool.setUsdcReserves(pool.getUsdcReserves().subtract(out));
+        pool.accrueCctFee(fee);
+        transactionJournal.record("SWAP", trader, pooled, "CCT", amountIn, out);
+        candleAggregator.recordSwap(pool.getExchangeId(), out, amountIn);
+        ledgerLogger.swap(pool, trader, "CCT", amountIn, out, fee);
+        return out;
+    }
+
+    private static void requirePositive(BigDecimal out, LiquidityPool pool) {
+        if (out.signum() <= 0) {
+            throw new RuntimeException("流動性池 " + pool.getExchangeId() + " 的輸出為 0");
+        }
+    }
+
+    // delta 為負時扣款，為正時入帳
+    private void transfer(String trader, String asset, BigDecimal delta) {
+        if (USDC.equals(asset)) {
+            if (delta.signum() < 0) {
+                usdcService.debit(trader, delta.negate());
+            } else {
+                usdcService.credit(trader, delta);
+            }
+        } else {
+            Long tokenId = Long.valueOf(asset);
+            if (delta.signum() < 0) {
+                carbonCreditService.debit(tokenId, trader, delta.negate());
+            } else {
+                carbonCreditService.credit(tokenId, trader, delta);
+            }
+        }
+    }
+
+    private static String normalize(String asset) {
+        if (asset == null || asset.trim().isEmpty()) {
+            throw new IllegalArgumentException("Token is required");
+        }
+        String trimmed = asset.trim();
+        if (USDC.equalsIgnoreCase(trimmed)) {
+            return USDC;
+        }
+        try {
+            return Long.valueOf(trimmed).toString();
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Token must be USDC or a carbon credit token id: " + asset);
+        }
+    }
+
+    /**
+     * 目前的圖；池子數量與目錄不一致時（有新建立的池子）才重建，已知池子的代幣不會改變。
+     */
+    private Graph graph() {
+        List<Long> exchangeIds = poolRegistry.exchangeIds();
+        Graph current = graph;
+        if (current.tokens.size() == exchangeIds.size()) {
+            return current;
+        }
+        synchronized (this) {
+            current = graph;
+            if (current.tokens.size() != exchangeIds.size()) {
+                Map<Long, String> tokens = new HashMap<>(current.tokens);
+                for (Long exchangeId : exchangeIds) {
+                    tokens.computeIfAbsent(exchangeId, id -> exchangeService.tokenFor(id).getId().toString());
+                }
+                current = new Graph(tokens);
+                graph = current;
+            }
+            return current;
+        }
+    }
+
+    private static final class Graph {
+        // 池子 -> 池子中的碳權代幣
+        private final Map<Long, String> tokens;
+        // 資產 -> 與它相連的池子
+        private final Map<String, List<Long>> adjacency = new HashMap<>();
+
+        private Graph(Map<Long, String> tokens) {
+            this.tokens = tokens;
+            tokens.forEach((exchangeId, token) -> {
+                adjacency.computeIfAbsent(USDC, a -> new ArrayList<>()).add(exchangeId);
+                adjacency.computeIfAbsent(token, a -> new ArrayList<>()).add(exchangeId);
+            });
+        }
+
+        private List<Long> adjacent(String asset) {
+            return adjacency.getOrDefault(asset, Collections.emptyList());
+        }
+
+        private String other(Long exchangeId, String asset) {
+            return USDC.equals(asset) ? tokens.get(exchangeId) : USDC;
+        }
+    }
+
+    /**
+     * 單次報價的搜尋狀態。
+     */
+    private final class Search {
+        private final Graph graph;
+        private final String target;
+        private final Set<String> visited = new HashSet<>();
+        private final Deque<Long> path = new ArrayDeque<>();
+        // 搜尋中讀到的快照，組出路徑時沿用，避免池子在搜尋後改為批次拍賣仍出現在路徑上
+        private final Map<Long, PoolSnapshot> snapshots = new HashMap<>();
+        // amounts[d] 為走過 d 段後的數量，每一層重複使用自己的實例
+        private final Fixed128[] amounts;
+        private final Fixed128 bestAmount = new Fixed128();
+        private List<Long> bestPath;
+
+        private Search(Graph graph, String target, int hops) {
+            this.graph = graph;
+            this.target = target;
+            this.amounts = new Fixed128[hops + 1];
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = new Fixed128();
+            }
+        }
+
+        private void run(String asset, int depth, int hopsLeft) {
+            for (Long exchangeId : graph.adjacent(asset)) {
+                String next = graph.other(exchangeId, asset);
+                if (visited.contains(next)) {
+                    continue;
+                }
+                boolean arrives = next.equals(target);
+                // 不是終點時，只有還能再走且下一個資產還有未走過的鄰居才值得計算
+                if (!arrives && (hopsLeft == 1 || !canContinue(next))) {
+                    continue;
+                }
+                PoolSnapshot snapshot = snapshots.computeIfAbsent(exchangeId, exchangeService::getPoolSnapshot);
+                if (snapshot.isBatchAuction() || snapshot.isEmpty()) {
+                    continue;
+                }
+                Fixed128 out = snapshot.quote(USDC.equals(asset), amounts[depth], amounts[depth + 1]);
+                if (out == null || out.isZero()) {
+                    continue;
+                }
+                path.addLast(exchangeId);
+                if (arrives) {
+                    if (out.compareTo(bestAmount) > 0) {
+                        bestAmount.set(out);
+                        bestPath = new ArrayList<>(path);
+                    }
+                } else {
+                    visited.add(next);
+                    run(next, depth + 1, hopsLeft - 1);
+                    visited.remove(next);
+                }
+                path.removeLast();
+            }
+        }
+
+        private boolean canContinue(String asset) {
+            for (Long exchangeId : graph.adjacent(asset)) {
+                if (!visited.contains(graph.other(exchangeId, asset))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
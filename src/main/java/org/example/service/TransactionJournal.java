@@ -0,0 +1,515 @@
+package org.example.service;
+
+import lombok.RequiredArgsConstructor;
+import org.example.model.Transaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 帳本異動的交易紀錄日誌。紀錄在業務交易提交後放入有界環形佇列，
+ * 由單一背景線程以 JDBC 批次寫入 transactions 資料表；同一批次涵蓋多個請求（group commit）。
+ * <p>
+ * 提交的線程在回應前等待自己的紀錄寫入完成（至少一次）：回應成功的異動一定已有紀錄。
+ * 等待逾時、被中斷、佇列持續滿載或紀錄無法寫入時，提交回呼丟出例外，請求回報失敗；
+ * 此時業務交易已經提交，客戶端應先查詢結果再決定是否重試。等待在交易的所有其他提交回呼之後進行，
+ * 快照發布等記憶體狀態的更新不受失敗影響。程序在紀錄寫入前終止時，這些請求同樣不會收到成功回應。
+ * <p>
+ * 批次寫入失敗時整批重試；連續失敗 {@value #MAX_BATCH_ATTEMPTS} 次後改為逐筆寫入，
+ * 仍然無法寫入的紀錄以 ERROR 寫入日誌，所屬的請求回報失敗，其餘紀錄照常寫入。
+ * 資料庫無法連線時逐筆寫入持續重試直到恢復。逐筆寫入時監聽器在儲存點內執行，
+ * 監聽器的失敗只回滾它自己的寫入並記錄錯誤，不影響紀錄本身。
+ * 寫入線程使用自己持有的連線：等待寫入的請求在提交回呼中仍佔用連線池的連線，
+ * 若寫入線程也向連線池借用，高並行時會因連線池耗盡而互相等待。
+ */
+@Component
+@RequiredArgsConstructor
+public class TransactionJournal {
+    private static final Logger logger = LoggerFactory.getLogger(TransactionJournal.class);
+
+    private static final String INSERT_SQL = "insert into transactions " +
+        "(from_address, to_address, amount, amount2, token_address, type, timestamp, status) " +
+        "values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final long RETRY_BACKOFF_MS = 200;
+    private static final int MAX_BATCH_ATTEMPTS = 3;
+
+    // 在 deferringFlush 內提交的交易只放入佇列不等待寫入，憑證收集在這裡，由呼叫端之後等待
+    private static final ThreadLocal<List<Ticket>> DEFERRED = new ThreadLocal<>();
+
+    private final DataSource dataSource;
+    private final MarketChangeFeed marketChangeFeed;
+
+    @Value("${exchange.journal.capacity:65536}")
+    private int capacity;
+
+    @Value("${exchange.journal.batch-size:500}")
+    private int batchSize;
+
+    @Value("${exchange.journal.await-timeout-ms:5000}")
+    private long awaitTimeoutMs;
+
+    private BlockingQueue<Entry> queue;
+    private Thread writer;
+    private volatile boolean running;
+    // 啟動時取得，之後只由寫入線程使用
+    private Connection connection;
+
+    // enqueued 在 enqueueLock 內遞增，flushed 在 flushLock 內更新。請求線程會在這兩個鎖上阻塞，
+    // 使用 ReentrantLock 而不是 synchronized：虛擬線程在監視器內阻塞時會一併佔住它的載體線程
+    private long enqueued;
+    private long flushed;
+    private final ReentrantLock enqueueLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushedCondition = flushLock.newCondition();
+
+    // 寫入線程在寫入每個批次時持有
+    private final Object writeLock = new Object();
+    private final List<BatchListener> listeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(capacity);
+        // 在接受請求前取得寫入連線：請求線程在提交回呼中等待紀錄寫入時仍佔用自己的連線，
+        // 連線池用盡後寫入線程才去取得連線會與它們互相等待到逾時
+        try {
+            connection = openConnection();
+        } catch (SQLException e) {
+            logger.warn("無法取得交易紀錄連線，寫入時重試", e);
+        }
+        running = true;
+        writer = new Thread(this::writeLoop, "transaction-journal");
+        writer.start();
+    }
+
+    /**
+     * 寫完佇列中的紀錄後停止寫入線程；依賴 DataSource 的這個元件在連線池關閉前停止。
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writer.join(awaitTimeoutMs);
+        if (writer.isAlive()) {
+            logger.error("停止時交易紀錄仍未寫完，{} 筆紀錄未寫入", queue.size());
+            writer.interrupt();
+            writer.join(awaitTimeoutMs);
+        }
+        closeConnection();
+    }
+
+    /**
+     * 記錄一筆帳本異動。在交易中呼叫時，紀錄於交易提交後才寫入，回滾的異動不會留下紀錄。
+     * 紀錄寫入前返回或提交回呼丟出 IllegalStateException 見類別說明。
+     */
+    public void record(String type, String fromAddress, String toAddress, String token,
+                       BigDecimal amount, BigDecimal amount2) {
+        Transaction transaction = new Transaction();
+        transaction.setType(type);
+        transaction.setFromAddress(fromAddress);
+        transaction.setToAddress(toAddress);
+        transaction.setTokenAddress(token);
+        transaction.setAmount(amount);
+        transaction.setAmount2(amount2);
+        record(transaction);
+    }
+
+    public void record(Transaction transaction) {
+        transaction.setTimestamp(LocalDateTime.now());
+        if (transaction.getStatus() == null) {
+            transaction.setStatus("SUCCESS");
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            submit(List.of(transaction));
+            return;
+        }
+        // 同一個交易的紀錄合併為一次放入佇列與一次等待
+        @SuppressWarnings("unchecked")
+        List<Transaction> pending = (List<Transaction>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            List<Transaction> buffer = new ArrayList<>();
+            TransactionSynchronizationManager.bindResource(this, buffer);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    // 提交前才註冊等待的回呼，排在交易中註冊的所有回呼之後：等待失敗丟出的例外不會讓其他回呼被略過
+                    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                        @Override
+                        public void afterCommit() {
+                            submit(buffer);
+                        }
+                    });
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(TransactionJournal.this);
+                }
+            });
+            pending = buffer;
+        }
+        pending.add(transaction);
+    }
+
+    private void submit(List<Transaction> transactions) {
+        Ticket ticket = enqueue(transactions);
+        List<Ticket> deferred = DEFERRED.get();
+        if (deferred != null) {
+            deferred.add(ticket);
+        } else {
+            awaitFlushed(ticket);
+        }
+    }
+
+    /**
+     * 執行 work，期間提交的紀錄只放入佇列而不等待寫入；用於不應被日誌寫入阻塞的執行緒（例如池子的序列執行器）。
+     * 呼叫端在回應前以 {@link #awaitFlushed(Deferred)} 等待這些紀錄寫入。
+     */
+    public <T> Deferred<T> deferringFlush(Supplier<T> work) {
+        List<Ticket> previous = DEFERRED.get();
+        List<Ticket> tickets = new ArrayList<>();
+        DEFERRED.set(tickets);
+        try {
+            return new Deferred<>(work.get(), tickets);
+        } finally {
+            if (previous == null) {
+                DEFERRED.remove();
+            } else {
+                DEFERRED.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 註冊在每個批次寫入時呼叫的監聽器，監聽器的寫入與該批次的紀錄在同一個資料庫交易中提交。
+     */
+    public void addBatchListener(BatchListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 暫停批次寫入並執行 work；執行期間 transactions 資料表不會有新的紀錄提交。
+     */
+    public <T> T pauseWriter(Supplier<T> work) {
+        synchronized (writeLock) {
+            return work.get();
+        }
+    }
+
+    /**
+     * 等待 deferringFlush 期間放入佇列的紀錄寫入並回傳 work 的結果；紀錄未能寫入時丟出 IllegalStateException。
+     */
+    public <T> T awaitFlushed(Deferred<T> deferred) {
+        for (Ticket ticket : deferred.tickets) {
+            awaitFlushed(ticket);
+        }
+        return deferred.result;
+    }
+
+    /**
+     * 依序放入佇列並回傳涵蓋這些紀錄的憑證。無法放入時回傳已失敗的憑證而不丟出例外：
+     * 在序列執行器上呼叫時，例外會被當成操作失敗而回滾已提交的池子狀態。
+     */
+    private Ticket enqueue(List<Transaction> transactions) {
+        enqueueLock.lock();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(awaitTimeoutMs);
+            Ticket ticket = new Ticket(enqueued + transactions.size());
+            for (Transaction transaction : transactions) {
+                // 佇列滿時等待，對寫入端形成背壓；寫入線程停滯時不無限等待
+                if (!queue.offer(new Entry(enqueued + 1, transaction, ticket), deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    logger.error("交易紀錄佇列持續滿載 {} ms，未記錄的異動: {}", awaitTimeoutMs, transactions);
+                    return Ticket.failed(new IllegalStateException("Transaction journal queue is full"));
+                }
+                enqueued++;
+            }
+            return ticket;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("放入交易紀錄佇列時被中斷，未記錄的異動: {}", transactions);
+            return Ticket.failed(e);
+        } finally {
+            enqueueLock.unlock();
+        }
+    }
+
+    private void awaitFlushed(Ticket ticket) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(awaitTimeoutMs);
+        flushLock.lock();
+        try {
+            while (flushed < ticket.sequence) {
+                if (remaining <= 0) {
+                    throw new IllegalStateException("Timed out after " + awaitTimeoutMs
+                        + " ms waiting for the transaction journal; the operation was committed");
+                }
+                remaining = flushedCondition.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the transaction journal; the operation was committed", e);
+        } finally {
+            flushLock.unlock();
+        }
+        if (ticket.failure != null) {
+            throw new IllegalStateException("Transaction journal could not record the operation; the operation was committed",
+                ticket.failure);
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                try {
+                    synchronized (writeLock) {
+                        write(batch);
+                    }
+                } catch (RuntimeException e) {
+                    // write 已處理寫入與監聽器的例外；其餘意外的錯誤讓這批請求失敗，寫入線程繼續運作
+                    logger.error("寫入交易紀錄時發生未預期的錯誤，{} 筆紀錄未寫入: {}", batch.size(), transactions(batch), e);
+                    rollback();
+                    batch.forEach(entry -> entry.ticket.fail(e));
+                }
+                markFlushed(batch.get(batch.size() - 1).sequence);
+                notifyBalances(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void markFlushed(long sequence) {
+        flushLock.lock();
+        try {
+            flushed = sequence;
+            flushedCondition.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void notifyBalances(List<Entry> batch) {
+        for (Entry entry : batch) {
+            try {
+                marketChangeFeed.balanceChanged(entry.transaction.getFromAddress(), entry.transaction.getToAddress());
+            } catch (RuntimeException e) {
+                logger.warn("推送餘額變動失敗", e);
+            }
+        }
+    }
+
+    private void write(List<Entry> batch) throws InterruptedException {
+        for (int attempt = 1; attempt <= MAX_BATCH_ATTEMPTS; attempt++) {
+            try {
+                insert(batch, false);
+                return;
+            } catch (SQLException | RuntimeException e) {
+                rollback();
+                logger.error("寫入交易紀錄失敗（第 {} 次），{} 筆紀錄稍後重試", attempt, batch.size(), e);
+                // 連線可能已失效，重試時重新取得
+                closeConnection();
+                Thread.sleep(RETRY_BACKOFF_MS);
+            }
+        }
+        // 整批持續失敗時逐筆寫入，找出無法寫入的紀錄
+        for (Entry entry : batch) {
+            writeSingle(entry);
+        }
+    }
+
+    private void writeSingle(Entry entry) throws InterruptedException {
+        while (true) {
+            try {
+                insert(List.of(entry), true);
+                return;
+            } catch (SQLException | RuntimeException e) {
+                rollback();
+                if (connectionValid()) {
+                    logger.error("交易紀錄無法寫入，所屬請求回報失敗: {}", entry.transaction, e);
+                    entry.ticket.fail(e);
+                    return;
+                }
+                logger.error("交易紀錄連線失效，稍後重試", e);
+                closeConnection();
+                Thread.sleep(RETRY_BACKOFF_MS);
+            }
+        }
+    }
+
+    /**
+     * 在一個資料庫交易中寫入紀錄並呼叫監聽器。isolateListeners 時每個監聽器在自己的儲存點內執行，
+     * 失敗時只回滾該監聽器的寫入。
+     */
+    private void insert(List<Entry> entries, boolean isolateListeners) throws SQLException {
+        if (connection == null) {
+            connection = openConnection();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+            for (Entry entry : entries) {
+                Transaction t = entry.transaction;
+                ps.setString(1, t.getFromAddress());
+                ps.setString(2, t.getToAddress());
+                ps.setBigDecimal(3, t.getAmount());
+                ps.setBigDecimal(4, t.getAmount2());
+                ps.setString(5, t.getTokenAddress());
+                ps.setString(6, t.getType());
+                ps.setTimestamp(7, Timestamp.valueOf(t.getTimestamp()));
+                ps.setString(8, t.getStatus());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        if (!listeners.isEmpty()) {
+            List<Transaction> transactions = transactions(entries);
+            for (BatchListener listener : listeners) {
+                if (isolateListeners) {
+                    applyIsolated(listener, transactions);
+                } else {
+                    listener.onBatch(connection, transactions);
+                }
+            }
+        }
+        connection.commit();
+    }
+
+    private void applyIsolated(BatchListener listener, List<Transaction> transactions) throws SQLException {
+        Savepoint savepoint = connection.setSavepoint();
+        try {
+            listener.onBatch(connection, transactions);
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback(savepoint);
+            logger.error("交易紀錄監聽器處理失敗，紀錄照常寫入: {}", transactions, e);
+        }
+    }
+
+    private static List<Transaction> transactions(List<Entry> entries) {
+        List<Transaction> transactions = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            transactions.add(entry.transaction);
+        }
+        return transactions;
+    }
+
+    private boolean connectionValid() {
+        try {
+            return connection != null && connection.isValid(1);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        Connection opened = dataSource.getConnection();
+        opened.setAutoCommit(false);
+        return opened;
+    }
+
+    private void rollback() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.warn("回滾交易紀錄批次失敗", e);
+        }
+    }
+
+    private void closeConnection() {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.warn("關閉交易紀錄連線失敗", e);
+        }
+        connection = null;
+    }
+
+    /**
+     * 在交易紀錄批次寫入後、提交前呼叫；丟出例外時整批回滾並重試，持續失敗時改為逐筆呼叫，
+     * 逐筆呼叫仍失敗時只略過這個監聽器對該筆紀錄的處理。
+     */
+    public interface BatchListener {
+        void onBatch(Connection connection, List<Transaction> transactions) throws SQLException;
+    }
+
+    /**
+     * deferringFlush 中 work 的結果與期間放入佇列的紀錄。
+     */
+    public static final class Deferred<T> {
+        private final T result;
+        private final List<Ticket> tickets;
+
+        private Deferred(T result, List<Ticket> tickets) {
+            this.result = result;
+            this.tickets = tickets;
+        }
+    }
+
+    /**
+     * 一次放入佇列的紀錄（通常是同一個業務交易的全部紀錄）：寫入線程處理過 sequence 之後，
+     * failure 為 null 表示全部寫入。
+     */
+    private static final class Ticket {
+        private final long sequence;
+        private volatile Exception failure;
+
+        private Ticket(long sequence) {
+            this.sequence = sequence;
+        }
+
+        private static Ticket failed(Exception failure) {
+            Ticket ticket = new Ticket(0);
+            ticket.failure = failure;
+            return ticket;
+        }
+
+        private void fail(Exception e) {
+            failure = e;
+        }
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final Transaction transaction;
+        private final Ticket ticket;
+
+        private Entry(long sequence, Transaction transaction, Ticket ticket) {
+            this.sequence = sequence;
+            this.transaction = transaction;
+            this.ticket = ticket;
+        }
+    }
+}
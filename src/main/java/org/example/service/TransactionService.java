@@ -1,26 +1,223 @@
 package org.example.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import org.example.model.Transaction;
+import org.example.model.TransactionPage;
 import org.example.repository.TransactionRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Service
 public class TransactionService {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 0, 0);
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator
+            .comparing(Transaction::getTimestamp)
+            .thenComparing(Transaction::getId)
+            .reversed();
+
+    // 匯出時每寫出這麼多筆就送出一次，讓用戶端持續收到資料
+    private static final int EXPORT_FLUSH_ROWS = 500;
+    private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+
     private final TransactionRepository transactionRepository;
+    private final TransactionJournal transactionJournal;
+    private final EntityManager entityManager;
+    private final ObjectMapper objectMapper;
 
     @Autowired
-    public TransactionService(TransactionRepository transactionRepository) {
+    public TransactionService(TransactionRepository transactionRepository, TransactionJournal transactionJournal,
+                              EntityManager entityManager, ObjectMapper objectMapper) {
         this.transactionRepository = transactionRepository;
+        this.transactionJournal = transactionJournal;
+        this.entityManager = entityManager;
+        this.objectMapper = objectMapper;
     }
 
+    /**
+     * 經由交易紀錄日誌批次寫入；回傳時紀錄已寫入（在交易中呼叫時為提交後寫入）。
+     * 交易表的地址欄位不可為空，缺少地址的紀錄在進入日誌前就拒絕。
+     */
     public Transaction saveTransaction(Transaction transaction) {
-        return transactionRepository.save(transaction);
+        if (transaction.getFromAddress() == null || transaction.getToAddress() == null) {
+            throw new IllegalArgumentException("fromAddress and toAddress are required");
+        }
+        transactionJournal.record(transaction);
+        return transaction;
+    }
+
+    /**
+     * 以 (timestamp, id) 為游標倒序分頁查詢地址的交易紀錄。
+     * 發出與收到的交易分別走各自的索引查詢 limit + 1 筆，合併後取前 limit 筆；
+     * since 含、until 不含，type 與時間範圍皆可省略。
+     */
+    @Transactional(readOnly = true)
+    public TransactionPage getTransactionPage(String address, String type, LocalDateTime since,
+                                              LocalDateTime until, String cursor, int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        LocalDateTime cursorTime = until != null ? until : LATEST;
+        long cursorId = Long.MIN_VALUE;
+        if (cursor != null) {
+            Cursor position = Cursor.decode(cursor);
+            // 游標不會超出 until
+            if (position.timestamp.isBefore(cursorTime)) {
+                cursorTime = position.timestamp;
+                cursorId = position.id;
+            }
+        }
+        LocalDateTime from = since != null ? since : EARLIEST;
+        PageRequest firstRows = PageRequest.of(0, limit + 1);
+
+        List<Transaction> merged = new ArrayList<>(
+            transactionRepository.findPageFrom(address, type, from, cursorTime, cursorId, firstRows));
+        for (Transaction received : transactionRepository.findPageTo(address, type, from, cursorTime, cursorId, firstRows)) {
+            // 自己轉給自己的交易兩邊都會查到
+            if (!address.equals(received.getFromAddress())) {
+                merged.add(received);
+            }
+        }
+        merged.sort(NEWEST_FIRST);
+
+        if (merged.size() <= limit) {
+            return new TransactionPage(merged, null);
+        }
+        List<Transaction> items = new ArrayList<>(merged.subList(0, limit));
+        Transaction last = items.get(limit - 1);
+        return new TransactionPage(items, new Cursor(last.getTimestamp(), last.getId()).encode());
+    }
+
+    /**
+     * 將地址的完整交易紀錄依時間正序寫到 out。以單向游標逐筆讀取，每筆寫出後即自持久化內容中移除，
+     * 記憶體用量與紀錄筆數無關；since 含、until 不含，皆可省略。
+     */
+    @Transactional(readOnly = true)
+    public void exportHistory(String address, String type, LocalDateTime since, LocalDateTime until,
+                              ExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_SIZE);
+        try (Stream<Transaction> history = transactionRepository.streamHistory(address, type,
+                since != null ? since : EARLIEST, until != null ? until : LATEST)) {
+            SequenceWriter json = null;
+            if (format == ExportFormat.CSV) {
+                writer.write("id,timestamp,type,from_address,to_address,token,amount,amount2,status\n");
+            } else {
+                json = objectMapper.writer().withRootValueSeparator("\n").writeValues(writer);
+            }
+            int rows = 0;
+            for (Iterator<Transaction> it = history.iterator(); it.hasNext(); ) {
+                Transaction transaction = it.next();
+                if (json != null) {
+                    json.write(transaction);
+                } else {
+                    writeCsvRow(writer, transaction);
+                }
+                entityManager.detach(transaction);
+                if (++rows % EXPORT_FLUSH_ROWS == 0) {
+                    writer.flush();
+                }
+            }
+            if (json != null) {
+                // SequenceWriter 在值之間才寫分隔符，最後一筆補上換行
+                json.flush();
+                if (rows > 0) {
+                    writer.write('\n');
+                }
+            }
+            writer.flush();
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, Transaction t) throws IOException {
+        writer.write(String.valueOf(t.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(t.getTimestamp()));
+        writer.write(',');
+        writer.write(csv(t.getType()));
+        writer.write(',');
+        writer.write(csv(t.getFromAddress()));
+        writer.write(',');
+        writer.write(csv(t.getToAddress()));
+        writer.write(',');
+        writer.write(csv(t.getTokenAddress()));
+        writer.write(',');
+        writer.write(decimal(t.getAmount()));
+        writer.write(',');
+        writer.write(decimal(t.getAmount2()));
+        writer.write(',');
+        writer.write(csv(t.getStatus()));
+        writer.write('\n');
+    }
+
+    private static String decimal(BigDecimal value) {
+        return value == null ? "" : value.toPlainString();
+    }
+
+    // 含逗號、引號或換行的欄位以引號包住，內部引號重複一次
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
     }
 
-    public List<Transaction> getTransactionsByAddress(String address) {
-        return transactionRepository.findByFromAddressOrToAddressOrderByTimestampDesc(address, address);
+    public enum ExportFormat {
+        NDJSON,
+        CSV
+    }
+
+    /**
+     * 分頁游標：上一頁最後一筆的 (timestamp, id)，以 URL-safe Base64 編碼。
+     */
+    private static final class Cursor {
+        private final LocalDateTime timestamp;
+        private final long id;
+
+        private Cursor(LocalDateTime timestamp, long id) {
+            this.timestamp = timestamp;
+            this.id = id;
+        }
+
+        private String encode() {
+            String position = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static Cursor decode(String cursor) {
+            try {
+                String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = position.indexOf('|');
+                return new Cursor(LocalDateTime.parse(position.substring(0, separator)),
+                    Long.parseLong(position.substring(separator + 1)));
+            } catch (IllegalArgumentException | DateTimeParseException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
     }
-} 
\ No newline at end of file
+}
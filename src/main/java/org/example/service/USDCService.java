@@ -1,19 +1,31 @@
 package org.example.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import javax.persistence.*;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
+import org.example.metrics.ExchangeMetrics;
+import org.example.model.LedgerEvent;
 import org.example.model.USDCBalance;
 import org.example.repository.UsdcBalanceRepository;
 
 @Service
 @RequiredArgsConstructor
 public class USDCService {
+    private static final String INSERT_BALANCE_SQL = "insert into usdc_balances (address, balance) values (?, ?)";
+
     private final UsdcBalanceRepository usdcBalanceRepository;
+    private final MarketChangeFeed marketChangeFeed;
+    private final TransactionJournal transactionJournal;
+    private final LedgerEventLog ledgerEventLog;
+    private final ExchangeMetrics exchangeMetrics;
+    private final JdbcTemplate jdbcTemplate;
 
     @Transactional
     public void initializeBalance(String address, BigDecimal amount) {
@@ -25,35 +37,66 @@ public class USDCService {
         balance.setBalance(amount);
 
         usdcBalanceRepository.save(balance);
+        ledgerEventLog.record(LedgerEvent.usdcSet(address, amount));
+        marketChangeFeed.balanceChanged(address);
+        transactionJournal.record("MINT", "system", address, "USDC", amount, null);
     }
 
     @Transactional(readOnly = true)
     public BigDecimal getBalance(String address) {
-        return usdcBalanceRepository.findByAddress(address)
-            .map(USDCBalance::getBalance)
+        return usdcBalanceRepository.findBalance(address)
             .orElse(BigDecimal.ZERO);
     }
 
+    /**
+     * 兩個地址間轉帳：扣款與入帳各為一條更新語句，不先讀取餘額。
+     * 兩列依地址順序更新，方向相反的並行轉帳以相同順序取得列鎖，不會互相死結；
+     * 扣款條件不成立時拋出例外，已入帳的一方隨交易回滾。
+     */
     @Transactional
+    @Timed(value = ExchangeMetrics.OPERATION, extraTags = {"operation", "usdc_transfer"}, histogram = true)
     public void transfer(String from, String to, BigDecimal amount) {
-        USDCBalance fromBalance = usdcBalanceRepository.findByAddress(from)
-            .orElseThrow(() -> new IllegalStateException("Insufficient USDC balance"));
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw new IllegalStateException("Amount must be positive");
+        }
+        if (from.compareTo(to) <= 0) {
+            debit(from, amount);
+            credit(to, amount);
+        } else {
+            credit(to, amount);
+            debit(from, amount);
+        }
+        marketChangeFeed.balanceChanged(from, to);
+        transactionJournal.record("TRANSFER", from, to, "USDC", amount, null);
+    }
 
-        if (fromBalance.getBalance().compareTo(amount) < 0) {
+    /**
+     * 以單一條件更新扣款（balance >= amount），餘額不足時拋出 IllegalStateException。
+     */
+    @Transactional
+    public void debit(String address, BigDecimal amount) {
+        if (exchangeMetrics.usdcBalanceUpdate(() -> usdcBalanceRepository.debit(address, amount)) == 0) {
             throw new IllegalStateException("Insufficient USDC balance");
         }
+        ledgerEventLog.record(LedgerEvent.usdcDebit(address, amount));
+    }
 
-        // 扣除發送方餘額
-        fromBalance.setBalance(fromBalance.getBalance().subtract(amount));
-        usdcBalanceRepository.save(fromBalance);
-
-        // 增加接收方餘額
-        USDCBalance toBalance = usdcBalanceRepository.findByAddress(to)
-            .orElse(new USDCBalance());
-        
-        toBalance.setAddress(to);
-        toBalance.setBalance(toBalance.getBalance().add(amount));
-        
-        usdcBalanceRepository.save(toBalance);
+    /**
+     * 入帳：先更新既有的餘額列，地址尚無餘額列時再新增。兩個交易同時為同一地址新增時，
+     * 後插入的一方遇到主鍵衝突，改為再更新一次對方新增的列，不會讓整筆轉帳或交換回滾。
+     * 新增以 JdbcTemplate 執行：主鍵衝突只讓這條語句失敗，不會把外層交易標記為只能回滾。
+     */
+    @Transactional
+    public void credit(String address, BigDecimal amount) {
+        if (exchangeMetrics.usdcBalanceUpdate(() -> usdcBalanceRepository.credit(address, amount)) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_BALANCE_SQL, address, amount);
+            } catch (DuplicateKeyException e) {
+                if (usdcBalanceRepository.credit(address, amount) == 0) {
+                    throw new IllegalStateException("Failed to credit USDC balance of " + address, e);
+                }
+            }
+        }
+        ledgerEventLog.record(LedgerEvent.usdcCredit(address, amount));
     }
-} 
\ No newline at end of file
+}
@@ -7,7 +7,6 @@ import org.example.model.CarbonCreditToken;
 import org.example.repository.CarbonCreditTokenRepository;
 import org.example.model.LiquidityPool;
 import org.example.repository.LiquidityPoolRepository;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,7 +17,7 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class UserService {
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final CarbonCreditTokenRepository tokenRepository;
     private final CarbonCreditService carbonCreditService;
     private final USDCService usdcService;
@@ -35,7 +34,7 @@ public class UserService {
 
         User user = new User();
         user.setUsername(username);
-        user.setPassword(passwordEncoder.encode(password));
+        user.setPassword(passwordHasher.encode(password));
         user.setUserType(userType);
         user.setAddress(address);
 
@@ -58,8 +57,7 @@ public class UserService {
     @Transactional
     protected void initializeUserBalances(User user) {
         // 獲取 CCT token
-        CarbonCreditToken token = tokenRepository.findAll().stream()
-                .findFirst()
+        CarbonCreditToken token = tokenRepository.findFirstByOrderByIdAsc()
                 .orElseThrow(() -> new IllegalStateException(
                     "System is not properly initialized: CCT token not found. Please contact administrator."
                 ));
@@ -84,6 +82,6 @@ public class UserService {
 
     public Optional<User> login(String username, String password) {
         return userRepository.findByUsername(username)
-                .filter(user -> passwordEncoder.matches(password, user.getPassword()));
+                .filter(user -> passwordHasher.matches(password, user.getPassword()));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,202 @@
+package org.example.math;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 以 BigDecimal 的計算為基準，對照 {@link PoolMath} 與 {@link Fixed128} 在隨機與邊界輸入上的結果。
+ */
+class PoolMathTest {
+    private static final int SCALE = Fixed128.SCALE;
+    private static final int RANDOM_CASES = 20_000;
+    private static final RoundingMode[] MODES = {RoundingMode.DOWN, RoundingMode.UP, RoundingMode.HALF_UP};
+    private static final BigInteger MAX_UNSCALED = BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE);
+
+    private final Random random = new Random(20240601L);
+
+    @Test
+    void mulDivMatchesBigDecimal() {
+        List<BigDecimal> edges = edgeValues();
+        for (BigDecimal a : edges) {
+            for (BigDecimal b : edges) {
+                for (BigDecimal c : edges) {
+                    assertMulDiv(a, b, c);
+                }
+            }
+        }
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            assertMulDiv(randomValue(), randomValue(), randomValue());
+        }
+    }
+
+    @Test
+    void divideMatchesBigDecimal() {
+        List<BigDecimal> edges = edgeValues();
+        for (BigDecimal a : edges) {
+            for (BigDecimal c : edges) {
+                assertDivide(a, c);
+            }
+        }
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            assertDivide(randomValue(), randomValue());
+        }
+    }
+
+    @Test
+    void amountOutMatchesBigDecimal() {
+        List<BigDecimal> edges = edgeValues();
+        for (BigDecimal amountIn : edges) {
+            for (BigDecimal reserveIn : edges) {
+                for (BigDecimal reserveOut : edges) {
+                    assertAmountOut(amountIn, reserveIn, reserveOut);
+                }
+            }
+        }
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            assertAmountOut(randomValue(), randomValue(), randomValue());
+        }
+    }
+
+    @Test
+    void fixedMulDivMatchesBigIntegerOrOverflows() {
+        Fixed128 a = new Fixed128();
+        Fixed128 b = new Fixed128();
+        Fixed128 c = new Fixed128();
+        Fixed128 out = new Fixed128();
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            BigDecimal x = randomValue();
+            BigDecimal y = randomValue();
+            BigDecimal z = randomValue();
+            if (z.signum() == 0 || !Fixed128.fits(x) || !Fixed128.fits(y) || !Fixed128.fits(z)) {
+                continue;
+            }
+            for (RoundingMode mode : MODES) {
+                BigDecimal expected = x.multiply(y).divide(z, SCALE, mode);
+                if (expected.unscaledValue().compareTo(MAX_UNSCALED) > 0) {
+                    assertThrows(ArithmeticException.class, () -> out.mulDiv(a.set(x), b.set(y), c.set(z), mode));
+                } else {
+                    assertEquals(expected, out.mulDiv(a.set(x), b.set(y), c.set(z), mode).toBigDecimal(),
+                        () -> x + " * " + y + " / " + z + " " + mode);
+                }
+            }
+        }
+    }
+
+    @Test
+    void fixedAmountOutAfterFeeMatchesBigDecimalAndLeavesInputs() {
+        Fixed128 amountIn = new Fixed128();
+        Fixed128 reserveIn = new Fixed128();
+        Fixed128 reserveOut = new Fixed128();
+        Fixed128 out = new Fixed128();
+        int[] fees = {0, 1, 30, 1000};
+        for (int i = 0; i < RANDOM_CASES; i++) {
+            // 儲備與投入都在資料表 DECIMAL(36,18) 的範圍內，相加不會超出 128 位元
+            BigDecimal x = new BigDecimal(new BigInteger(1 + random.nextInt(120), random), SCALE);
+            BigDecimal rIn = new BigDecimal(new BigInteger(1 + random.nextInt(120), random), SCALE);
+            BigDecimal rOut = new BigDecimal(new BigInteger(1 + random.nextInt(120), random), SCALE);
+            int feeBps = fees[random.nextInt(fees.length)];
+
+            BigDecimal fee = x.multiply(BigDecimal.valueOf(feeBps)).divide(BigDecimal.valueOf(10_000), SCALE, RoundingMode.UP);
+            BigDecimal net = x.subtract(fee);
+            BigDecimal expected = net.signum() == 0
+                ? BigDecimal.ZERO.setScale(SCALE)
+                : net.multiply(rOut).divide(rIn.add(net), SCALE, RoundingMode.DOWN);
+
+            PoolMath.amountOutAfterFee(amountIn.set(x), feeBps, reserveIn.set(rIn), reserveOut.set(rOut), out);
+            assertEquals(expected, out.toBigDecimal(), () -> x + " in, fee " + feeBps + ", reserves " + rIn + " / " + rOut);
+            assertEquals(x, amountIn.toBigDecimal());
+            assertEquals(rIn, reserveIn.toBigDecimal());
+            assertEquals(rOut, reserveOut.toBigDecimal());
+        }
+    }
+
+    @Test
+    void unsupportedRoundingModesFallBackToBigDecimal() {
+        BigDecimal a = new BigDecimal("-7");
+        BigDecimal c = new BigDecimal("3");
+        for (RoundingMode mode : new RoundingMode[] {RoundingMode.FLOOR, RoundingMode.CEILING, RoundingMode.HALF_EVEN}) {
+            assertEquals(a.divide(c, SCALE, mode), PoolMath.divide(a, c, mode));
+            assertEquals(c.multiply(c).divide(new BigDecimal("7"), SCALE, mode), PoolMath.mulDiv(c, c, new BigDecimal("7"), mode));
+        }
+        assertThrows(IllegalArgumentException.class,
+            () -> new Fixed128().mulDiv(new Fixed128().setOne(), new Fixed128().setOne(), new Fixed128().setOne(), RoundingMode.HALF_EVEN));
+    }
+
+    private static void assertMulDiv(BigDecimal a, BigDecimal b, BigDecimal c) {
+        if (c.signum() == 0) {
+            return;
+        }
+        for (RoundingMode mode : MODES) {
+            assertEquals(a.multiply(b).divide(c, SCALE, mode), PoolMath.mulDiv(a, b, c, mode),
+                () -> a + " * " + b + " / " + c + " " + mode);
+        }
+    }
+
+    private static void assertDivide(BigDecimal a, BigDecimal c) {
+        if (c.signum() == 0) {
+            return;
+        }
+        for (RoundingMode mode : MODES) {
+            assertEquals(a.divide(c, SCALE, mode), PoolMath.divide(a, c, mode),
+                () -> a + " / " + c + " " + mode);
+        }
+    }
+
+    private static void assertAmountOut(BigDecimal amountIn, BigDecimal reserveIn, BigDecimal reserveOut) {
+        if (reserveIn.add(amountIn).signum() == 0) {
+            return;
+        }
+        BigDecimal expected = amountIn.multiply(reserveOut).divide(reserveIn.add(amountIn), SCALE, RoundingMode.DOWN);
+        assertEquals(expected, PoolMath.amountOut(amountIn, reserveIn, reserveOut),
+            () -> amountIn + " in, reserves " + reserveIn + " / " + reserveOut);
+    }
+
+    /**
+     * 隨機的非負數值，未縮放值的位元數在 1 到 127 之間平均分布，小數位數在 0 到 18 之間；
+     * 約十分之一為超過 18 位小數或超出 128 位元、會走 BigDecimal 退路的數值。
+     */
+    private BigDecimal randomValue() {
+        int bits = 1 + random.nextInt(127);
+        BigInteger unscaled = new BigInteger(bits, random);
+        int roll = random.nextInt(10);
+        if (roll == 0) {
+            return new BigDecimal(unscaled, SCALE + 1 + random.nextInt(4));
+        }
+        if (roll == 1) {
+            return new BigDecimal(unscaled.shiftLeft(8 + random.nextInt(32)), SCALE);
+        }
+        return new BigDecimal(unscaled, SCALE).setScale(random.nextInt(SCALE + 1), RoundingMode.DOWN);
+    }
+
+    private static List<BigDecimal> edgeValues() {
+        List<BigDecimal> values = new ArrayList<>();
+        values.add(BigDecimal.ZERO);
+        values.add(BigDecimal.ONE);
+        values.add(new BigDecimal("0.000000000000000001"));
+        values.add(new BigDecimal("0.5"));
+        values.add(new BigDecimal("1.500000000000000000000"));
+        values.add(new BigDecimal("3"));
+        values.add(new BigDecimal("10000"));
+        values.add(new BigDecimal("1E+6"));
+        values.add(new BigDecimal("0.0000000000000000001"));
+        values.add(new BigDecimal("-1"));
+        // 32 與 64 位元邊界附近的未縮放值，觸發長除法的各個分支
+        for (int shift : new int[] {31, 32, 33, 63, 64, 65, 95, 96, 97, 127}) {
+            BigInteger power = BigInteger.ONE.shiftLeft(shift);
+            values.add(new BigDecimal(power.subtract(BigInteger.ONE), SCALE));
+            values.add(new BigDecimal(power, SCALE));
+        }
+        values.add(new BigDecimal(MAX_UNSCALED, SCALE));
+        values.add(new BigDecimal(MAX_UNSCALED.add(BigInteger.ONE), SCALE));
+        return values;
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.service;
+
+import org.example.model.AddressStats;
+import org.example.model.Transaction;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 交易紀錄依地址累加成統計增量：自己轉給自己只計一次，缺少地址的紀錄不會中斷批次。
+ */
+class AddressStatsServiceTest {
+
+    @Test
+    void transferToSelfCountsOnce() {
+        Map<String, AddressStats> stats = AddressStatsService.fold(List.of(transfer("0xa", "0xa")));
+
+        assertEquals(1, stats.size());
+        assertEquals(1, stats.get("0xa").getTransferCount());
+    }
+
+    @Test
+    void recordWithoutAnAddressDoesNotStopTheBatch() {
+        Map<String, AddressStats> stats = AddressStatsService.fold(List.of(
+            transfer("0xa", null), transfer(null, "0xb"), transfer("0xa", "0xb")));
+
+        assertEquals(2, stats.size());
+        assertEquals(2, stats.get("0xa").getTransferCount());
+        assertEquals(2, stats.get("0xb").getTransferCount());
+        assertEquals(0, new BigDecimal("2").compareTo(stats.get("0xa").getUsdcVolume()));
+    }
+
+    private static Transaction transfer(String from, String to) {
+        Transaction t = new Transaction();
+        t.setType("TRANSFER");
+        t.setFromAddress(from);
+        t.setToAddress(to);
+        t.setTokenAddress("USDC");
+        t.setAmount(BigDecimal.ONE);
+        t.setTimestamp(LocalDateTime.now());
+        return t;
+    }
+}
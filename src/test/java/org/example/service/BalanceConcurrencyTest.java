@@ -0,0 +1,120 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 餘額更新的並行測試：多個線程同時轉帳與入帳，結束後餘額總和必須守恆，
+ * 同時為同一個新地址入帳時每一筆都要保留。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:balance-concurrency;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO"
+})
+class BalanceConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 50;
+    private static final BigDecimal INITIAL = new BigDecimal("1000");
+
+    @Autowired
+    private USDCService usdcService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Test
+    void parallelUsdcTransfersConserveTotalBalance() throws Exception {
+        String[] addresses = {"0xtransfer-a", "0xtransfer-b", "0xtransfer-c", "0xtransfer-d"};
+        for (String address : addresses) {
+            usdcService.initializeBalance(address, INITIAL);
+        }
+
+        runInParallel(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ROUNDS; i++) {
+                int from = random.nextInt(addresses.length);
+                int to = (from + 1 + random.nextInt(addresses.length - 1)) % addresses.length;
+                usdcService.transfer(addresses[from], addresses[to], BigDecimal.ONE);
+            }
+        });
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (String address : addresses) {
+            total = total.add(usdcService.getBalance(address));
+        }
+        assertEquals(0, INITIAL.multiply(BigDecimal.valueOf(addresses.length)).compareTo(total));
+    }
+
+    @Test
+    void concurrentFirstUsdcCreditsAreNotLost() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        runInParallel(thread -> {
+            for (int i = 0; i < ROUNDS; i++) {
+                barrier.await();
+                usdcService.credit("0xfresh-usdc-" + i, BigDecimal.ONE);
+            }
+        });
+
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(0, BigDecimal.valueOf(THREADS).compareTo(usdcService.getBalance("0xfresh-usdc-" + i)));
+        }
+    }
+
+    @Test
+    void concurrentFirstCctCreditsAreNotLost() throws Exception {
+        Long tokenId = carbonCreditService.createToken("0xcredit-admin").getId();
+        CyclicBarrier barrier = new CyclicBarrier(THREADS);
+        runInParallel(thread -> {
+            for (int i = 0; i < ROUNDS; i++) {
+                barrier.await();
+                carbonCreditService.credit(tokenId, "0xfresh-cct-" + i, BigDecimal.ONE);
+            }
+        });
+
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(0, BigDecimal.valueOf(THREADS).compareTo(carbonCreditService.balanceOf(tokenId, "0xfresh-cct-" + i)));
+        }
+    }
+
+    private static void runInParallel(Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            // 任一線程的例外（例如主鍵衝突讓入帳回滾）都讓測試失敗
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.service;
+
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批次拍賣池子上的交換：同一窗口的買賣單以同一清算價成交、超出限價的訂單單獨被拒絕。
+ * 每個測試使用自己的池子與地址。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:batch-auction;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO",
+    "exchange.batch-auction.window-ms=500"
+})
+class BatchAuctionSettlementTest {
+    private static final AtomicInteger POOLS = new AtomicInteger();
+    private static final BigDecimal NO_LIMIT = new BigDecimal("1000000");
+
+    @Autowired
+    private CarbonExchangeService exchangeService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Autowired
+    private USDCService usdcService;
+
+    private String prefix;
+    private Long tokenId;
+
+    @BeforeEach
+    void setUp() {
+        prefix = "0xbatch-" + POOLS.incrementAndGet() + "-";
+        tokenId = carbonCreditService.createToken(prefix + "admin").getId();
+    }
+
+    @Test
+    void buyAndSellInOneWindowClearAtOnePrice() throws Exception {
+        Long exchangeId = batchPool("1000", "400");
+        String buyer = fund("buyer", "100", "0");
+        String seller = fund("seller", "0", "30");
+        PoolSnapshot before = exchangeService.getPoolSnapshot(exchangeId);
+
+        CompletableFuture<Void> buy = CompletableFuture.runAsync(() ->
+            exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, buyer, new BigDecimal("100"), NO_LIMIT));
+        CompletableFuture<Void> sell = CompletableFuture.runAsync(() ->
+            exchangeService.swapCarbonCreditsForBaseCurrency(exchangeId, seller, new BigDecimal("30"), NO_LIMIT));
+        buy.get(10, TimeUnit.SECONDS);
+        sell.get(10, TimeUnit.SECONDS);
+
+        BigDecimal cctBought = carbonCreditService.balanceOf(tokenId, buyer);
+        BigDecimal usdcReceived = usdcService.getBalance(seller);
+        assertEquals(0, usdcService.getBalance(buyer).signum());
+        assertEquals(0, carbonCreditService.balanceOf(tokenId, seller).signum());
+        assertTrue(cctBought.signum() > 0 && usdcReceived.signum() > 0);
+
+        // 兩邊扣除費用後的投入與換得之比為同一個清算價（容許末位捨入）
+        BigDecimal buyPrice = netIn(before, "100").divide(cctBought, MathContext.DECIMAL128);
+        BigDecimal sellPrice = usdcReceived.divide(netIn(before, "30"), MathContext.DECIMAL128);
+        assertTrue(buyPrice.subtract(sellPrice).abs().compareTo(new BigDecimal("1e-12")) < 0,
+            "buy " + buyPrice + " vs sell " + sellPrice);
+    }
+
+    @Test
+    void orderAboveItsLimitIsRejectedAlone() throws Exception {
+        Long exchangeId = batchPool("1000", "400");
+        String buyer = fund("buyer", "100", "0");
+        String capped = fund("capped", "100", "0");
+
+        CompletableFuture<Void> buy = CompletableFuture.runAsync(() ->
+            exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, buyer, new BigDecimal("100"), NO_LIMIT));
+        CompletableFuture<Void> tooLow = CompletableFuture.runAsync(() ->
+            exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, capped, new BigDecimal("100"), new BigDecimal("2.5")));
+        buy.get(10, TimeUnit.SECONDS);
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> tooLow.get(10, TimeUnit.SECONDS));
+
+        assertEquals("滑點過大", rejected.getCause().getMessage());
+        assertTrue(carbonCreditService.balanceOf(tokenId, buyer).signum() > 0);
+        assertEquals(0, new BigDecimal("100").compareTo(usdcService.getBalance(capped)));
+        assertEquals(0, carbonCreditService.balanceOf(tokenId, capped).signum());
+    }
+
+    private static BigDecimal netIn(PoolSnapshot snapshot, String amount) {
+        BigDecimal amountIn = new BigDecimal(amount);
+        return amountIn.subtract(snapshot.swapFee(amountIn));
+    }
+
+    private Long batchPool(String usdc, String cct) {
+        String provider = fund("provider", usdc, cct);
+        Long exchangeId = exchangeService.createPool(tokenId, provider, new BigDecimal(usdc), new BigDecimal(cct)).getExchangeId();
+        exchangeService.setSettlementMode(exchangeId, LiquidityPool.SettlementMode.BATCH_AUCTION);
+        return exchangeId;
+    }
+
+    private String fund(String name, String usdc, String cct) {
+        String address = prefix + name;
+        usdcService.initializeBalance(address, new BigDecimal(usdc));
+        if (new BigDecimal(cct).signum() > 0) {
+            carbonCreditService.credit(tokenId, address, new BigDecimal(cct));
+        }
+        return address;
+    }
+}
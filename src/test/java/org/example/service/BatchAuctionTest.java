@@ -0,0 +1,140 @@
+package org.example.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 批次拍賣的收集與結算：同一窗口的訂單一起交給結算函式，拒絕與結算失敗回報給各自的請求，
+ * 逾時與中斷的請求不會無限等待，已作廢的訂單不再結算。
+ */
+class BatchAuctionTest {
+    private static final Long EXCHANGE_ID = 1L;
+
+    private final BatchAuction auction = new BatchAuction();
+    private final List<List<BatchAuction.Order>> settled = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(auction, "windowMs", 200L);
+        ReflectionTestUtils.setField(auction, "settleTimeoutMs", 1000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        auction.stop();
+    }
+
+    @Test
+    void ordersInOneWindowSettleTogether() throws Exception {
+        BiConsumer<Long, List<BatchAuction.Order>> settler = (id, orders) -> {
+            settled.add(orders);
+            orders.forEach(order -> order.setAmountOut(order.getAmountIn().multiply(BigDecimal.valueOf(2))));
+        };
+
+        CompletableFuture<BigDecimal> buy = submitAsync(order(BatchAuction.Side.BUY_CARBON, "1"), settler);
+        CompletableFuture<BigDecimal> sell = submitAsync(order(BatchAuction.Side.SELL_CARBON, "3"), settler);
+
+        assertEquals(0, new BigDecimal("2").compareTo(buy.get(5, TimeUnit.SECONDS)));
+        assertEquals(0, new BigDecimal("6").compareTo(sell.get(5, TimeUnit.SECONDS)));
+        assertEquals(1, settled.size());
+        assertEquals(2, settled.get(0).size());
+    }
+
+    @Test
+    void rejectedOrderFailsWithItsOwnReason() {
+        RuntimeException reason = new RuntimeException("滑點過大");
+        BiConsumer<Long, List<BatchAuction.Order>> settler = (id, orders) -> orders.forEach(order -> order.setRejection(reason));
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> auction.submit(EXCHANGE_ID, order(BatchAuction.Side.BUY_CARBON, "1"), settler));
+        assertSame(reason, thrown);
+    }
+
+    @Test
+    void settlerFailureFailsEveryOrderInTheBatch() {
+        IllegalStateException failure = new IllegalStateException("settlement failed");
+        BiConsumer<Long, List<BatchAuction.Order>> settler = (id, orders) -> {
+            throw failure;
+        };
+
+        CompletableFuture<BigDecimal> first = submitAsync(order(BatchAuction.Side.BUY_CARBON, "1"), settler);
+        CompletableFuture<BigDecimal> second = submitAsync(order(BatchAuction.Side.SELL_CARBON, "1"), settler);
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS)).getCause());
+    }
+
+    @Test
+    void settlementThatNeverFinishesTimesOut() throws Exception {
+        ReflectionTestUtils.setField(auction, "windowMs", 10L);
+        ReflectionTestUtils.setField(auction, "settleTimeoutMs", 200L);
+        CountDownLatch release = new CountDownLatch(1);
+        BiConsumer<Long, List<BatchAuction.Order>> settler = (id, orders) -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        try {
+            long start = System.nanoTime();
+            IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> auction.submit(EXCHANGE_ID, order(BatchAuction.Side.BUY_CARBON, "1"), settler));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+            // 結算已經開始，結果未知
+            assertTrue(thrown.getMessage().contains("check balances"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void abandonedOrderIsNotSettled() throws Exception {
+        ReflectionTestUtils.setField(auction, "windowMs", 500L);
+        BiConsumer<Long, List<BatchAuction.Order>> settler = (id, orders) -> settled.add(orders);
+        AtomicReference<RuntimeException> thrown = new AtomicReference<>();
+
+        Thread waiter = new Thread(() -> {
+            try {
+                auction.submit(EXCHANGE_ID, order(BatchAuction.Side.BUY_CARBON, "1"), settler);
+            } catch (RuntimeException e) {
+                thrown.set(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(50);
+        waiter.interrupt();
+        waiter.join(5000);
+
+        assertTrue(thrown.get() instanceof IllegalStateException);
+        assertTrue(thrown.get().getMessage().contains("order was not executed"));
+        Thread.sleep(700);
+        assertTrue(settled.isEmpty());
+    }
+
+    private CompletableFuture<BigDecimal> submitAsync(BatchAuction.Order order, BiConsumer<Long, List<BatchAuction.Order>> settler) {
+        return CompletableFuture.supplyAsync(() -> auction.submit(EXCHANGE_ID, order, settler));
+    }
+
+    private static BatchAuction.Order order(BatchAuction.Side side, String amountIn) {
+        return new BatchAuction.Order(side, "0xtrader", new BigDecimal(amountIn), new BigDecimal("1000"));
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.service;
+
+import org.example.model.PoolSnapshot;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 檢查點的匯出與載入：啟用池子引擎時匯出的池子包含尚未寫回的交換，載入後池子快照與餘額回到匯出時的狀態；
+ * 校驗失敗的檔案整個載入回滾。每個測試使用自己的代幣與地址。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:checkpoints;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO",
+    "exchange.engine.enabled=true",
+    // 引擎不在測試期間自行寫回，池子狀態只有匯出時的暫停會寫回
+    "exchange.engine.flush-interval-ms=600000"
+})
+class CheckpointServiceTest {
+    private static final AtomicInteger RUNS = new AtomicInteger();
+    private static final BigDecimal NO_LIMIT = new BigDecimal("1000");
+
+    @DynamicPropertySource
+    static void checkpointDirectory(DynamicPropertyRegistry registry) {
+        try {
+            registry.add("exchange.checkpoint.directory", Files.createTempDirectory("checkpoints")::toString);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    private CheckpointService checkpointService;
+
+    @Autowired
+    private CarbonExchangeService exchangeService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Autowired
+    private USDCService usdcService;
+
+    @Test
+    void loadRestoresTheStateAtExport() {
+        String prefix = "0xcheckpoint-" + RUNS.incrementAndGet() + "-";
+        Long tokenId = carbonCreditService.createToken(prefix + "admin").getId();
+        String trader = prefix + "trader";
+        Long exchangeId = pool(tokenId, prefix + "provider");
+        usdcService.initializeBalance(trader, new BigDecimal("100"));
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, new BigDecimal("40"), NO_LIMIT);
+
+        PoolSnapshot exported = exchangeService.getPoolSnapshot(exchangeId);
+        BigDecimal usdc = usdcService.getBalance(trader);
+        BigDecimal cct = carbonCreditService.balanceOf(tokenId, trader);
+        Path checkpoint = Paths.get((String) checkpointService.export().get("path"));
+
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, new BigDecimal("60"), NO_LIMIT);
+        assertEquals(0, usdcService.getBalance(trader).signum());
+
+        checkpointService.load(checkpoint);
+        assertSameReserves(exported, exchangeService.getPoolSnapshot(exchangeId));
+        assertEquals(0, usdc.compareTo(usdcService.getBalance(trader)));
+        assertEquals(0, cct.compareTo(carbonCreditService.balanceOf(tokenId, trader)));
+
+        // 載入後的池子可以繼續交易
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, new BigDecimal("10"), NO_LIMIT);
+        assertEquals(0, usdc.subtract(BigDecimal.TEN).compareTo(usdcService.getBalance(trader)));
+    }
+
+    @Test
+    void checkpointThatFailsItsChecksumIsNotLoaded() throws IOException {
+        String prefix = "0xcheckpoint-" + RUNS.incrementAndGet() + "-";
+        Long tokenId = carbonCreditService.createToken(prefix + "admin").getId();
+        String trader = prefix + "trader";
+        Long exchangeId = pool(tokenId, prefix + "provider");
+        usdcService.initializeBalance(trader, new BigDecimal("100"));
+        Path checkpoint = Paths.get((String) checkpointService.export().get("path"));
+
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, new BigDecimal("40"), NO_LIMIT);
+        PoolSnapshot before = exchangeService.getPoolSnapshot(exchangeId);
+
+        byte[] bytes = Files.readAllBytes(checkpoint);
+        bytes[bytes.length - 1] ^= 0xFF;
+        Path corrupted = checkpoint.resolveSibling("corrupted.bin");
+        Files.write(corrupted, bytes);
+        assertThrows(IllegalArgumentException.class, () -> checkpointService.load(corrupted));
+
+        Path notACheckpoint = checkpoint.resolveSibling("empty.bin");
+        Files.write(notACheckpoint, new byte[16]);
+        assertThrows(IllegalArgumentException.class, () -> checkpointService.load(notACheckpoint));
+
+        assertSameReserves(before, exchangeService.getPoolSnapshot(exchangeId));
+        assertEquals(0, new BigDecimal("60").compareTo(usdcService.getBalance(trader)));
+    }
+
+    private Long pool(Long tokenId, String provider) {
+        usdcService.initializeBalance(provider, new BigDecimal("1000"));
+        carbonCreditService.credit(tokenId, provider, new BigDecimal("400"));
+        return exchangeService.createPool(tokenId, provider, new BigDecimal("1000"), new BigDecimal("400")).getExchangeId();
+    }
+
+    private static void assertSameReserves(PoolSnapshot expected, PoolSnapshot actual) {
+        assertEquals(0, expected.getUsdcReserves().compareTo(actual.getUsdcReserves()));
+        assertEquals(0, expected.getCctReserves().compareTo(actual.getCctReserves()));
+        assertEquals(0, expected.getTotalShares().compareTo(actual.getTotalShares()));
+    }
+}
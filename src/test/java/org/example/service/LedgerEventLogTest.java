@@ -0,0 +1,166 @@
+package org.example.service;
+
+import org.example.model.LedgerEvent;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 事件日誌的寫入與讀回：序號遞增且重新開啟後延續，換段後依序讀回，回滾的交易不留下事件，
+ * 寫到一半的最後一筆在讀取與重新開啟時被忽略。
+ */
+class LedgerEventLogTest {
+
+    @TempDir
+    Path directory;
+
+    private LedgerEventLog log;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        log = open();
+    }
+
+    @Test
+    void eventsAreReadBackInOrderWithTheirFields() {
+        log.record(LedgerEvent.usdcCredit("0xa", new BigDecimal("1.5")));
+        log.record(LedgerEvent.cctDebit(7L, "0xb", new BigDecimal("0.000000000000000001")));
+        log.record(LedgerEvent.mintingDisabled(7L));
+
+        List<LedgerEvent> events = readAll(log);
+        assertEquals(3, events.size());
+        assertEquals(List.of(1L, 2L, 3L), events.stream().map(LedgerEvent::getSequence).collect(Collectors.toList()));
+        assertEquals(LedgerEvent.Type.USDC_CREDIT, events.get(0).getType());
+        assertEquals("0xa", events.get(0).getAddress());
+        assertEquals(0, new BigDecimal("1.5").compareTo(events.get(0).getAmount()));
+        assertEquals(LedgerEvent.Type.CCT_DEBIT, events.get(1).getType());
+        assertEquals(7L, events.get(1).getTokenId());
+        assertEquals(0, new BigDecimal("0.000000000000000001").compareTo(events.get(1).getAmount()));
+        assertEquals(LedgerEvent.Type.MINTING_DISABLED, events.get(2).getType());
+    }
+
+    @Test
+    void reopenedLogContinuesTheSequence() throws IOException {
+        log.record(LedgerEvent.usdcCredit("0xa", BigDecimal.ONE));
+        log.record(LedgerEvent.usdcCredit("0xa", BigDecimal.ONE));
+        log.close();
+
+        LedgerEventLog reopened = open();
+        assertEquals(2, reopened.currentSequence());
+        reopened.record(LedgerEvent.usdcDebit("0xa", BigDecimal.ONE));
+        assertEquals(3, readAll(reopened).get(2).getSequence());
+    }
+
+    @Test
+    void fullSegmentRollsOverAndEveryEventIsReadBack() throws IOException {
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            log.record(LedgerEvent.usdcCredit(address(i), BigDecimal.valueOf(i)));
+        }
+
+        List<LedgerEvent> events = readAll(log);
+        assertEquals(count, events.size());
+        assertEquals(count, events.get(count - 1).getSequence());
+        assertEquals(address(count - 1), events.get(count - 1).getAddress());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.count() > 1);
+        }
+    }
+
+    @Test
+    void rolledBackTransactionLeavesNoEvents() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:event-log");
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            log.record(LedgerEvent.usdcCredit("0xa", BigDecimal.ONE));
+            status.setRollbackOnly();
+        });
+        assertTrue(readAll(log).isEmpty());
+
+        transactionTemplate.executeWithoutResult(status -> {
+            log.record(LedgerEvent.usdcCredit("0xa", BigDecimal.ONE));
+            // 提交前不寫入日誌
+            assertTrue(readAll(log).isEmpty());
+        });
+        assertEquals(1, readAll(log).size());
+    }
+
+    @Test
+    void tornLastRecordIsIgnoredAndOverwritten() throws IOException {
+        log.record(LedgerEvent.usdcCredit("0xa", BigDecimal.ONE));
+        log.record(LedgerEvent.usdcCredit("0xb", BigDecimal.TEN));
+        log.close();
+
+        // 破壞第二筆紀錄的最後一個位元組，CRC 不符
+        Path segment = segments().get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int offset = 8;
+            file.seek(offset);
+            int first = file.readInt();
+            int secondOffset = offset + 8 + first;
+            file.seek(secondOffset);
+            int second = file.readInt();
+            long last = secondOffset + 8L + second - 1;
+            file.seek(last);
+            int value = file.read();
+            file.seek(last);
+            file.write(value ^ 0xFF);
+        }
+
+        LedgerEventLog reopened = open();
+        List<LedgerEvent> events = readAll(reopened);
+        assertEquals(1, events.size());
+        assertEquals("0xa", events.get(0).getAddress());
+
+        reopened.record(LedgerEvent.usdcCredit("0xc", BigDecimal.ONE));
+        events = readAll(reopened);
+        assertEquals(2, events.size());
+        assertEquals("0xc", events.get(1).getAddress());
+        assertEquals(2, events.get(1).getSequence());
+    }
+
+    private LedgerEventLog open() throws IOException {
+        LedgerEventLog opened = new LedgerEventLog();
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "directory", directory.toString());
+        ReflectionTestUtils.setField(opened, "segmentSizeMb", 1);
+        opened.open();
+        return opened;
+    }
+
+    // 與以太坊地址等長，兩萬筆超過一個 1 MB 的分段
+    private static String address(int i) {
+        return String.format("0x%040d", i);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<LedgerEvent> readAll(LedgerEventLog log) {
+        List<LedgerEvent> events = new ArrayList<>();
+        log.readAll(events::add);
+        return events;
+    }
+}
@@ -0,0 +1,95 @@
+package org.example.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/**
+ * 從事件日誌重建帳本：資料庫的餘額、池子與份額被改動或刪除後，重播使它們回到日誌記錄的狀態。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:ledger-replay;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO",
+    "exchange.event-log.enabled=true",
+    "exchange.event-log.segment-size-mb=1"
+})
+class LedgerReplayTest {
+    private static final String LEDGER_STATE =
+        "select 'USDC', address, balance from usdc_balances union all " +
+        "select 'CCT ' || token_id, address, balance from token_balances union all " +
+        "select 'SHARES ' || exchange_id, provider_address, shares from liquidity_providers union all " +
+        "select 'POOL ' || exchange_id, cast(total_base_reserves as varchar), total_carbon_reserves from liquidity_pools " +
+        "order by 1, 2";
+
+    @DynamicPropertySource
+    static void eventLogDirectory(DynamicPropertyRegistry registry) {
+        try {
+            registry.add("exchange.event-log.directory", Files.createTempDirectory("ledger-replay")::toString);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    private LedgerReplayer ledgerReplayer;
+
+    @Autowired
+    private LedgerEventLog ledgerEventLog;
+
+    @Autowired
+    private CarbonExchangeService exchangeService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Autowired
+    private USDCService usdcService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void replayRestoresTheLedgerTheLogRecorded() {
+        Long tokenId = carbonCreditService.createToken("0xreplay-admin").getId();
+        String provider = "0xreplay-provider";
+        String trader = "0xreplay-trader";
+        usdcService.initializeBalance(provider, new BigDecimal("2000"));
+        carbonCreditService.credit(tokenId, provider, new BigDecimal("800"));
+        usdcService.initializeBalance(trader, new BigDecimal("50"));
+        Long exchangeId = exchangeService.createPool(tokenId, provider, new BigDecimal("1000"), new BigDecimal("400"))
+            .getExchangeId();
+        exchangeService.swapBaseCurrencyForCarbonCredits(exchangeId, trader, new BigDecimal("50"), new BigDecimal("1000"));
+        exchangeService.addLiquidity(Map.of("exchangeId", exchangeId.toString(), "userId", provider, "amountUsdc", "100"));
+        usdcService.credit(trader, new BigDecimal("5"));
+
+        List<Map<String, Object>> recorded = jdbcTemplate.queryForList(LEDGER_STATE);
+
+        jdbcTemplate.update("update usdc_balances set balance = 0 where address = ?", trader);
+        jdbcTemplate.update("delete from token_balances where address = ?", trader);
+        jdbcTemplate.update("update liquidity_pools set total_base_reserves = 1 where exchange_id = ?", exchangeId);
+        jdbcTemplate.update("delete from liquidity_providers");
+        assertNotEquals(recorded, jdbcTemplate.queryForList(LEDGER_STATE));
+
+        long lastSequence = ledgerReplayer.replay();
+        assertEquals(ledgerEventLog.currentSequence(), lastSequence);
+        assertEquals(recorded, jdbcTemplate.queryForList(LEDGER_STATE));
+    }
+}
@@ -0,0 +1,107 @@
+package org.example.service;
+
+import org.example.model.LimitOrder;
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 限價簿的排序與「是否需要撮合」的判斷：判斷必須與撮合時的成交計算一致，
+ * 價位看似可成交但換得數量為零的掛單不能觸發撮合，否則沒有成交的撮合會不斷重新發布快照。
+ */
+class LimitOrderBookTest {
+    private static final Long EXCHANGE_ID = 1L;
+
+    private final LimitOrderBook book = new LimitOrderBook();
+    private long nextId = 1;
+
+    @Test
+    void bestPricesComeFirstAndTiesKeepArrivalOrder() {
+        LimitOrder low = add(LimitOrder.Side.BUY_CARBON, "1", "2.0");
+        LimitOrder high = add(LimitOrder.Side.BUY_CARBON, "1", "2.4");
+        LimitOrder highLater = add(LimitOrder.Side.BUY_CARBON, "1", "2.4");
+        LimitOrder ask = add(LimitOrder.Side.SELL_CARBON, "1", "3.0");
+        LimitOrder cheaperAsk = add(LimitOrder.Side.SELL_CARBON, "1", "2.8");
+
+        assertEquals(high.getId(), book.bestBid(EXCHANGE_ID).getId());
+        assertEquals(cheaperAsk.getId(), book.bestAsk(EXCHANGE_ID).getId());
+
+        book.remove(high);
+        assertEquals(highLater.getId(), book.bestBid(EXCHANGE_ID).getId());
+        book.remove(highLater);
+        assertEquals(low.getId(), book.bestBid(EXCHANGE_ID).getId());
+        assertEquals(2, book.asks(EXCHANGE_ID, 10).size());
+        assertEquals(1, book.bids(EXCHANGE_ID, 10).size());
+        assertNotNull(book.get(EXCHANGE_ID, ask.getId()));
+    }
+
+    @Test
+    void ordersThatCanFillAreExecutable() {
+        LiquidityPool pool = pool("1000", "400", 30);
+        assertFalse(book.hasExecutable(snapshot(pool)));
+
+        add(LimitOrder.Side.BUY_CARBON, "10", "2.4");
+        assertFalse(book.hasExecutable(snapshot(pool)));
+
+        add(LimitOrder.Side.BUY_CARBON, "10", "2.6");
+        assertTrue(book.hasExecutable(snapshot(pool)));
+    }
+
+    @Test
+    void bidWithinRoundingOfTheRateIsNotExecutable() {
+        // 匯率 1000 / 3 向下捨入為 333.333333333333333333，限價只比它高 1e-18
+        LiquidityPool pool = pool("1000", "3", 30);
+        LimitOrder bid = add(LimitOrder.Side.BUY_CARBON, "10", "333.333333333333333334");
+
+        assertTrue(bid.getLimitRate().compareTo(pool.calculateExchangeRate()) > 0);
+        assertNull(LimitOrderFill.of(bid, pool));
+        assertFalse(book.hasExecutable(snapshot(pool)));
+    }
+
+    @Test
+    void partialFillThatStopsJustShortOfTheLimitIsNotExecutable() {
+        LiquidityPool pool = pool("3897199803.20810397", "43895.29671629868", 30);
+        LimitOrder ask = add(LimitOrder.Side.SELL_CARBON, "438952.9671629868", "85232.635178670528609643");
+
+        LimitOrderFill fill = LimitOrderFill.of(ask, pool);
+        assertNotNull(fill);
+        pool.setCctReserves(pool.getCctReserves().add(fill.getNet()));
+        pool.setUsdcReserves(pool.getUsdcReserves().subtract(fill.getAmountOut()));
+        ask.fill(fill.getAmountIn(), fill.getAmountOut());
+
+        // 捨入讓成交後的匯率仍略高於賣單限價，只比較價位會判斷為可成交
+        assertTrue(ask.isOpen());
+        assertTrue(ask.getLimitRate().compareTo(pool.calculateExchangeRate()) < 0);
+        assertNull(LimitOrderFill.of(ask, pool));
+        assertFalse(book.hasExecutable(snapshot(pool)));
+    }
+
+    private LimitOrder add(LimitOrder.Side side, String amount, String limitRate) {
+        LimitOrder order = new LimitOrder(EXCHANGE_ID, "0xtrader", side, new BigDecimal(amount), new BigDecimal(limitRate));
+        order.setId(nextId++);
+        book.add(order);
+        return order;
+    }
+
+    private static LiquidityPool pool(String usdc, String cct, int feeBps) {
+        LiquidityPool pool = new LiquidityPool();
+        pool.setExchangeId(EXCHANGE_ID);
+        pool.setUsdcReserves(new BigDecimal(usdc));
+        pool.setCctReserves(new BigDecimal(cct));
+        pool.setTotalShares(new BigDecimal(usdc));
+        pool.setFeeBps(feeBps);
+        return pool;
+    }
+
+    private static PoolSnapshot snapshot(LiquidityPool pool) {
+        return PoolSnapshot.of(pool, 1);
+    }
+}
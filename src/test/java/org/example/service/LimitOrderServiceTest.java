@@ -0,0 +1,166 @@
+package org.example.service;
+
+import org.example.model.LimitOrder;
+import org.example.model.LiquidityPool;
+import org.example.repository.LimitOrderRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 限價單的掛單、撤單與對池子的撮合。每個測試使用自己的池子與地址。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:limit-orders;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO"
+})
+class LimitOrderServiceTest {
+    private static final AtomicInteger POOLS = new AtomicInteger();
+    private static final long TIMEOUT_MS = 5000;
+
+    @Autowired
+    private LimitOrderService limitOrderService;
+
+    @Autowired
+    private LimitOrderRepository limitOrderRepository;
+
+    @Autowired
+    private CarbonExchangeService exchangeService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Autowired
+    private USDCService usdcService;
+
+    private String prefix;
+    private Long tokenId;
+
+    @BeforeEach
+    void setUp() {
+        prefix = "0xlimit-" + POOLS.incrementAndGet() + "-";
+        tokenId = carbonCreditService.createToken(prefix + "admin").getId();
+    }
+
+    @Test
+    void orderAtTheRateRestsAndIsCancelledWithFullRefund() {
+        Long exchangeId = pool("1000", "400");
+        String trader = fund("trader", "100", "0");
+
+        LimitOrder order = limitOrderService.placeOrder(exchangeId, trader, LimitOrder.Side.BUY_CARBON,
+            new BigDecimal("40"), new BigDecimal("2.4"));
+        assertEquals(LimitOrder.Status.OPEN, order.getStatus());
+        assertEquals(0, new BigDecimal("60").compareTo(usdcService.getBalance(trader)));
+
+        limitOrderService.cancelOrder(order.getId(), trader);
+        assertEquals(LimitOrder.Status.CANCELLED, limitOrderRepository.findById(order.getId()).orElseThrow().getStatus());
+        assertEquals(0, new BigDecimal("100").compareTo(usdcService.getBalance(trader)));
+        assertThrows(IllegalStateException.class, () -> limitOrderService.cancelOrder(order.getId(), trader));
+    }
+
+    @Test
+    void marketableOrderFillsOnlyUpToItsLimit() {
+        Long exchangeId = pool("1000", "400");
+        String trader = fund("trader", "1000", "0");
+
+        LimitOrder order = limitOrderService.placeOrder(exchangeId, trader, LimitOrder.Side.BUY_CARBON,
+            new BigDecimal("1000"), new BigDecimal("2.6"));
+
+        LimitOrder stored = limitOrderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(LimitOrder.Status.OPEN, stored.getStatus());
+        assertTrue(stored.getRemaining().signum() > 0 && stored.getRemaining().compareTo(stored.getAmount()) < 0);
+        assertTrue(exchangeService.calculateExchangeRate(exchangeId).compareTo(new BigDecimal("2.6")) <= 0);
+        assertEquals(0, stored.getAmountOut().compareTo(carbonCreditService.balanceOf(tokenId, trader)));
+    }
+
+    @Test
+    void restingOrderFillsAfterASwapMovesTheRateThroughItsLimit() {
+        Long exchangeId = pool("1000", "400");
+        String buyer = fund("buyer", "50", "0");
+        String seller = fund("seller", "0", "100");
+
+        LimitOrder bid = limitOrderService.placeOrder(exchangeId, buyer, LimitOrder.Side.BUY_CARBON,
+            new BigDecimal("50"), new BigDecimal("2.2"));
+        assertEquals(LimitOrder.Status.OPEN, bid.getStatus());
+
+        exchangeService.swapCarbonCreditsForBaseCurrency(exchangeId, seller, new BigDecimal("100"), new BigDecimal("100"));
+
+        await(() -> limitOrderRepository.findById(bid.getId()).orElseThrow().getStatus() == LimitOrder.Status.FILLED);
+        LimitOrder filled = limitOrderRepository.findById(bid.getId()).orElseThrow();
+        assertEquals(0, filled.getAmountOut().compareTo(carbonCreditService.balanceOf(tokenId, buyer)));
+        assertTrue(exchangeService.calculateExchangeRate(exchangeId).compareTo(new BigDecimal("2.2")) <= 0);
+    }
+
+    @Test
+    void partialFillAtTheLimitDoesNotKeepRepublishingThePool() throws Exception {
+        Long exchangeId = pool("3897199803.20810397", "43895.29671629868");
+        String trader = fund("trader", "0", "438952.9671629868");
+
+        LimitOrder ask = limitOrderService.placeOrder(exchangeId, trader, LimitOrder.Side.SELL_CARBON,
+            new BigDecimal("438952.9671629868"), new BigDecimal("85232.635178670528609643"));
+        LimitOrder stored = limitOrderRepository.findById(ask.getId()).orElseThrow();
+        assertEquals(LimitOrder.Status.OPEN, stored.getStatus());
+        assertTrue(stored.getRemaining().compareTo(stored.getAmount()) < 0);
+        assertTrue(stored.getLimitRate().compareTo(exchangeService.calculateExchangeRate(exchangeId)) < 0);
+
+        // 沒有成交的撮合不會發布新快照，版本號應該停住
+        long version = exchangeService.getPoolSnapshot(exchangeId).getVersion();
+        Thread.sleep(500);
+        assertEquals(version, exchangeService.getPoolSnapshot(exchangeId).getVersion());
+    }
+
+    @Test
+    void batchAuctionPoolsLeaveOrdersResting() {
+        Long exchangeId = pool("1000", "400");
+        exchangeService.setSettlementMode(exchangeId, LiquidityPool.SettlementMode.BATCH_AUCTION);
+        String trader = fund("trader", "100", "0");
+
+        LimitOrder order = limitOrderService.placeOrder(exchangeId, trader, LimitOrder.Side.BUY_CARBON,
+            new BigDecimal("100"), new BigDecimal("3"));
+        assertEquals(0, order.getRemaining().compareTo(order.getAmount()));
+        assertEquals(LimitOrder.Status.OPEN, limitOrderRepository.findById(order.getId()).orElseThrow().getStatus());
+    }
+
+    private Long pool(String usdc, String cct) {
+        String provider = fund("provider", usdc, cct);
+        return exchangeService.createPool(tokenId, provider, new BigDecimal(usdc), new BigDecimal(cct)).getExchangeId();
+    }
+
+    private String fund(String name, String usdc, String cct) {
+        String address = prefix + name;
+        usdcService.initializeBalance(address, new BigDecimal(usdc));
+        if (new BigDecimal(cct).signum() > 0) {
+            carbonCreditService.credit(tokenId, address, new BigDecimal(cct));
+        }
+        return address;
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met within " + TIMEOUT_MS + " ms");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
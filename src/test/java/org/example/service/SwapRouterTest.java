@@ -0,0 +1,137 @@
+package org.example.service;
+
+import org.example.model.LiquidityPool;
+import org.example.model.PoolSnapshot;
+import org.example.model.SwapRoute;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 跨池子的路由：經過 USDC 的兩段交換、minAmountOut 不足時全部回滾，以及批次拍賣池子不出現在路徑上。
+ * 每個測試使用自己的代幣與地址。
+ */
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:swap-router;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;LOCK_TIMEOUT=10000",
+    "spring.datasource.driver-class-name=org.h2.Driver",
+    "spring.datasource.username=sa",
+    "spring.datasource.password=",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "logging.level.org.example=INFO"
+})
+class SwapRouterTest {
+    private static final AtomicInteger RUNS = new AtomicInteger();
+
+    @Autowired
+    private SwapRouter swapRouter;
+
+    @Autowired
+    private CarbonExchangeService exchangeService;
+
+    @Autowired
+    private CarbonCreditService carbonCreditService;
+
+    @Autowired
+    private USDCService usdcService;
+
+    private String prefix;
+
+    @BeforeEach
+    void setUp() {
+        prefix = "0xrouter-" + RUNS.incrementAndGet() + "-";
+    }
+
+    @Test
+    void tokenToTokenSwapsThroughUsdc() {
+        Long tokenA = token("a");
+        Long tokenB = token("b");
+        pool(tokenA, "1000", "400");
+        pool(tokenB, "1000", "200");
+        String trader = fund(tokenA, "trader", "0", "10");
+
+        SwapRoute quoted = swapRouter.quote(tokenA.toString(), tokenB.toString(), new BigDecimal("10"), null);
+        assertEquals(2, quoted.getHops().size());
+        assertEquals(SwapRouter.USDC, quoted.getHops().get(0).getTokenOut());
+
+        SwapRoute executed = swapRouter.swap(trader, tokenA.toString(), tokenB.toString(), new BigDecimal("10"),
+            quoted.getAmountOut(), null);
+        assertEquals(0, quoted.getAmountOut().compareTo(executed.getAmountOut()));
+        assertEquals(0, carbonCreditService.balanceOf(tokenA, trader).signum());
+        assertEquals(0, executed.getAmountOut().compareTo(carbonCreditService.balanceOf(tokenB, trader)));
+        assertEquals(0, usdcService.getBalance(trader).signum());
+    }
+
+    @Test
+    void routeBelowMinAmountOutRollsBackEveryHop() {
+        Long tokenA = token("a");
+        Long tokenB = token("b");
+        Long poolA = pool(tokenA, "1000", "400");
+        Long poolB = pool(tokenB, "1000", "200");
+        String trader = fund(tokenA, "trader", "0", "10");
+        PoolSnapshot beforeA = exchangeService.getPoolSnapshot(poolA);
+        PoolSnapshot beforeB = exchangeService.getPoolSnapshot(poolB);
+
+        SwapRoute quoted = swapRouter.quote(tokenA.toString(), tokenB.toString(), new BigDecimal("10"), null);
+        BigDecimal tooMuch = quoted.getAmountOut().add(BigDecimal.ONE);
+        assertThrows(RuntimeException.class, () -> swapRouter.swap(trader, tokenA.toString(), tokenB.toString(),
+            new BigDecimal("10"), tooMuch, null));
+
+        assertEquals(0, new BigDecimal("10").compareTo(carbonCreditService.balanceOf(tokenA, trader)));
+        assertEquals(0, carbonCreditService.balanceOf(tokenB, trader).signum());
+        assertSameReserves(beforeA, exchangeService.getPoolSnapshot(poolA));
+        assertSameReserves(beforeB, exchangeService.getPoolSnapshot(poolB));
+    }
+
+    @Test
+    void batchAuctionPoolsAreLeftOutOfTheRoute() {
+        Long token = token("a");
+        Long deep = pool(token, "1000", "400");
+        Long shallow = pool(token, "100", "40");
+        String trader = fund(token, "trader", "10", "0");
+
+        assertEquals(deep, swapRouter.quote("USDC", token.toString(), new BigDecimal("10"), 1).getHops().get(0).getExchangeId());
+
+        exchangeService.setSettlementMode(deep, LiquidityPool.SettlementMode.BATCH_AUCTION);
+        SwapRoute quoted = swapRouter.quote("USDC", token.toString(), new BigDecimal("10"), 1);
+        assertEquals(shallow, quoted.getHops().get(0).getExchangeId());
+        SwapRoute executed = swapRouter.swap(trader, "USDC", token.toString(), new BigDecimal("10"), null, 1);
+        assertEquals(shallow, executed.getHops().get(0).getExchangeId());
+        assertTrue(carbonCreditService.balanceOf(token, trader).signum() > 0);
+
+        exchangeService.setSettlementMode(shallow, LiquidityPool.SettlementMode.BATCH_AUCTION);
+        assertThrows(IllegalArgumentException.class,
+            () -> swapRouter.quote("USDC", token.toString(), new BigDecimal("10"), 1));
+    }
+
+    private static void assertSameReserves(PoolSnapshot expected, PoolSnapshot actual) {
+        assertEquals(0, expected.getUsdcReserves().compareTo(actual.getUsdcReserves()));
+        assertEquals(0, expected.getCctReserves().compareTo(actual.getCctReserves()));
+    }
+
+    private Long token(String name) {
+        return carbonCreditService.createToken(prefix + name + "-admin").getId();
+    }
+
+    private Long pool(Long tokenId, String usdc, String cct) {
+        String provider = fund(tokenId, "provider-" + tokenId + "-" + usdc, usdc, cct);
+        return exchangeService.createPool(tokenId, provider, new BigDecimal(usdc), new BigDecimal(cct)).getExchangeId();
+    }
+
+    private String fund(Long tokenId, String name, String usdc, String cct) {
+        String address = prefix + name;
+        usdcService.initializeBalance(address, new BigDecimal(usdc));
+        if (new BigDecimal(cct).signum() > 0) {
+            carbonCreditService.credit(tokenId, address, new BigDecimal(cct));
+        }
+        return address;
+    }
+}
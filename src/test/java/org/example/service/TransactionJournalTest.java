@@ -0,0 +1,130 @@
+package org.example.service;
+
+import org.example.model.Transaction;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 交易紀錄日誌的寫入保證：回傳時紀錄已寫入，無法寫入的紀錄只讓自己的請求失敗，
+ * 監聽器的失敗不會讓寫入線程停止。
+ */
+class TransactionJournalTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private TransactionJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:journal-" + DATABASES.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table transactions (id bigint auto_increment primary key, " +
+            "from_address varchar(255) not null, to_address varchar(255) not null, " +
+            "amount decimal(36, 18), amount2 decimal(36, 18), token_address varchar(255), " +
+            "type varchar(255), timestamp timestamp, status varchar(255))");
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        journal = new TransactionJournal(dataSource, new MarketChangeFeed());
+        ReflectionTestUtils.setField(journal, "capacity", 1024);
+        ReflectionTestUtils.setField(journal, "batchSize", 100);
+        ReflectionTestUtils.setField(journal, "awaitTimeoutMs", 5000L);
+        journal.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        journal.stop();
+        jdbcTemplate.execute("drop all objects");
+    }
+
+    @Test
+    void recordReturnsOnceTheRowIsWritten() {
+        journal.record("TRANSFER", "0xa", "0xb", "USDC", BigDecimal.ONE, null);
+        assertEquals(1, rows());
+    }
+
+    @Test
+    void rowThatCannotBeWrittenFailsOnlyItsOwnRequest() {
+        assertThrows(IllegalStateException.class,
+            () -> journal.record("TRANSFER", "0xa", null, "USDC", BigDecimal.ONE, null));
+
+        journal.record("TRANSFER", "0xa", "0xb", "USDC", BigDecimal.ONE, null);
+        assertEquals(1, rows());
+    }
+
+    @Test
+    void failingListenerDoesNotStopTheWriter() {
+        journal.addBatchListener((connection, transactions) -> {
+            throw new IllegalStateException("listener failure");
+        });
+
+        journal.record("TRANSFER", "0xa", "0xb", "USDC", BigDecimal.ONE, null);
+        journal.record("TRANSFER", "0xb", "0xa", "USDC", BigDecimal.ONE, null);
+        assertEquals(2, rows());
+    }
+
+    @Test
+    void recordsInATransactionAreWrittenBeforeCommitReturns() {
+        transactionTemplate.executeWithoutResult(status -> {
+            journal.record("TRANSFER", "0xa", "0xb", "USDC", BigDecimal.ONE, null);
+            journal.record("TRANSFER", "0xb", "0xc", "USDC", BigDecimal.ONE, null);
+        });
+        assertEquals(2, rows());
+    }
+
+    @Test
+    void failedRecordFailsTheCommitAfterOtherCommitCallbacksRan() {
+        AtomicBoolean published = new AtomicBoolean();
+        assertThrows(IllegalStateException.class, () -> transactionTemplate.executeWithoutResult(status -> {
+            journal.record("TRANSFER", "0xa", null, "USDC", BigDecimal.ONE, null);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    published.set(true);
+                }
+            });
+        }));
+        assertTrue(published.get());
+    }
+
+    @Test
+    void deferredRecordsAreAwaitedByTheCaller() {
+        TransactionJournal.Deferred<String> ok = journal.deferringFlush(() -> {
+            journal.record("TRANSFER", "0xa", "0xb", "USDC", BigDecimal.ONE, null);
+            return "done";
+        });
+        assertEquals("done", journal.awaitFlushed(ok));
+        assertEquals(1, rows());
+
+        TransactionJournal.Deferred<String> failed = journal.deferringFlush(() -> {
+            Transaction transaction = new Transaction();
+            transaction.setType("TRANSFER");
+            transaction.setFromAddress("0xa");
+            journal.record(transaction);
+            return "done";
+        });
+        assertThrows(IllegalStateException.class, () -> journal.awaitFlushed(failed));
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("select count(*) from transactions", Integer.class);
+    }
+}